@@ -15,12 +15,50 @@ import pplanning.interfaces.PlanningAgent;
 import pplanning.simviewer.model.GridCell;
 import pplanning.simviewer.model.GridDomain;
 
+/**
+ * Optimal A* planner, which picks the search engine to suit the map. In order
+ * of precedence:
+ *
+ *   1. cell A*, pruned by a goal bounding table, where one is cached for the
+ *      map;
+ *   2. Block A*, on maps without weighted terrain;
+ *   3. jump point search, on maps without weighted terrain (when blocks are
+ *      turned off);
+ *   4. cell A*, on maps with weighted terrain, where jump point search mostly
+ *      degrades to it anyway.
+ *
+ * Cell A* uses partial expansion. Every engine skips dead ends. A start and
+ * goal in different connected components are rejected before any of them
+ * runs.
+ */
 public class AStar implements PlanningAgent {
 
-	private final static boolean DEBUG = true;
+	private final static boolean DEBUG = false;
+
+	// Search with jump points instead of expanding every cell, on maps without
+	// weighted terrain.
+	private final static boolean USE_JUMP_POINTS = true;
+
+	// Prune moves with a goal bounding table, where one has been built for the
+	// map. Takes precedence over blocks and jump points.
+	private final static boolean USE_GOAL_BOUNDING = true;
+
+	// Search 4x4 blocks at a time (Block A*) on maps without weighted terrain.
+	// Takes precedence over jump points.
+	private final static boolean USE_BLOCKS = true;
+
+	// Skip dead ends that no path between start and goal can enter, in
+	// whichever search runs.
+	private final static boolean USE_DEAD_ENDS = true;
+
+	// Reject a start and goal in different connected components without
+	// searching, which would otherwise close every cell the start can reach.
+	private final static boolean USE_COMPONENTS = true;
 
 	private ComputedPlan plan;
 	PreferredMapInfo mapInfo;
+	JumpPointSearch jumpPointSearch;
+	BlockAStar blockAStar;
 
 	private int stepNo = 0;
 
@@ -73,12 +111,57 @@ public class AStar implements PlanningAgent {
 	private ComputedPlan generatePlan(GridDomain map, GridCell start,
 			GridCell goal) {
 
+		GridSnapshot snapshot = new GridSnapshot(map);
+		int goalIndex = snapshot.getIndex(goal);
+
+		if (USE_COMPONENTS && new Bitboard(snapshot).isReachable(
+				snapshot.getIndex(start), goalIndex) == false) {
+			return null;
+		}
+
+		GoalBoundingTable goalBounds = null;
+		if (USE_GOAL_BOUNDING) {
+			goalBounds = GoalBoundingTable.open(snapshot, GridUtil.CACHE_DIRECTORY);
+		}
+
+		DeadEndRegions deadEnds = null;
+		if (USE_DEAD_ENDS) {
+			deadEnds = new DeadEndRegions(snapshot);
+			deadEnds.setQuery(snapshot.getIndex(start), goalIndex);
+		}
+
+		if (USE_BLOCKS && goalBounds == null && snapshot.isUniformMap()) {
+			blockAStar = new BlockAStar(snapshot,
+					new LocalDistanceDatabase(snapshot.isEightConnected()));
+			blockAStar.setDeadEnds(deadEnds);
+			ComputedPlan blockPlan = blockAStar.search(start, goal);
+			if (DEBUG) System.out.println("blocks expanded = " + blockAStar.getExpansionCount());
+			return blockPlan;
+		}
+
+		if (USE_JUMP_POINTS && goalBounds == null && snapshot.isUniformMap()) {
+			jumpPointSearch = new JumpPointSearch(snapshot, false);
+			jumpPointSearch.setDeadEnds(deadEnds);
+			if (snapshot.isEightConnected()) {
+				jumpPointSearch.setJumpDistanceTable(
+						JumpDistanceTable.loadOrBuild(snapshot, GridUtil.CACHE_DIRECTORY));
+			}
+			ComputedPlan jpsPlan = jumpPointSearch.search(start, goal);
+			if (DEBUG) System.out.println("jump points expanded = " + jumpPointSearch.getExpansionCount());
+			return jpsPlan;
+		}
+
 		int updateCount = 0;
 
 		mapInfo = new PreferredMapInfo(map);
 
-		// initialize open set with start node
-		mapInfo.addStartCell(start, map.hCost(start, goal));
+		// initialize open set with start node. Apparate's euclidean hCost is not
+		// consistent with diagonal moves costing the same as straight ones, and
+		// closed cells are never reopened, so use the snapshot's instead.
+		mapInfo.addStartCell(start, snapshot.getHCost(snapshot.getIndex(start), goalIndex));
+
+		// children of the cell being expanded
+		PartialExpansion children = new PartialExpansion();
 
 		// repeat while states are left in open set
 		while (mapInfo.isOpenEmpty() == false) {
@@ -87,9 +170,13 @@ public class AStar implements PlanningAgent {
 			// if goal has been reached, return path
 			if (current == goal) {
 				if (DEBUG) System.out.println("update count = " + updateCount);
+				if (DEBUG) System.out.println("peak open count = " + mapInfo.getPeakOpenCount());
 				return mapInfo.computePlan(goal);
 			}
 
+			// children above this f may be held back for a later expansion
+			children.start(mapInfo.getQueuedFCost(current));
+
 			// iterate through neighboring nodes
 			for (State state : map.getSuccessors(current)) {
 				GridCell neighbor = (GridCell) state;
@@ -97,12 +184,35 @@ public class AStar implements PlanningAgent {
 				// consider node if it can be entered and is not in closed list
 				if (map.isBlocked(neighbor)) continue;
 
+				// skip moves that do not start an optimal path to the goal
+				if (goalBounds != null && goalBounds.canReach(snapshot.getIndex(current),
+						snapshot.getIndex(neighbor), goalIndex) == false) continue;
+
+				// skip dead ends off the path between start and goal
+				if (deadEnds != null && deadEnds.isDeadEnd(snapshot.getIndex(neighbor))) continue;
+
 				// get g cost of neighbor
 				float gCost = mapInfo.getGCost(current) + map.cost(current, neighbor);
+				float hCost = snapshot.getHCost(snapshot.getIndex(neighbor), goalIndex);
+
+				// children above current's f can wait, unless they have already
+				// been reached as cheaply, in which case they are dropped
+				if (children.isAboveLimit(gCost + hCost) &&
+						mapInfo.getSetMembership(neighbor) != CellSetMembership.NONE &&
+						FloatUtil.compare(gCost, mapInfo.getGCost(neighbor)) != -1) continue;
+
+				children.add(neighbor, gCost, hCost);
+			}
+
+			for (int i = 0; i < children.getCount(); i++) {
+				if (children.isGenerated(i) == false) continue;
+
+				GridCell neighbor = children.getCell(i);
+				float gCost = children.getGCost(i);
 
 				if (mapInfo.getSetMembership(neighbor) == CellSetMembership.NONE) {
 					// Node not previously encountered, add it to the open set.
-					mapInfo.add(neighbor, gCost, map.hCost(neighbor, goal), current);
+					mapInfo.add(neighbor, gCost, children.getHCost(i), current);
 				} else if (FloatUtil.compare(gCost, mapInfo.getGCost(neighbor)) == -1) {
 					if (DEBUG) updateCount++;
 					// Cheaper route to node found to node in the open set.
@@ -110,6 +220,8 @@ public class AStar implements PlanningAgent {
 					mapInfo.setParent(neighbor, current);
 				}
 			}
+
+			children.deferHeld(mapInfo, current);
 		}
 		// No goal found.
 		return null;
@@ -118,16 +230,20 @@ public class AStar implements PlanningAgent {
 	// Do we want to show extra info? (e.g., close and open nodes, current path)
 	@Override
 	public Boolean showInfo() {
-		return mapInfo != null;
+		return mapInfo != null || jumpPointSearch != null || blockAStar != null;
 	}
 
 	@Override
 	public ArrayList<GridCell> expandedNodes() {
+		if (blockAStar != null) return blockAStar.getClosedArrayList();
+		if (jumpPointSearch != null) return jumpPointSearch.getClosedArrayList();
 		return mapInfo.getClosedArrayList();
 	}
 
 	@Override
 	public ArrayList<GridCell> unexpandedNodes() {
+		if (blockAStar != null) return blockAStar.getOpenArrayList();
+		if (jumpPointSearch != null) return jumpPointSearch.getOpenArrayList();
 		return mapInfo.getOpenArrayList();
 	}
 
@@ -0,0 +1,25 @@
+package agents;
+
+/**
+ * A directed, weighted edge of the abstract graph. Either a single step
+ * across a cluster border, or a path inside one cluster.
+ */
+class AbstractEdge {
+	private final AbstractNode target;
+	private final float cost;
+
+	AbstractEdge(AbstractNode target, float cost) {
+		this.target = target;
+		this.cost = cost;
+	}
+
+	/** Read only. */
+	public AbstractNode getTarget() {
+		return target;
+	}
+
+	/** Read only. */
+	public float getCost() {
+		return cost;
+	}
+}
@@ -0,0 +1,68 @@
+package agents;
+
+import java.util.ArrayList;
+
+/**
+ * A node of the abstract (cluster level) graph used by ClusterAbstraction.
+ * Each node stands for one entrance cell on the border of a cluster.
+ *
+ * Search data is stored on the node itself, as the abstract graph is small
+ * enough that dynamic allocation is not a concern. It is stamped with the
+ * id of the search that wrote it, so nothing needs clearing between searches.
+ */
+class AbstractNode implements Comparable<AbstractNode> {
+	private final int cell;     // GridSnapshot index of the entrance cell
+	private final int cluster;  // Cluster the cell lies in
+
+	private ArrayList<AbstractEdge> edges = new ArrayList<AbstractEdge>();
+
+	// Search data.
+	int          searchId = -1;
+	float        gCost;
+	float        hCost;
+	AbstractNode parent;
+	boolean      closed;
+
+	AbstractNode(int cell, int cluster) {
+		this.cell = cell;
+		this.cluster = cluster;
+	}
+
+	/** Read only. */
+	public int getCell() {
+		return cell;
+	}
+
+	/** Read only. */
+	public int getCluster() {
+		return cluster;
+	}
+
+	public ArrayList<AbstractEdge> getEdges() {
+		return edges;
+	}
+
+	public void addEdge(AbstractNode target, float cost) {
+		edges.add(new AbstractEdge(target, cost));
+	}
+
+	public void clearEdges() {
+		edges.clear();
+	}
+
+	public float getFCost() {
+		return gCost + hCost;
+	}
+
+	/**
+	 * Compare f cost, breaking ties on h.
+	 * @other the node to be compared
+	 */
+	public int compareTo(AbstractNode other) {
+		int fCompare = FloatUtil.compare(getFCost(), other.getFCost());
+		if (fCompare != 0) {
+			return fCompare;
+		}
+		return FloatUtil.compare(hCost, other.hCost);
+	}
+}
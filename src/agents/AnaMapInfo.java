@@ -0,0 +1,260 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * Cell metadata and open list for AnytimeNonparametricAStar.
+ *
+ * Cells are ordered on e = (G - g) / h, greatest first, where G is the cost of
+ * the incumbent. Each time G falls the order of the whole open list changes,
+ * so a PriorityQueue would have to be emptied and refilled. Instead the open
+ * list is a binary heap over an array of cell indices, which is pruned of
+ * cells that can no longer beat G and then heapified in place in linear time
+ * (see setIncumbentCost()).
+ *
+ * Cells are identified by their GridSnapshot index.
+ */
+public class AnaMapInfo {
+
+	private GridSnapshot grid;
+
+	// Incumbent cost, G.
+	private float incumbentCost = Float.POSITIVE_INFINITY;
+
+	// Cell properties.
+	private boolean[] isGenerated;
+	private int[]     parents;
+	private float[]   gCosts;
+	private float[]   hCosts;
+
+	// Open list: a binary heap of cells, and each cell's place in it (-1 if
+	// it is not open).
+	private int[] heap;
+	private int[] heapPositions;
+	private int   openCount = 0;
+
+	private int expansionCount = 0;
+
+	public AnaMapInfo(GridSnapshot grid) {
+		this.grid = grid;
+
+		int size = grid.getSize();
+		isGenerated   = new boolean[size];
+		parents       = new int[size];
+		gCosts        = new float[size];
+		hCosts        = new float[size];
+		heap          = new int[size];
+		heapPositions = new int[size];
+		Arrays.fill(heapPositions, -1);
+	}
+
+	public ComputedPlan computePlan(int goal) {
+		ComputedPlan plan = new ComputedPlan();
+		for (int cell = goal; cell != -1; cell = parents[cell]) {
+			plan.prependStep(grid.getCell(cell));
+		}
+		plan.setCost(gCosts[goal]);
+		return plan;
+	}
+
+	/**
+	 * Record a new or cheaper path to a cell, and put it on the open list.
+	 * @param parent the previous cell on the path, or -1 for the start
+	 */
+	public void setPath(int cell, float gCost, float hCost, int parent) {
+		isGenerated[cell] = true;
+		gCosts[cell] = gCost;
+		hCosts[cell] = hCost;
+		parents[cell] = parent;
+
+		if (heapPositions[cell] == -1) {
+			heap[openCount] = cell;
+			heapPositions[cell] = openCount;
+			openCount++;
+		}
+
+		// A lower g only raises e.
+		siftUp(heapPositions[cell]);
+	}
+
+	/**
+	 * Remove the open cell with the greatest e, and return it.
+	 */
+	public int closeBestOpen() {
+		if (openCount == 0) {
+			throw new IllegalStateException(
+					"Open set is empty - cannot close best open cell");
+		}
+
+		int cell = heap[0];
+		heapPositions[cell] = -1;
+		openCount--;
+		if (openCount > 0) {
+			heap[0] = heap[openCount];
+			heapPositions[heap[0]] = 0;
+			siftDown(0);
+		}
+		expansionCount++;
+
+		return cell;
+	}
+
+	/**
+	 * Lower G to the cost of a new incumbent. Open cells with g + h no less
+	 * than G are dropped, and the heap is rebuilt in place for the new e.
+	 */
+	public void setIncumbentCost(float cost) {
+		incumbentCost = cost;
+
+		int kept = 0;
+		for (int i = 0; i < openCount; i++) {
+			int cell = heap[i];
+			if (FloatUtil.compare(gCosts[cell] + hCosts[cell], cost) == -1) {
+				heap[kept] = cell;
+				heapPositions[cell] = kept;
+				kept++;
+			} else {
+				heapPositions[cell] = -1;
+			}
+		}
+		openCount = kept;
+
+		for (int i = openCount / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	/**
+	 * Bound on the incumbent's suboptimality: G over the lowest g + h in the
+	 * open list.
+	 */
+	public float getSuboptimalityBound() {
+		float lowest = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < openCount; i++) {
+			int cell = heap[i];
+			lowest = Math.min(lowest, gCosts[cell] + hCosts[cell]);
+		}
+		return Float.isInfinite(lowest) ? 1.0f : incumbentCost / lowest;
+	}
+
+	/**
+	 * e of the open cell that will be expanded next.
+	 */
+	public float getBestE() {
+		return getE(heap[0]);
+	}
+
+	/**
+	 * (G - g) / h, infinite for the goal. While there is no incumbent every
+	 * e is infinite, and cells are compared on h instead (see isBetter()).
+	 */
+	public float getE(int cell) {
+		if (hCosts[cell] == 0) {
+			return Float.POSITIVE_INFINITY;
+		}
+		return (incumbentCost - gCosts[cell]) / hCosts[cell];
+	}
+
+	public boolean isOpenEmpty() {
+		return openCount == 0;
+	}
+
+	public int getOpenCount() {
+		return openCount;
+	}
+
+	public int getExpansionCount() {
+		return expansionCount;
+	}
+
+	public boolean isGenerated(int cell) {
+		return isGenerated[cell];
+	}
+
+	public float getGCost(int cell) {
+		return gCosts[cell];
+	}
+
+	public float getIncumbentCost() {
+		return incumbentCost;
+	}
+
+	/* -- HEAP -- */
+
+	/**
+	 * Should cell a be expanded before cell b? Greatest e first or, with no
+	 * incumbent, lowest h (a greedy search). Ties go to the lower h.
+	 */
+	private boolean isBetter(int a, int b) {
+		if (Float.isInfinite(incumbentCost) == false) {
+			int eCompare = FloatUtil.compare(getE(a), getE(b));
+			if (eCompare != 0) {
+				return eCompare == 1;
+			}
+		}
+		return FloatUtil.compare(hCosts[a], hCosts[b]) == -1;
+	}
+
+	private void siftUp(int position) {
+		int cell = heap[position];
+		while (position > 0) {
+			int parentPosition = (position - 1) / 2;
+			int parent = heap[parentPosition];
+			if (isBetter(cell, parent) == false) {
+				break;
+			}
+			heap[position] = parent;
+			heapPositions[parent] = position;
+			position = parentPosition;
+		}
+		heap[position] = cell;
+		heapPositions[cell] = position;
+	}
+
+	private void siftDown(int position) {
+		int cell = heap[position];
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= openCount) {
+				break;
+			}
+			if (child + 1 < openCount && isBetter(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (isBetter(heap[child], cell) == false) {
+				break;
+			}
+			heap[position] = heap[child];
+			heapPositions[heap[position]] = position;
+			position = child;
+		}
+		heap[position] = cell;
+		heapPositions[cell] = position;
+	}
+
+	/* -- DEBUG -- */
+
+	/** Return an ArrayList of all the GridCells that have been generated but are not open. */
+	public ArrayList<GridCell> getClosedArrayList() {
+		ArrayList<GridCell> closed = new ArrayList<GridCell>();
+		for (int i = 0; i < isGenerated.length; i++) {
+			if (isGenerated[i] && heapPositions[i] == -1) {
+				closed.add(grid.getCell(i));
+			}
+		}
+		return closed;
+	}
+
+	/** Return an ArrayList of all GridCells currently in the open set. */
+	public ArrayList<GridCell> getOpenArrayList() {
+		ArrayList<GridCell> open = new ArrayList<GridCell>(openCount);
+		for (int i = 0; i < openCount; i++) {
+			open.add(grid.getCell(heap[i]));
+		}
+		return open;
+	}
+}
@@ -0,0 +1,115 @@
+package agents;
+
+import java.util.Random;
+
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Compares the anytime agents (RestartingWeightedAStar, AnytimeRepairingAStar
+ * and AnytimeNonparametricAStar) on solution cost over time.
+ *
+ *     java agents.AnytimeBenchmark maps/AR0202SR.map [manhattan] [deadline ms]
+ *
+ * The agents plan the same random queries under the same deadline. For each
+ * fraction of the deadline this prints each agent's mean solution quality:
+ * the best cost found for a query by any agent, divided by the cost of
+ * the agent's best solution at that time (or zero if it had none). The first
+ * queries are slow while the JIT warms up.
+ */
+public class AnytimeBenchmark {
+
+	private final static int QUERY_COUNT = 20;
+	private final static long DEFAULT_DEADLINE = 1000;
+	private final static double[] CHECKPOINTS = { 0.05, 0.1, 0.25, 0.5, 1.0 };
+	private final static String[] AGENT_NAMES = { "RWA*", "ARA*", "ANA*" };
+
+	/**
+	 * @param args map file, then optionally "manhattan" for a four connected
+	 *             map, and the deadline in milliseconds
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: AnytimeBenchmark <map file> [manhattan] [deadline ms]");
+			return;
+		}
+		boolean eightConnected = true;
+		long deadline = DEFAULT_DEADLINE;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("manhattan")) {
+				eightConnected = false;
+			} else {
+				deadline = Long.parseLong(args[i]);
+			}
+		}
+
+		GridDomain map = MapFileDomain.load(args[0], eightConnected);
+		GridSnapshot grid = new GridSnapshot(map);
+		Bitboard bitboard = new Bitboard(grid);
+
+		// Random queries with a path between start and goal.
+		Random random = new Random(1);
+		SolutionLog[][] logs = new SolutionLog[AGENT_NAMES.length][QUERY_COUNT];
+		for (int q = 0; q < QUERY_COUNT; q++) {
+			int start;
+			int goal;
+			do {
+				start = randomPassableCell(grid, random);
+				goal = randomPassableCell(grid, random);
+			} while (start == goal || bitboard.isReachable(start, goal) == false);
+
+			GridCell startCell = grid.getCell(start);
+			GridCell goalCell = grid.getCell(goal);
+
+			RestartingWeightedAStar rwa = new RestartingWeightedAStar();
+			rwa.getNextMove(map, startCell, goalCell, 0, 0, deadline);
+			logs[0][q] = rwa.getSolutionLog();
+
+			AnytimeRepairingAStar ara = new AnytimeRepairingAStar();
+			ara.getNextMove(map, startCell, goalCell, 0, 0, deadline);
+			logs[1][q] = ara.getSolutionLog();
+
+			AnytimeNonparametricAStar ana = new AnytimeNonparametricAStar();
+			ana.getNextMove(map, startCell, goalCell, 0, 0, deadline);
+			logs[2][q] = ana.getSolutionLog();
+		}
+
+		// Score each solution on the best cost any agent found for its query.
+		float[] bestCosts = new float[QUERY_COUNT];
+		for (int q = 0; q < QUERY_COUNT; q++) {
+			bestCosts[q] = Float.POSITIVE_INFINITY;
+			for (int agent = 0; agent < AGENT_NAMES.length; agent++) {
+				bestCosts[q] = Math.min(bestCosts[q], logs[agent][q].getCostAt(Long.MAX_VALUE));
+			}
+		}
+
+		System.out.println("Deadline " + deadline + "ms, " + QUERY_COUNT + " queries");
+		for (int c = 0; c < CHECKPOINTS.length; c++) {
+			long time = (long) (CHECKPOINTS[c] * deadline * 1000000);
+			System.out.print("At " + time / 1000000 + "ms:");
+			for (int agent = 0; agent < AGENT_NAMES.length; agent++) {
+				double quality = 0;
+				int solved = 0;
+				for (int q = 0; q < QUERY_COUNT; q++) {
+					float cost = logs[agent][q].getCostAt(time);
+					if (Float.isInfinite(cost) == false) {
+						quality += bestCosts[q] / cost;
+						solved++;
+					}
+				}
+				System.out.print(" " + AGENT_NAMES[agent] +
+						" quality " + String.format("%.3f", quality / QUERY_COUNT) +
+						" (" + solved + " solved)");
+			}
+			System.out.println();
+		}
+	}
+
+	private static int randomPassableCell(GridSnapshot grid, Random random) {
+		int cell;
+		do {
+			cell = random.nextInt(grid.getSize());
+		} while (grid.isPassable(cell) == false);
+		return cell;
+	}
+}
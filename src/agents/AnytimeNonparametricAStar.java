@@ -0,0 +1,174 @@
+package agents;
+import java.util.ArrayList;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import pplanning.interfaces.PlanningAgent;
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Anytime Nonparametric A* (van den Berg, Shah, Huang & Goldberg 2011).
+ *
+ * Expands the open cell with the greatest e = (G - g) / h, where G is the
+ * cost of the incumbent: the cell most likely to lead to a path cheaper than
+ * G. With no incumbent this is a greedy search on h. Each solution found
+ * lowers G, and the search simply carries on from the same open list, so
+ * there is no initial weight or decay rate to tune for each map.
+ *
+ * The largest e of any expanded cell bounds the incumbent's suboptimality,
+ * and the search stops once no open cell can beat the incumbent.
+ */
+public class AnytimeNonparametricAStar implements PlanningAgent {
+	// plan to execute
+	private ComputedPlan plan;
+
+	AnaMapInfo mapInfo;
+
+	private int stepNo = 0;
+
+	// For timing.
+	final ThreadMXBean threadMX = ManagementFactory.getThreadMXBean();
+
+	private final long MS_TO_NS = 1000000;
+
+	final private long SEARCH_END_TIME_OFFSET = 20000000;
+
+	// Solutions found by the last search.
+	private SolutionLog solutionLog = new SolutionLog();
+
+	@Override
+	public GridCell getNextMove(GridDomain map, GridCell start, GridCell goal,
+			int stepLeft, long stepTime, long timeLeft) {
+
+		try {
+			GridCell nextStep = null;
+
+			if (plan == null) {
+				long currentTime = threadMX.getCurrentThreadCpuTime();
+				long searchTime = timeLeft * MS_TO_NS - SEARCH_END_TIME_OFFSET;
+
+				plan = generatePlan(map, start, goal, currentTime + searchTime);
+				stepNo = 0;
+			}
+
+			if (plan == null) {
+				System.out.println("Could not find goal");
+				return start;
+			}
+
+			if (stepNo < plan.getLength()) {
+				nextStep = (GridCell) plan.getStep(stepNo++);
+
+				if (nextStep == null)
+				{
+					Trace.print("next step is null!");
+				}
+			}
+
+			return nextStep;
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			return start;
+		}
+	}
+
+	private ComputedPlan generatePlan(GridDomain map, GridCell start,
+			GridCell goal, long deadlineTime) {
+
+		threadMX.setThreadCpuTimeEnabled(true);
+		solutionLog.start(threadMX.getCurrentThreadCpuTime());
+
+		GridSnapshot snapshot = new GridSnapshot(map);
+		int[] directions = snapshot.getDirections();
+		int startIndex = snapshot.getIndex(start);
+		int goalIndex = snapshot.getIndex(goal);
+
+		// Incumbent plan.
+		ComputedPlan solution = null;
+
+		// Largest e expanded since the last solution, which bounds its
+		// suboptimality.
+		float bestE = Float.POSITIVE_INFINITY;
+
+		mapInfo = new AnaMapInfo(snapshot);
+		mapInfo.setPath(startIndex, 0f, snapshot.getHCost(startIndex, goalIndex), -1);
+
+		while (mapInfo.isOpenEmpty() == false &&
+				threadMX.getCurrentThreadCpuTime() < deadlineTime) {
+
+			int current = mapInfo.closeBestOpen();
+			bestE = Math.min(bestE, mapInfo.getE(current));
+
+			if (current == goalIndex) {
+				float cost = mapInfo.getGCost(goalIndex);
+				solution = mapInfo.computePlan(goalIndex);
+				solutionLog.record(threadMX.getCurrentThreadCpuTime(), cost);
+
+				// Carry on from the same open list, towards paths cheaper than this.
+				mapInfo.setIncumbentCost(cost);
+				Trace.print("suboptimality bound = " + Math.min(bestE, mapInfo.getSuboptimalityBound()));
+				bestE = Float.POSITIVE_INFINITY;
+				continue;
+			}
+
+			float gCurrent = mapInfo.getGCost(current);
+			for (int i = 0; i < directions.length; i++) {
+				int neighbor = snapshot.getNeighbour(current, directions[i]);
+				if (neighbor == -1) {
+					continue;
+				}
+
+				float gCost = gCurrent + snapshot.getCost(neighbor);
+				if (mapInfo.isGenerated(neighbor) &&
+						FloatUtil.compare(gCost, mapInfo.getGCost(neighbor)) != -1) {
+					continue;
+				}
+
+				// Only keep paths that might beat the incumbent.
+				float hCost = snapshot.getHCost(neighbor, goalIndex);
+				if (FloatUtil.compare(gCost + hCost, mapInfo.getIncumbentCost()) == -1) {
+					mapInfo.setPath(neighbor, gCost, hCost, current);
+				}
+			}
+		}
+
+		Trace.print("ANA* expansions: " + mapInfo.getExpansionCount());
+
+		// Return incumbent solution or null if none has been found.
+		return solution;
+	}
+
+	/**
+	 * Solutions found by the last search, and when.
+	 */
+	public SolutionLog getSolutionLog() {
+		return solutionLog;
+	}
+
+	// Do we want to show extra info? (e.g., close and open nodes, current path)
+	@Override
+	public Boolean showInfo() {
+		return mapInfo != null;
+	}
+
+	@Override
+	public ArrayList<GridCell> expandedNodes() {
+		return mapInfo.getClosedArrayList();
+	}
+
+	@Override
+	public ArrayList<GridCell> unexpandedNodes() {
+		return mapInfo.getOpenArrayList();
+	}
+
+
+	@Override
+	public ComputedPlan getPath() {
+		return plan;
+	}
+
+}
@@ -0,0 +1,209 @@
+package agents;
+import java.util.ArrayList;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.State;
+import pplanning.interfaces.PlanningAgent;
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Anytime Repairing A* (Likhachev, Gordon & Thrun 2003).
+ *
+ * Like RestartingWeightedAStar this runs weighted A* with a falling weight,
+ * but it does not start each iteration again from the start cell. Cells
+ * whose g drops after they have been expanded are kept on an INCONS list,
+ * and the next iteration begins from the open set plus those cells, with
+ * everything else reused. Within an iteration no cell is expanded twice.
+ *
+ * The heuristic is the snapshot's consistent h, under which each solution is
+ * within the current weight of optimal.
+ */
+public class AnytimeRepairingAStar implements PlanningAgent {
+	// plan to execute
+	private ComputedPlan plan;
+
+	AraMapInfo mapInfo;
+
+	private int stepNo = 0;
+
+	// For timing.
+	final ThreadMXBean threadMX = ManagementFactory.getThreadMXBean();
+
+	// Same schedule as RestartingWeightedAStar, for comparison.
+	private final float INITIAL_H_WEIGHT = 5.0f;
+	private final float DECAY_RATE = 0.6f;
+
+	private final long MS_TO_NS = 1000000;
+
+	final private long SEARCH_END_TIME_OFFSET = 20000000;
+
+	// Solutions found by the last search.
+	private SolutionLog solutionLog = new SolutionLog();
+
+	@Override
+	public GridCell getNextMove(GridDomain map, GridCell start, GridCell goal,
+			int stepLeft, long stepTime, long timeLeft) {
+
+		try {
+			GridCell nextStep = null;
+
+			if (plan == null) {
+				long currentTime = threadMX.getCurrentThreadCpuTime();
+				long searchTime = timeLeft * MS_TO_NS - SEARCH_END_TIME_OFFSET;
+
+				plan = generatePlan(map, start, goal, currentTime + searchTime);
+				stepNo = 0;
+			}
+
+			if (plan == null) {
+				System.out.println("Could not find goal");
+				return start;
+			}
+
+			if (stepNo < plan.getLength()) {
+				nextStep = (GridCell) plan.getStep(stepNo++);
+
+				if (nextStep == null)
+				{
+					Trace.print("next step is null!");
+				}
+			}
+
+			return nextStep;
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			return start;
+		}
+	}
+
+	private ComputedPlan generatePlan(GridDomain map, GridCell start,
+			GridCell goal, long deadlineTime) {
+
+		threadMX.setThreadCpuTimeEnabled(true);
+		solutionLog.start(threadMX.getCurrentThreadCpuTime());
+
+		GridSnapshot snapshot = new GridSnapshot(map);
+		int goalIndex = snapshot.getIndex(goal);
+
+		// Incumbent plan.
+		ComputedPlan solution = null;
+
+		mapInfo = new AraMapInfo(map, INITIAL_H_WEIGHT);
+		mapInfo.add(start, 0f, snapshot.getHCost(snapshot.getIndex(start), goalIndex), null);
+
+		while (threadMX.getCurrentThreadCpuTime() < deadlineTime) {
+
+			// Expand until no open cell can lead to a cheaper path to the goal
+			// under the current weight.
+			boolean isComplete = improvePath(map, snapshot, goal, goalIndex, deadlineTime);
+
+			if (mapInfo.cellExists(goal) == false) {
+				// Either out of time or no path exists.
+				break;
+			}
+
+			// Store incumbent.
+			float cost = mapInfo.getGCost(goal);
+			if (solution == null || FloatUtil.compare(cost, solution.getCost()) == -1) {
+				solution = mapInfo.computePlan(goal);
+				solutionLog.record(threadMX.getCurrentThreadCpuTime(), cost);
+			}
+
+			if (isComplete == false) {
+				break;
+			}
+
+			// Proven optimal?
+			float weight = mapInfo.getHWeight();
+			float suboptimality = Math.min(weight, cost / mapInfo.getLowestUnweightedFCost());
+			Trace.print("weight = " + weight + ", suboptimality bound = " + suboptimality);
+			if (FloatUtil.compare(suboptimality, 1.0f) != 1) {
+				break;
+			}
+
+			// Continue with a lower weight, reusing the search so far.
+			mapInfo.startIteration(Math.max(1.0f, weight * DECAY_RATE));
+		}
+
+		Trace.print("ARA* expansions: " + mapInfo.getExpansionCount());
+
+		// Return incumbent solution or null if none has been found.
+		return solution;
+	}
+
+	/**
+	 * One iteration of ARA*: weighted A* that puts improved closed cells on
+	 * the INCONS list instead of expanding them again.
+	 * @return true if the iteration finished, false if time ran out
+	 */
+	private boolean improvePath(GridDomain map, GridSnapshot snapshot,
+			GridCell goal, int goalIndex, long deadlineTime) {
+
+		// Stop once the goal's g (its f, as h is zero) is no worse than the
+		// cheapest open cell's f.
+		while (mapInfo.isOpenEmpty() == false &&
+				(mapInfo.cellExists(goal) == false ||
+				FloatUtil.compare(mapInfo.getGCost(goal), mapInfo.getCheapestOpenFCost()) == 1)) {
+
+			if (threadMX.getCurrentThreadCpuTime() >= deadlineTime) {
+				return false;
+			}
+
+			GridCell current = mapInfo.closeCheapestOpen();
+
+			for (State stateIter : map.getSuccessors(current)) {
+				GridCell neighbor = (GridCell) stateIter;
+
+				if (map.isBlocked(neighbor)) {
+					continue;
+				}
+
+				float gCost = mapInfo.getGCost(current) + map.cost(current, neighbor);
+
+				if (mapInfo.cellExists(neighbor) == false) {
+					float hCost = snapshot.getHCost(snapshot.getIndex(neighbor), goalIndex);
+					mapInfo.add(neighbor, gCost, hCost, current);
+				} else if (FloatUtil.compare(gCost, mapInfo.getGCost(neighbor)) == -1) {
+					mapInfo.improve(neighbor, gCost, current);
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Solutions found by the last search, and when.
+	 */
+	public SolutionLog getSolutionLog() {
+		return solutionLog;
+	}
+
+	// Do we want to show extra info? (e.g., close and open nodes, current path)
+	@Override
+	public Boolean showInfo() {
+		return mapInfo != null;
+	}
+
+	@Override
+	public ArrayList<GridCell> expandedNodes() {
+		return mapInfo.getClosedArrayList();
+	}
+
+	@Override
+	public ArrayList<GridCell> unexpandedNodes() {
+		return mapInfo.getOpenArrayList();
+	}
+
+
+	@Override
+	public ComputedPlan getPath() {
+		return plan;
+	}
+
+}
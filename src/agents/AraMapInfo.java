@@ -0,0 +1,314 @@
+package agents;
+
+import java.util.PriorityQueue;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+import pplanning.simviewer.model.GridCoord;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+
+/**
+ * Cell metadata for AnytimeRepairingAStar.
+ *
+ * As well as the open and closed sets this keeps the INCONS list: closed
+ * cells whose g has dropped since they were expanded. Rather than start
+ * again, each search iteration puts only these back on the open set. Cells
+ * closed in an earlier iteration are SEEN; they keep their g and parent, and
+ * are only reopened if a cheaper path reaches them.
+ *
+ * The closed and INCONS cells are listed as they are added, so starting a new
+ * iteration costs time in the cells touched rather than in the map size.
+ */
+public class AraMapInfo implements Comparator<GridCell> {
+
+	GridDomain map;
+
+	// Priority queue for the open set, on g + weight * h.
+	private PriorityQueue<GridCell> openQueue;
+
+	// Cells closed this iteration, and those of them that are inconsistent.
+	private ArrayList<GridCell> closedCells;
+	private ArrayList<GridCell> inconsCells;
+
+	// Cell properties.
+	private CellSetMembership[][] sets;
+	private boolean[][]           isIncons;
+	private GridCell[][]          parents;
+	private float[][]             gCosts;
+	private float[][]             hCosts;
+
+	// Heuristic weight (epsilon).
+	private float                 hWeight;
+
+	private int expansionCount = 0;
+
+	private final int INITIAL_QUEUE_CAPACITY = 11;
+
+	/**
+	 * Construct a new AraMapInfo.
+	 * @param map the map to store information about
+	 * @param hWeight the initial heuristic weight
+	 */
+	public AraMapInfo(GridDomain map, float hWeight) {
+		this.map = map;
+		int width = map.getWidth();
+		int height = map.getHeight();
+
+		// Initialize arrays.
+		this.sets     = new CellSetMembership[width][height];
+		this.isIncons = new boolean[width][height];
+		this.parents  = new GridCell[width][height];
+		this.gCosts   = new float[width][height];
+		this.hCosts   = new float[width][height];
+
+		this.hWeight = hWeight;
+
+		this.openQueue = new PriorityQueue<GridCell>(INITIAL_QUEUE_CAPACITY, this);
+		this.closedCells = new ArrayList<GridCell>();
+		this.inconsCells = new ArrayList<GridCell>();
+	}
+
+	public ComputedPlan computePlan(GridCell goal)
+	{
+		ComputedPlan plan = new ComputedPlan();
+
+		GridCell cell = goal;
+		while (cell != null) {
+			plan.prependStep(cell);
+			cell = getParent(cell);
+		}
+
+		plan.setCost(getGCost(goal));
+		return plan;
+	}
+
+	/**
+	 * Add cell to open set. This will fail if cell has already been added.
+	 * @param cell            the cell
+	 * @param gCost           the cost to get to the cell
+	 * @param hCost           the heuristic estimate to get to the goal
+	 * @param parent          the previous cell in a path
+	 */
+	public void add(GridCell cell, float gCost, float hCost, GridCell parent)
+	{
+		CellSetMembership prevSet = getSetMembership(cell);
+		if (prevSet != CellSetMembership.NONE) {
+			throw new IllegalArgumentException("Cannot add cell " + cell +
+					", which has already been added as to the " + prevSet + ".");
+		}
+
+		int x = cell.getCoord().getX();
+		int y = cell.getCoord().getY();
+
+		gCosts[x][y] = gCost;
+		hCosts[x][y] = hCost;
+		parents[x][y] = parent;
+
+		sets[x][y] = CellSetMembership.OPEN;
+		openQueue.offer(cell);
+	}
+
+	/**
+	 * Record a cheaper path to a cell that has already been added. Open cells
+	 * are requeued, cells seen in an earlier iteration are reopened, and
+	 * cells closed in this iteration go on the INCONS list.
+	 */
+	public void improve(GridCell cell, float gCost, GridCell parent) {
+		GridCoord gc = cell.getCoord();
+		int x = gc.getX();
+		int y = gc.getY();
+
+		switch (getSetMembership(cell)) {
+			case OPEN: {
+				openQueue.remove(cell);
+				gCosts[x][y] = gCost;
+				openQueue.offer(cell);
+				break;
+			}
+			case SEEN: {
+				gCosts[x][y] = gCost;
+				sets[x][y] = CellSetMembership.OPEN;
+				openQueue.offer(cell);
+				break;
+			}
+			case CLOSED: {
+				gCosts[x][y] = gCost;
+				if (isIncons[x][y] == false) {
+					isIncons[x][y] = true;
+					inconsCells.add(cell);
+				}
+				break;
+			}
+			default: {
+				throw new IllegalArgumentException("Cell is not in a set.");
+			}
+		}
+
+		parents[x][y] = parent;
+	}
+
+	/**
+	 * Start a new search iteration with a lower weight. Closed cells become
+	 * seen, the INCONS list is moved to the open set, and the open set is
+	 * reordered on the new weight.
+	 */
+	public void startIteration(float hWeight) {
+		this.hWeight = hWeight;
+
+		for (GridCell cell : closedCells) {
+			GridCoord gc = cell.getCoord();
+			sets[gc.getX()][gc.getY()] = CellSetMembership.SEEN;
+		}
+		closedCells.clear();
+
+		ArrayList<GridCell> cells = new ArrayList<GridCell>(openQueue);
+		for (GridCell cell : inconsCells) {
+			GridCoord gc = cell.getCoord();
+			isIncons[gc.getX()][gc.getY()] = false;
+			sets[gc.getX()][gc.getY()] = CellSetMembership.OPEN;
+			cells.add(cell);
+		}
+		inconsCells.clear();
+
+		// Keys have changed, so the heap must be rebuilt.
+		openQueue.clear();
+		openQueue.addAll(cells);
+	}
+
+	/**
+	 * Lowest g + h (unweighted) of the cells in the open set and the INCONS
+	 * list. Divided into the incumbent's cost this bounds its suboptimality.
+	 */
+	public float getLowestUnweightedFCost() {
+		float lowest = Float.POSITIVE_INFINITY;
+		for (GridCell cell : openQueue) {
+			lowest = Math.min(lowest, getGCost(cell) + getHCost(cell));
+		}
+		for (GridCell cell : inconsCells) {
+			lowest = Math.min(lowest, getGCost(cell) + getHCost(cell));
+		}
+		return lowest;
+	}
+
+	/**
+	 * Returns true if there are no cells in the open set.
+	 */
+	public boolean isOpenEmpty() {
+		return openQueue.isEmpty();
+	}
+
+	/**
+	 * f cost of the cheapest open cell, or infinity if there is none.
+	 */
+	public float getCheapestOpenFCost() {
+		GridCell cell = openQueue.peek();
+		return cell == null ? Float.POSITIVE_INFINITY : getFCost(cell);
+	}
+
+	/**
+	 * Move cheapest open cell to the closed set and return it.
+	 * @return the cell formerly the cheapest from the open set
+	 */
+	public GridCell closeCheapestOpen()
+	{
+		GridCell cell = openQueue.poll();
+
+		if (cell == null) {
+			throw new IllegalStateException(
+					"Open set is empty - cannot close cheapest open cell");
+		}
+
+		GridCoord gc = cell.getCoord();
+		sets[gc.getX()][gc.getY()] = CellSetMembership.CLOSED;
+		closedCells.add(cell);
+		expansionCount++;
+
+		return cell;
+	}
+
+	/**
+	 * Number of expansions over every iteration so far.
+	 */
+	public int getExpansionCount() {
+		return expansionCount;
+	}
+
+	public float getHWeight() {
+		return hWeight;
+	}
+
+	public GridCell getParent(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		return parents[gc.getX()][gc.getY()];
+	}
+
+	public float getFCost(GridCell cell) {
+		return getGCost(cell) + hWeight * getHCost(cell);
+	}
+
+	public float getGCost(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		return gCosts[gc.getX()][gc.getY()];
+	}
+
+	/**
+	 * Get heuristic cost estimate from this cell to the goal.
+	 * @param cell the cell h is estimated from
+	 */
+	public float getHCost(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		return hCosts[gc.getX()][gc.getY()];
+	}
+
+	/**
+	 * Get set that this cell is currently in.
+	 * @param cell the cell to check
+	 * @return the set that the cell is in, or NONE if it has not been added.
+	 */
+	public CellSetMembership getSetMembership(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		CellSetMembership set = sets[gc.getX()][gc.getY()];
+		return set == null ? CellSetMembership.NONE : set;
+	}
+
+	/**
+	 * Check if cell has been generated.
+	 * @param cell the cell to check
+	 * @return true if the cell belongs to any set, otherwise false
+	 */
+	public boolean cellExists(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		return (sets[gc.getX()][gc.getY()] != null);
+	}
+
+	/* -- GRID CELL COMPARATOR -- */
+
+	/**
+	 * Compare cells on their weighted f cost, breaking ties on h.
+	 * @param a grid cell 1
+	 * @param b grid cell 2
+	 * @return 0, -1 or 1 if a is equal to, less than or greater than b respectively
+	 */
+	public int compare(GridCell a, GridCell b) {
+		int fCompare = FloatUtil.compare(getFCost(a), getFCost(b));
+		if (fCompare != 0) {
+			return fCompare;
+		}
+		return FloatUtil.compare(getHCost(a), getHCost(b));
+	}
+
+	/* -- DEBUG -- */
+
+	/** Return an ArrayList of all the GridCells closed in this iteration. */
+	public ArrayList<GridCell> getClosedArrayList() {
+		return new ArrayList<GridCell>(closedCells);
+	}
+
+	/** Return an ArrayList of all GridCells currently in the open set. */
+	public ArrayList<GridCell> getOpenArrayList() {
+		return new ArrayList<GridCell>(openQueue);
+	}
+}
@@ -0,0 +1,245 @@
+package agents;
+
+import java.util.ArrayList;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.Edge;
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * Beam search for incumbent plans under very short deadlines.
+ *
+ * The search moves out from the start a layer at a time, keeping only the
+ * best cells of each layer (the fewest moves from the goal) and dropping the
+ * rest. The time taken is then about the beam width times the length of the
+ * path, however large the map, where a greedy search can wander through much
+ * of it. The price is completeness: if every cell of a layer has been seen
+ * before the beam dies, and no plan is returned.
+ *
+ * The beam width is chosen for each layer from the time left, the moves
+ * still to go and the time per expansion measured in earlier searches, so
+ * that the search ends within its time limit; should it run out of time
+ * anyway, it gives up and returns no plan. The beam arrays are sized by the
+ * largest width, but the NodeStore and the layer stamps hold an entry for
+ * every cell of the map. All are allocated up front, so a search allocates
+ * nothing but its plan.
+ */
+public class BeamSearch implements IncumbentProvider {
+
+	// Assumed length of a path, as a multiple of its moves in the open.
+	private final static int DETOUR_FACTOR = 2;
+
+	// Time per expansion assumed before any has been measured.
+	private final static long INITIAL_EXPANSION_TIME = 300;
+
+	// Fewest expansions worth measuring the time per expansion from.
+	private final static int MIN_MEASURED_EXPANSIONS = 1000;
+
+	private GridSnapshot grid;
+	private NodeStore nodes;
+	private int maxWidth;
+
+	// Time allowed for the next search, or 0 to always use the largest width.
+	private long timeLimit = 0;
+
+	// Measured time per expansion, in nanoseconds.
+	private long expansionTime = INITIAL_EXPANSION_TIME;
+
+	// The cells of the current layer.
+	private int[] beam;
+	private int beamSize;
+
+	// Successors of the current layer: cell, parent and moves to the goal.
+	private int[] candidates;
+	private int[] candidateParents;
+	private int[] candidateKeys;
+
+	// Layer in which each cell was last a candidate, so each is taken once.
+	private int[] layerStamps;
+	private int layer = 0;
+
+	private int expansionCount = 0;
+
+	/**
+	 * @param grid     the map
+	 * @param maxWidth the most cells kept in a layer
+	 */
+	public BeamSearch(GridSnapshot grid, int maxWidth) {
+		this.grid = grid;
+		this.nodes = new NodeStore(grid);
+		this.maxWidth = maxWidth;
+
+		int maxCandidates = maxWidth * SuccessorBatch.MAX_SUCCESSORS;
+		beam             = new int[maxWidth];
+		candidates       = new int[maxCandidates];
+		candidateParents = new int[maxCandidates];
+		candidateKeys    = new int[maxCandidates];
+		layerStamps      = new int[grid.getSize()];
+	}
+
+	/**
+	 * Nothing is precomputed; the snapshot is read directly.
+	 */
+	public void update(ArrayList<Edge> changedEdges) {
+	}
+
+	/**
+	 * Set the time the next searches may take. A search that runs out of time
+	 * returns no plan.
+	 * @param timeLimit nanoseconds, or 0 for no limit, always using the
+	 *                  largest width
+	 */
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+
+	public ComputedPlan findIncumbent(GridCell start, GridCell goal) {
+		return search(grid.getIndex(start), grid.getIndex(goal));
+	}
+
+	/**
+	 * Find a path between two cells.
+	 * @param start index of the cell to search from
+	 * @param goal  index of the cell to search to
+	 * @return a plan from start to goal (including start), or null if the
+	 *         beam died out or time ran out before reaching the goal
+	 */
+	public ComputedPlan search(int start, int goal) {
+		long startTime = System.nanoTime();
+		long deadline = startTime + timeLimit;
+		nodes.clear();
+		expansionCount = 0;
+
+		if (grid.isPassable(start) == false || grid.isPassable(goal) == false) {
+			return null;
+		}
+
+		nodes.generate(start, 0f, -1);
+		if (start == goal) {
+			return nodes.computePlan(goal);
+		}
+		beam[0] = start;
+		beamSize = 1;
+		int beamDistance = grid.getDistance(start, goal);
+
+		ComputedPlan plan = null;
+		int[] directions = grid.getDirections();
+		while (beamSize > 0 && plan == null) {
+			layer++;
+
+			// Gather the successors of the layer not seen before.
+			int candidateCount = 0;
+			for (int b = 0; b < beamSize && plan == null; b++) {
+				int current = beam[b];
+				expansionCount++;
+				for (int i = 0; i < directions.length; i++) {
+					int neighbour = grid.getNeighbour(current, directions[i]);
+					if (neighbour == -1 || nodes.isGenerated(neighbour) ||
+							layerStamps[neighbour] == layer) {
+						continue;
+					}
+					if (neighbour == goal) {
+						nodes.generate(goal, nodes.getGCost(current) + grid.getCost(goal), current);
+						plan = nodes.computePlan(goal);
+						break;
+					}
+					layerStamps[neighbour] = layer;
+					candidates[candidateCount] = neighbour;
+					candidateParents[candidateCount] = current;
+					candidateKeys[candidateCount] = grid.getDistance(neighbour, goal);
+					candidateCount++;
+				}
+			}
+
+			// Give up if time has run out, as even a beam one cell wide may be
+			// far from the goal.
+			long timeCurrent = System.nanoTime();
+			if (plan == null && timeLimit != 0 && timeCurrent >= deadline) {
+				break;
+			}
+
+			// Keep the best of them as the next layer.
+			int width = chooseWidth(deadline - timeCurrent, beamDistance);
+			if (candidateCount > width) {
+				selectBest(candidateCount, width);
+				candidateCount = width;
+			}
+			beamSize = candidateCount;
+			beamDistance = Integer.MAX_VALUE;
+			for (int c = 0; c < candidateCount; c++) {
+				int cell = candidates[c];
+				int parent = candidateParents[c];
+				nodes.generate(cell, nodes.getGCost(parent) + grid.getCost(cell), parent);
+				beam[c] = cell;
+				beamDistance = Math.min(beamDistance, candidateKeys[c]);
+			}
+		}
+
+		// Learn how long an expansion takes, for choosing later widths.
+		if (expansionCount >= MIN_MEASURED_EXPANSIONS) {
+			expansionTime = Math.max(1, (System.nanoTime() - startTime) / expansionCount);
+		}
+		return plan;
+	}
+
+	/**
+	 * The width that spends the time left evenly over the moves still to go.
+	 * @param timeLeft     time until the search must end, in nanoseconds
+	 * @param beamDistance fewest moves from the goal of a cell in the beam
+	 */
+	private int chooseWidth(long timeLeft, int beamDistance) {
+		if (timeLimit == 0) {
+			return maxWidth;
+		}
+		long layersLeft = Math.max(1, (long) DETOUR_FACTOR * beamDistance);
+		long width = timeLeft / (expansionTime * layersLeft);
+		return (int) Math.max(1, Math.min(width, maxWidth));
+	}
+
+	/**
+	 * Partially sort the candidates (quickselect), so that the first count
+	 * have the fewest moves to the goal.
+	 */
+	private void selectBest(int candidateCount, int count) {
+		int left = 0;
+		int right = candidateCount - 1;
+		while (left < right) {
+			int pivot = candidateKeys[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (candidateKeys[i] < pivot) i++;
+				while (candidateKeys[j] > pivot) j--;
+				if (i <= j) {
+					swapCandidates(i++, j--);
+				}
+			}
+			if (count - 1 <= j) {
+				right = j;
+			} else if (count - 1 >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void swapCandidates(int a, int b) {
+		int cell = candidates[a];
+		candidates[a] = candidates[b];
+		candidates[b] = cell;
+		int parent = candidateParents[a];
+		candidateParents[a] = candidateParents[b];
+		candidateParents[b] = parent;
+		int key = candidateKeys[a];
+		candidateKeys[a] = candidateKeys[b];
+		candidateKeys[b] = key;
+	}
+
+	/**
+	 * Number of cells expanded by the last search.
+	 */
+	public int getExpansionCount() {
+		return expansionCount;
+	}
+}
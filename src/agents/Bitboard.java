@@ -0,0 +1,460 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import au.rmit.ract.planning.pathplanning.entity.Edge;
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * The passable cells of a map packed 64 to a long, with breadth first
+ * searches that advance a whole row of words at a time.
+ *
+ * Each row starts on a new word; bit (x % 64) of word (y * wordsPerRow + x / 64)
+ * is set when cell (x, y) is passable. One step of a search "dilates" the
+ * frontier by a cell in every legal direction using shifts and ors, and masks
+ * it with the passable cells and those not yet reached. Every cell reached in
+ * step n is n moves from the source, so on maps where every cell costs the
+ * same these are exact distances.
+ *
+ * GreedyBestFirst, AStar and DeadlineAwareSearch use its component labels to
+ * reject a start and goal that are not connected without searching, and the
+ * benchmarks use it to pick queries with a path, and to find reference
+ * distances. DeadEndRegions finds connected components as part of its depth
+ * first search for articulation points, which a wavefront cannot find, so it
+ * does not use this.
+ */
+public class Bitboard {
+
+	private GridSnapshot grid;
+
+	private int width;
+	private int height;
+	private int wordsPerRow;
+	private boolean eightConnected;
+
+	// Passable cells.
+	private long[] passable;
+
+	// Search scratch space: cells reached, the current frontier, and the next.
+	private long[] reached;
+	private long[] frontier;
+	private long[] next;
+
+	// Rows the frontier lies in, and the span of words used in each.
+	private int[] activeRows;
+	private int activeCount;
+	private int[] spanFrom;
+	private int[] spanTo;
+
+	// Rows the next frontier may lie in, and the words to examine in each.
+	private int[] candidateRows;
+	private int[] candidateFrom;
+	private int[] candidateTo;
+	private int[] candidateStamps;
+	private int stamp = 0;
+
+	// Rows reached by the last search, which are always contiguous, and the
+	// span of words used in each. Only these are cleared for the next search.
+	private int reachedFirstRow = 0;
+	private int reachedLastRow = -1;
+	private int[] reachedFrom;
+	private int[] reachedTo;
+
+	// Connected component of each cell (-1 if impassable), or null if stale.
+	private int[] components = null;
+	private int componentCount;
+
+	public Bitboard(GridSnapshot grid) {
+		this.grid = grid;
+		this.width = grid.getWidth();
+		this.height = grid.getHeight();
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.eightConnected = grid.isEightConnected();
+
+		int words = wordsPerRow * height;
+		passable = new long[words];
+		reached = new long[words];
+		frontier = new long[words];
+		next = new long[words];
+
+		activeRows = new int[height];
+		spanFrom = new int[height];
+		spanTo = new int[height];
+		candidateRows = new int[height];
+		candidateFrom = new int[height];
+		candidateTo = new int[height];
+		candidateStamps = new int[height];
+		reachedFrom = new int[height];
+		reachedTo = new int[height];
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (grid.isPassable(x, y)) {
+					passable[getWord(x, y)] |= getBit(x);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Refresh the cells at either end of changed edges. The snapshot must
+	 * already have been updated with the same edges.
+	 * @param changedEdges edges as returned by GridDomain.getChangedEdges()
+	 */
+	public void update(ArrayList<Edge> changedEdges) {
+		for (Edge edge : changedEdges) {
+			refreshCell((GridCell) edge.getStart());
+			refreshCell((GridCell) edge.getEnd());
+		}
+	}
+
+	private void refreshCell(GridCell cell) {
+		int x = cell.getCoord().getX();
+		int y = cell.getCoord().getY();
+		boolean isPassable = grid.isPassable(x, y);
+		if (isPassable != isPassable(x, y)) {
+			passable[getWord(x, y)] ^= getBit(x);
+			components = null;
+		}
+	}
+
+	public boolean isPassable(int x, int y) {
+		return (passable[getWord(x, y)] & getBit(x)) != 0;
+	}
+
+	private int getWord(int x, int y) {
+		return y * wordsPerRow + (x >>> 6);
+	}
+
+	private static long getBit(int x) {
+		return 1L << (x & 63);
+	}
+
+	/* -- SEARCHES -- */
+
+	/**
+	 * Number of moves from a cell to every other.
+	 * @param source    index (see GridSnapshot) of a passable cell
+	 * @param distances filled with the distance of each cell, or -1 where it
+	 *                  cannot be reached. Must be the size of the map.
+	 */
+	public void getDistances(int source, int[] distances) {
+		Arrays.fill(distances, -1);
+		startSearch(source);
+		distances[source] = 0;
+
+		for (int distance = 1; advance(); distance++) {
+			// Record the cells reached in this step.
+			for (int r = 0; r < activeCount; r++) {
+				int y = activeRows[r];
+				for (int w = spanFrom[y]; w <= spanTo[y]; w++) {
+					long word = frontier[y * wordsPerRow + w];
+					while (word != 0) {
+						int x = (w << 6) + Long.numberOfTrailingZeros(word);
+						distances[y * width + x] = distance;
+						word &= word - 1;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Number of moves between two cells.
+	 * @return the distance, or -1 if target cannot be reached
+	 */
+	public int getDistance(int source, int target) {
+		if (source == target) {
+			return 0;
+		}
+		startSearch(source);
+
+		int targetWord = getWord(grid.getX(target), grid.getY(target));
+		long targetBit = getBit(grid.getX(target));
+
+		for (int distance = 1; advance(); distance++) {
+			if ((frontier[targetWord] & targetBit) != 0) {
+				return distance;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Can one cell be reached from another?
+	 */
+	public boolean isReachable(int source, int target) {
+		if (grid.isPassable(source) == false || grid.isPassable(target) == false) {
+			return false;
+		}
+		int[] labels = getComponents();
+		return labels[source] == labels[target];
+	}
+
+	/**
+	 * Label each passable cell with the connected component it is in.
+	 *
+	 * Runs of passable cells are read from each row a word at a time, and
+	 * joined to the runs they touch in the row above (diagonally too, on eight
+	 * connected maps) in a union-find over runs. Flooding each component with
+	 * a wavefront instead pays for every step of every wavefront, which is
+	 * slow on maps of long winding corridors.
+	 * @return the label of each cell, or -1 for impassable cells. Labels are
+	 *         numbered from zero, and cached until the map changes.
+	 */
+	public int[] getComponents() {
+		if (components != null) {
+			return components;
+		}
+
+		// Runs in row order (ends exclusive), and the union-find forest over
+		// them. The root of each tree is its first run.
+		int[] runRows = new int[height];
+		int[] runStarts = new int[height];
+		int[] runEnds = new int[height];
+		int[] runParents = new int[height];
+		int runCount = 0;
+		int reach = eightConnected ? 1 : 0;
+		int aboveStart = 0;
+
+		for (int y = 0; y < height; y++) {
+			int rowStart = runCount;
+			int above = aboveStart;
+			for (int x = nextPassable(y, 0); x < width; x = nextPassable(y, x)) {
+				int end = nextBlocked(y, x);
+				if (runCount == runStarts.length) {
+					int capacity = runCount * 2;
+					runRows = Arrays.copyOf(runRows, capacity);
+					runStarts = Arrays.copyOf(runStarts, capacity);
+					runEnds = Arrays.copyOf(runEnds, capacity);
+					runParents = Arrays.copyOf(runParents, capacity);
+				}
+				runRows[runCount] = y;
+				runStarts[runCount] = x;
+				runEnds[runCount] = end;
+				runParents[runCount] = runCount;
+
+				// Join the runs above that touch this one.
+				while (above < rowStart && runEnds[above] + reach <= x) {
+					above++;
+				}
+				for (int r = above; r < rowStart && runStarts[r] < end + reach; r++) {
+					joinRuns(runParents, r, runCount);
+				}
+
+				runCount++;
+				x = end;
+			}
+			aboveStart = rowStart;
+		}
+
+		// Number the trees in order of their first run, and so of their first
+		// cell.
+		components = new int[grid.getSize()];
+		Arrays.fill(components, -1);
+		componentCount = 0;
+		int[] runLabels = new int[runCount];
+		for (int r = 0; r < runCount; r++) {
+			int root = findRun(runParents, r);
+			runLabels[r] = root == r ? componentCount++ : runLabels[root];
+			int rowStart = runRows[r] * width;
+			Arrays.fill(components, rowStart + runStarts[r], rowStart + runEnds[r], runLabels[r]);
+		}
+		return components;
+	}
+
+	private static int findRun(int[] parents, int run) {
+		while (parents[run] != run) {
+			parents[run] = parents[parents[run]];
+			run = parents[run];
+		}
+		return run;
+	}
+
+	/** Join the trees of two runs, keeping the earlier root. */
+	private static void joinRuns(int[] parents, int a, int b) {
+		a = findRun(parents, a);
+		b = findRun(parents, b);
+		if (a < b) {
+			parents[b] = a;
+		} else if (b < a) {
+			parents[a] = b;
+		}
+	}
+
+	/** First passable cell of a row at or after x, or width if there is none. */
+	private int nextPassable(int y, int x) {
+		if (x >= width) {
+			return width;
+		}
+		int rowStart = y * wordsPerRow;
+		int w = x >>> 6;
+		long word = passable[rowStart + w] & (-1L << (x & 63));
+		while (word == 0) {
+			if (++w == wordsPerRow) {
+				return width;
+			}
+			word = passable[rowStart + w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/** First blocked cell of a row at or after x, or width if there is none. */
+	private int nextBlocked(int y, int x) {
+		int rowStart = y * wordsPerRow;
+		int w = x >>> 6;
+		long word = ~passable[rowStart + w] & (-1L << (x & 63));
+		while (word == 0) {
+			if (++w == wordsPerRow) {
+				return width;
+			}
+			word = ~passable[rowStart + w];
+		}
+		return Math.min((w << 6) + Long.numberOfTrailingZeros(word), width);
+	}
+
+	/** Number of connected components, as labelled by getComponents(). */
+	public int getComponentCount() {
+		getComponents();
+		return componentCount;
+	}
+
+	/* -- WAVEFRONT -- */
+
+	/**
+	 * Start a search from a cell. Only the words the last search reached are
+	 * cleared, as any frontier it left lies within them, so a search that
+	 * reached little is cheap to clear after.
+	 */
+	private void startSearch(int source) {
+		for (int y = reachedFirstRow; y <= reachedLastRow; y++) {
+			int rowStart = y * wordsPerRow;
+			Arrays.fill(reached, rowStart + reachedFrom[y], rowStart + reachedTo[y] + 1, 0L);
+			Arrays.fill(frontier, rowStart + reachedFrom[y], rowStart + reachedTo[y] + 1, 0L);
+		}
+
+		int x = grid.getX(source);
+		int y = grid.getY(source);
+		int word = getWord(x, y);
+		reached[word] = getBit(x);
+		frontier[word] = getBit(x);
+
+		activeRows[0] = y;
+		activeCount = 1;
+		spanFrom[y] = x >>> 6;
+		spanTo[y] = x >>> 6;
+
+		reachedFirstRow = y;
+		reachedLastRow = y;
+		reachedFrom[y] = x >>> 6;
+		reachedTo[y] = x >>> 6;
+	}
+
+	/**
+	 * Advance the frontier by one move, to the cells not yet reached that are
+	 * a move away from it. Only the rows around the frontier, and the words
+	 * around those it uses, are examined.
+	 * @return false if there are no such cells, and the search is over
+	 */
+	private boolean advance() {
+		// Gather the rows and words the new frontier may use.
+		stamp++;
+		int candidateCount = 0;
+		for (int r = 0; r < activeCount; r++) {
+			int row = activeRows[r];
+			int from = Math.max(spanFrom[row] - 1, 0);
+			int to = Math.min(spanTo[row] + 1, wordsPerRow - 1);
+			for (int y = Math.max(row - 1, 0); y <= Math.min(row + 1, height - 1); y++) {
+				if (candidateStamps[y] != stamp) {
+					candidateStamps[y] = stamp;
+					candidateRows[candidateCount++] = y;
+					candidateFrom[y] = from;
+					candidateTo[y] = to;
+				} else {
+					candidateFrom[y] = Math.min(candidateFrom[y], from);
+					candidateTo[y] = Math.max(candidateTo[y], to);
+				}
+			}
+		}
+
+		// Cells reachable from each row, and from the rows either side. Rows
+		// outside the frontier are all zero, so can be read freely.
+		for (int c = 0; c < candidateCount; c++) {
+			int y = candidateRows[c];
+			for (int w = candidateFrom[y]; w <= candidateTo[y]; w++) {
+				int i = y * wordsPerRow + w;
+				long word = shiftedRow(y, w);
+				if (y > 0) {
+					word |= eightConnected ? spread(y - 1, w) : frontier[i - wordsPerRow];
+				}
+				if (y < height - 1) {
+					word |= eightConnected ? spread(y + 1, w) : frontier[i + wordsPerRow];
+				}
+				next[i] = word & passable[i] & ~reached[i];
+			}
+		}
+
+		// Clear the old frontier, then swap in the new one.
+		for (int r = 0; r < activeCount; r++) {
+			int y = activeRows[r];
+			Arrays.fill(frontier, y * wordsPerRow + spanFrom[y], y * wordsPerRow + spanTo[y] + 1, 0L);
+		}
+		activeCount = 0;
+		for (int c = 0; c < candidateCount; c++) {
+			int y = candidateRows[c];
+			int from = Integer.MAX_VALUE;
+			int to = Integer.MIN_VALUE;
+			for (int w = candidateFrom[y]; w <= candidateTo[y]; w++) {
+				int i = y * wordsPerRow + w;
+				if (next[i] != 0) {
+					frontier[i] = next[i];
+					reached[i] |= next[i];
+					from = Math.min(from, w);
+					to = w;
+				}
+			}
+			if (from <= to) {
+				activeRows[activeCount++] = y;
+				spanFrom[y] = from;
+				spanTo[y] = to;
+
+				// A new row is next to one already reached.
+				if (y < reachedFirstRow || y > reachedLastRow) {
+					reachedFirstRow = Math.min(reachedFirstRow, y);
+					reachedLastRow = Math.max(reachedLastRow, y);
+					reachedFrom[y] = from;
+					reachedTo[y] = to;
+				} else {
+					reachedFrom[y] = Math.min(reachedFrom[y], from);
+					reachedTo[y] = Math.max(reachedTo[y], to);
+				}
+			}
+		}
+		return activeCount > 0;
+	}
+
+	/**
+	 * A word of the frontier moved one cell left and one cell right, carrying
+	 * bits between neighbouring words of the row.
+	 */
+	private long shiftedRow(int y, int w) {
+		int i = y * wordsPerRow + w;
+		long word = frontier[i];
+		long shifted = (word << 1) | (word >>> 1);
+		if (w > 0) {
+			shifted |= frontier[i - 1] >>> 63;
+		}
+		if (w < wordsPerRow - 1) {
+			shifted |= frontier[i + 1] << 63;
+		}
+		return shifted;
+	}
+
+	/**
+	 * A word of the frontier, spread one cell left and right.
+	 */
+	private long spread(int y, int w) {
+		return frontier[y * wordsPerRow + w] | shiftedRow(y, w);
+	}
+}
@@ -0,0 +1,342 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * Block A* (Yap, Burch, Holte & Schaeffer 2011).
+ *
+ * The map is cut into 4x4 blocks, and the open list holds blocks rather than
+ * cells. Expanding a block takes the g values of its cells on the boundary
+ * (and the start), works out those of every other boundary cell with the
+ * LocalDistanceDatabase, and passes them across to the neighbouring blocks.
+ * One expansion does the work of up to sixteen cell expansions, with one
+ * queue operation per neighbouring block.
+ *
+ * A block's place in the queue is the lowest f of the cells updated since it
+ * was last expanded. The search ends when no block in the queue can improve
+ * on the best path to the goal, and the path found is optimal.
+ *
+ * The local distances count moves, so this only works when every cell costs
+ * the same; search() returns null on maps with weighted terrain.
+ */
+public class BlockAStar implements Comparator<Integer> {
+
+	private final static int BLOCK_SIZE = LocalDistanceDatabase.BLOCK_SIZE;
+	private final static int BLOCK_CELLS = LocalDistanceDatabase.BLOCK_CELLS;
+	private final static int UNREACHABLE = LocalDistanceDatabase.UNREACHABLE;
+
+	private final static int INFINITE = Integer.MAX_VALUE;
+
+	// Local indices of the cells on the edge of a block.
+	private final static int[] BOUNDARY = { 0, 1, 2, 3, 4, 7, 8, 11, 12, 13, 14, 15 };
+
+	private GridSnapshot grid;
+	private LocalDistanceDatabase database;
+
+	private int blocksX;
+	private int blocksY;
+
+	// Obstacle pattern of each block.
+	private int[] patterns;
+
+	// Per cell g (in moves) and parent. A g is only known on the boundary of
+	// blocks, plus the start and goal.
+	private int[] gCosts;
+	private int[] parents;
+
+	// Per block queue data.
+	private int[]     heapValues;
+	private boolean[] isQueued;
+	private boolean[] isExpanded;
+
+	private PriorityQueue<Integer> open;
+
+	// Dead ends to skip, with the query already set, or null.
+	private DeadEndRegions deadEnds = null;
+
+	// Scratch space for expand().
+	private int[] sources = new int[BLOCK_CELLS];
+
+	private int expansionCount = 0;
+
+	/**
+	 * @param grid     the map
+	 * @param database local distances, which may be shared between searches
+	 *                 on maps of the same connectivity
+	 */
+	public BlockAStar(GridSnapshot grid, LocalDistanceDatabase database) {
+		this.grid = grid;
+		this.database = database;
+
+		blocksX = (grid.getWidth() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		blocksY = (grid.getHeight() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int blockCount = blocksX * blocksY;
+
+		patterns = new int[blockCount];
+		for (int block = 0; block < blockCount; block++) {
+			for (int local = 0; local < BLOCK_CELLS; local++) {
+				if (getCell(block, local) == -1) {
+					patterns[block] |= 1 << local;
+				}
+			}
+		}
+
+		gCosts = new int[grid.getSize()];
+		parents = new int[grid.getSize()];
+		heapValues = new int[blockCount];
+		isQueued = new boolean[blockCount];
+		isExpanded = new boolean[blockCount];
+		open = new PriorityQueue<Integer>(64, this);
+	}
+
+	/**
+	 * Do not step out of a block into a dead end. Blocks wholly inside dead
+	 * ends are then never queued. A shortest path within a block cannot pass
+	 * through a dead end either, as it would have to leave the way it came.
+	 * @param deadEnds dead ends with the query set for the next search, or
+	 *                 null to skip none
+	 */
+	public void setDeadEnds(DeadEndRegions deadEnds) {
+		this.deadEnds = deadEnds;
+	}
+
+	public int getExpansionCount() {
+		return expansionCount;
+	}
+
+	/**
+	 * Find an optimal plan.
+	 * @return the plan, including the start cell, or null if there is none or
+	 *         the map has weighted terrain
+	 */
+	public ComputedPlan search(GridCell startCell, GridCell goalCell) {
+		if (grid.isUniformMap() == false) {
+			return null;
+		}
+
+		int start = grid.getIndex(startCell);
+		int goal = grid.getIndex(goalCell);
+
+		Arrays.fill(gCosts, INFINITE);
+		Arrays.fill(parents, -1);
+		Arrays.fill(isQueued, false);
+		Arrays.fill(isExpanded, false);
+		open.clear();
+
+		gCosts[start] = 0;
+		queue(getBlock(start), grid.getDistance(start, goal));
+
+		while (open.isEmpty() == false &&
+				heapValues[open.peek()] < gCosts[goal]) {
+			int block = open.poll();
+			isQueued[block] = false;
+			isExpanded[block] = true;
+			expansionCount++;
+			expand(block, start, goal);
+		}
+
+		if (gCosts[goal] == INFINITE) {
+			return null;
+		}
+		return computePlan(start, goal);
+	}
+
+	/**
+	 * Update the g values of a block's boundary (and the goal, if it is in the
+	 * block), and pass them across to neighbouring blocks.
+	 */
+	private void expand(int block, int start, int goal) {
+		int pattern = patterns[block];
+		byte[] distances = database.getDistances(pattern);
+
+		// Cells with a known g: the boundary, and the start.
+		int sourceCount = 0;
+		for (int local = 0; local < BLOCK_CELLS; local++) {
+			int cell = getCell(block, local);
+			if (cell != -1 && gCosts[cell] != INFINITE &&
+					(isBoundary(local) || cell == start)) {
+				sources[sourceCount++] = local;
+			}
+		}
+
+		// Best g for every other boundary cell (and the goal) from within.
+		for (int target = 0; target < BLOCK_CELLS; target++) {
+			int cell = getCell(block, target);
+			if (cell == -1 || (isBoundary(target) == false && cell != goal)) {
+				continue;
+			}
+			for (int i = 0; i < sourceCount; i++) {
+				int source = sources[i];
+				int distance = distances[source * BLOCK_CELLS + target] & 0xFF;
+				if (distance == UNREACHABLE) {
+					continue;
+				}
+				int sourceCell = getCell(block, source);
+				int gCost = gCosts[sourceCell] + distance;
+				if (gCost < gCosts[cell]) {
+					gCosts[cell] = gCost;
+					parents[cell] = sourceCell;
+				}
+			}
+		}
+
+		// Step out of the block.
+		int[] directions = grid.getDirections();
+		for (int i = 0; i < BOUNDARY.length; i++) {
+			int cell = getCell(block, BOUNDARY[i]);
+			if (cell == -1 || gCosts[cell] == INFINITE) {
+				continue;
+			}
+			int gCost = gCosts[cell] + 1;
+			for (int d = 0; d < directions.length; d++) {
+				int neighbour = grid.getNeighbour(cell, directions[d]);
+				if (neighbour == -1 || gCost >= gCosts[neighbour] ||
+						(deadEnds != null && deadEnds.isDeadEnd(neighbour))) {
+					continue;
+				}
+				int neighbourBlock = getBlock(neighbour);
+				if (neighbourBlock == block) {
+					continue;
+				}
+				gCosts[neighbour] = gCost;
+				parents[neighbour] = cell;
+				queue(neighbourBlock, gCost + grid.getDistance(neighbour, goal));
+			}
+		}
+	}
+
+	/**
+	 * Add a block to the queue, or lower its place in it.
+	 */
+	private void queue(int block, int fCost) {
+		if (isQueued[block] == false) {
+			heapValues[block] = fCost;
+			isQueued[block] = true;
+			open.offer(block);
+		} else if (fCost < heapValues[block]) {
+			open.remove(block);
+			heapValues[block] = fCost;
+			open.offer(block);
+		}
+	}
+
+	/**
+	 * Walk back from the goal. Consecutive cells in the same block are joined
+	 * using the local distances.
+	 */
+	private ComputedPlan computePlan(int start, int goal) {
+		ComputedPlan plan = new ComputedPlan();
+
+		int cell = goal;
+		plan.prependStep(grid.getCell(cell));
+		while (cell != start) {
+			int parent = parents[cell];
+			int block = getBlock(cell);
+			if (getBlock(parent) == block) {
+				prependLocalPath(plan, block, getLocal(parent), getLocal(cell));
+			} else {
+				plan.prependStep(grid.getCell(parent));
+			}
+			cell = parent;
+		}
+
+		plan.setCost(gCosts[goal] * grid.getMinCost());
+		return plan;
+	}
+
+	/**
+	 * Prepend the cells of a shortest path within a block, from (inclusive)
+	 * up to (exclusive).
+	 */
+	private void prependLocalPath(ComputedPlan plan, int block, int from, int to) {
+		int pattern = patterns[block];
+		byte[] distances = database.getDistances(pattern);
+
+		// Walk backward from the end, always to a cell one move closer to
+		// the start.
+		int local = to;
+		while (local != from) {
+			int distance = distances[from * BLOCK_CELLS + local] & 0xFF;
+			for (int previous = 0; previous < BLOCK_CELLS; previous++) {
+				if ((distances[from * BLOCK_CELLS + previous] & 0xFF) == distance - 1 &&
+						database.isMove(pattern, previous, local)) {
+					local = previous;
+					break;
+				}
+			}
+			plan.prependStep(grid.getCell(getCell(block, local)));
+		}
+	}
+
+	/* -- BLOCK GEOMETRY -- */
+
+	private int getBlock(int cell) {
+		return (grid.getY(cell) / BLOCK_SIZE) * blocksX + grid.getX(cell) / BLOCK_SIZE;
+	}
+
+	private int getLocal(int cell) {
+		return (grid.getY(cell) % BLOCK_SIZE) * BLOCK_SIZE + grid.getX(cell) % BLOCK_SIZE;
+	}
+
+	/**
+	 * Index of a cell in a block, or -1 if it is impassable or off the map.
+	 */
+	private int getCell(int block, int local) {
+		int x = (block % blocksX) * BLOCK_SIZE + local % BLOCK_SIZE;
+		int y = (block / blocksX) * BLOCK_SIZE + local / BLOCK_SIZE;
+		return grid.isPassable(x, y) ? grid.getIndex(x, y) : -1;
+	}
+
+	private static boolean isBoundary(int local) {
+		int x = local % BLOCK_SIZE;
+		int y = local / BLOCK_SIZE;
+		return x == 0 || y == 0 || x == BLOCK_SIZE - 1 || y == BLOCK_SIZE - 1;
+	}
+
+	/**
+	 * Compare two blocks on heap value.
+	 */
+	public int compare(Integer a, Integer b) {
+		return heapValues[a] - heapValues[b];
+	}
+
+	/* -- DEBUG -- */
+
+	/** Cells of the blocks expanded. */
+	public ArrayList<GridCell> getClosedArrayList() {
+		ArrayList<GridCell> closed = new ArrayList<GridCell>();
+		for (int block = 0; block < isExpanded.length; block++) {
+			if (isExpanded[block]) {
+				for (int local = 0; local < BLOCK_CELLS; local++) {
+					int cell = getCell(block, local);
+					if (cell != -1) {
+						closed.add(grid.getCell(cell));
+					}
+				}
+			}
+		}
+		return closed;
+	}
+
+	/** Cells of the blocks still queued. */
+	public ArrayList<GridCell> getOpenArrayList() {
+		ArrayList<GridCell> queued = new ArrayList<GridCell>();
+		for (int block = 0; block < isQueued.length; block++) {
+			if (isQueued[block]) {
+				for (int local = 0; local < BLOCK_CELLS; local++) {
+					int cell = getCell(block, local);
+					if (cell != -1) {
+						queued.add(grid.getCell(cell));
+					}
+				}
+			}
+		}
+		return queued;
+	}
+}
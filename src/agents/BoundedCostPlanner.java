@@ -0,0 +1,22 @@
+package agents;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * A planner for bounded-cost search: any plan that costs less than a given
+ * bound will do, and the first found is returned. This is often far cheaper
+ * than finding a near optimal plan, as when a plan need only be no worse than
+ * the last by some margin.
+ */
+public interface BoundedCostPlanner {
+
+	/**
+	 * Find a plan from start to goal costing less than a bound, as quickly as
+	 * possible.
+	 * @param costBound the plan must cost less than this
+	 * @return the plan, including the start cell, or null if none was found
+	 *         under the bound
+	 */
+	public ComputedPlan findPlanUnder(GridCell start, GridCell goal, float costBound);
+}
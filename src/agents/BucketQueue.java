@@ -0,0 +1,75 @@
+package agents;
+
+import java.util.Arrays;
+
+/**
+ * A priority queue of cells with small integer keys, as a bucket per key.
+ *
+ * Each bucket is a linked list threaded through an array indexed by cell, so
+ * pushing and popping allocate nothing, and cost O(1) apart from the scan for
+ * the next non-empty bucket. Within a bucket the most recently pushed cell
+ * comes out first, which keeps a greedy search heading the way it was going.
+ *
+ * A cell may be in the queue at most once at a time.
+ */
+public class BucketQueue {
+
+	// First cell in each bucket, and the next cell after each cell (-1 ends).
+	private int[] heads;
+	private int[] next;
+
+	// No bucket below this is occupied.
+	private int minKey;
+
+	private int size = 0;
+
+	/**
+	 * @param cellCount number of cells that may be queued (see GridSnapshot.getSize())
+	 * @param maxKey    largest key that will be pushed
+	 */
+	public BucketQueue(int cellCount, int maxKey) {
+		heads = new int[maxKey + 1];
+		next = new int[cellCount];
+		clear();
+	}
+
+	public void clear() {
+		Arrays.fill(heads, -1);
+		minKey = heads.length;
+		size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void push(int cell, int key) {
+		next[cell] = heads[key];
+		heads[key] = cell;
+		if (key < minKey) {
+			minKey = key;
+		}
+		size++;
+	}
+
+	/**
+	 * Remove and return a cell with the lowest key.
+	 * @return the cell, or -1 if the queue is empty
+	 */
+	public int pop() {
+		if (size == 0) {
+			return -1;
+		}
+		while (heads[minKey] == -1) {
+			minKey++;
+		}
+		int cell = heads[minKey];
+		heads[minKey] = next[cell];
+		size--;
+		return cell;
+	}
+}
@@ -0,0 +1,122 @@
+package agents;
+
+import java.util.Arrays;
+
+/**
+ * Search node data for a bounded number of cells, in a hash table.
+ *
+ * NodeStore and the MapInfo classes hold an entry for every cell of the map,
+ * which is out of the question on maps far larger than those bundled. Here
+ * memory depends only on the capacity chosen: each slot takes 12 bytes, plus
+ * whatever the search keeps alongside it in arrays indexed by slot. A table
+ * may be filled to three quarters of its slots, after which insert() fails
+ * and the search must do without.
+ *
+ * Slots are found by open addressing with linear probing. Entries are never
+ * removed, only forgotten all at once by clear().
+ */
+public class CellTable {
+
+	private final static int EMPTY = -1;
+
+	// Cell of each slot, or EMPTY.
+	private int[] cells;
+
+	// Node properties of each slot.
+	private float[] gCosts;
+	private int[]   parents;
+
+	private int mask;
+	private int shift;
+	private int maxSize;
+	private int size = 0;
+
+	/**
+	 * @param capacity the number of slots, rounded up to a power of two
+	 */
+	public CellTable(int capacity) {
+		int slots = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		mask = slots - 1;
+		shift = 32 - Integer.numberOfTrailingZeros(slots);
+		maxSize = slots / 4 * 3;
+
+		cells   = new int[slots];
+		gCosts  = new float[slots];
+		parents = new int[slots];
+		clear();
+	}
+
+	/**
+	 * Forget every entry.
+	 */
+	public void clear() {
+		Arrays.fill(cells, EMPTY);
+		size = 0;
+	}
+
+	/**
+	 * Find the slot of a cell.
+	 * @return the slot, or -1 if the cell has no entry
+	 */
+	public int find(int cell) {
+		for (int slot = hash(cell); ; slot = (slot + 1) & mask) {
+			if (cells[slot] == cell) {
+				return slot;
+			}
+			if (cells[slot] == EMPTY) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Add an entry for a cell that has none.
+	 * @return its slot, or -1 if the table is full
+	 */
+	public int insert(int cell) {
+		if (size == maxSize) {
+			return -1;
+		}
+		int slot = hash(cell);
+		while (cells[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		cells[slot] = cell;
+		size++;
+		return slot;
+	}
+
+	/** Number of slots; slot numbers run from 0 to this less one. */
+	public int getCapacity() {
+		return cells.length;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getCell(int slot) {
+		return cells[slot];
+	}
+
+	public float getGCost(int slot) {
+		return gCosts[slot];
+	}
+
+	/** Index of the parent cell, or -1 for the start. */
+	public int getParent(int slot) {
+		return parents[slot];
+	}
+
+	public void setPath(int slot, float gCost, int parent) {
+		gCosts[slot] = gCost;
+		parents[slot] = parent;
+	}
+
+	/**
+	 * Spread neighbouring cell indices over the table (Fibonacci hashing).
+	 */
+	private int hash(int cell) {
+		return (cell * 0x9E3779B9) >>> shift;
+	}
+}
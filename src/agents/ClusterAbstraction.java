@@ -0,0 +1,506 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+
+import au.rmit.ract.planning.pathplanning.entity.Edge;
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * The two level abstraction used by HPA* (Botea, Muller & Schaeffer 2004).
+ *
+ * The map is cut into square clusters. Wherever two neighbouring clusters
+ * share a run of passable border cells we place one or two transitions, and
+ * the cells on either side of a transition become abstract nodes. Nodes in
+ * the same cluster are joined by edges weighted with their distance inside
+ * the cluster, and each transition adds an edge across the border.
+ *
+ * Searching this graph is cheap (there are a handful of nodes per cluster),
+ * and turning an abstract edge back into grid cells is a search inside a
+ * single cluster, so it can be done lazily, one edge at a time. Refined paths
+ * are cached until their cluster changes.
+ *
+ * Transitions are only placed across straight borders. A passage that can
+ * only be crossed diagonally (through a corner) is not represented; callers
+ * should fall back to a flat search when getAbstractPath() fails.
+ */
+public class ClusterAbstraction implements Comparator<Integer> {
+
+	// Entrances at least this wide get a transition at each end rather than
+	// one in the middle.
+	private final int MIN_DOUBLE_ENTRANCE_WIDTH = 6;
+
+	private GridSnapshot grid;
+
+	private int clusterSize;
+	private int clustersX;
+	private int clustersY;
+
+	// Abstract nodes, by cluster and by cell.
+	private ArrayList<ArrayList<AbstractNode>> clusterNodes;
+	private HashMap<Integer, AbstractNode> nodesByCell = new HashMap<Integer, AbstractNode>();
+
+	// Concrete paths of intra cluster edges already refined, keyed on
+	// (from cell, to cell).
+	private HashMap<Long, int[]> pathCache = new HashMap<Long, int[]>();
+
+	// Number of abstract searches performed, used to stamp node search data.
+	private int searchCount = 0;
+
+	// Nodes touched by the last abstract search, for display.
+	private ArrayList<AbstractNode> lastSearched = new ArrayList<AbstractNode>();
+
+	// Scratch space for searches restricted to a single cluster, indexed by
+	// position within the cluster.
+	private float[] localCosts;
+	private int[]   localParents;
+	private PriorityQueue<Integer> localQueue;
+
+	/**
+	 * Build the abstraction for a map.
+	 * @param grid        the map
+	 * @param clusterSize width and height of a cluster, in cells
+	 */
+	public ClusterAbstraction(GridSnapshot grid, int clusterSize) {
+		this.grid = grid;
+		this.clusterSize = clusterSize;
+		this.clustersX = (grid.getWidth() + clusterSize - 1) / clusterSize;
+		this.clustersY = (grid.getHeight() + clusterSize - 1) / clusterSize;
+
+		this.localCosts = new float[clusterSize * clusterSize];
+		this.localParents = new int[clusterSize * clusterSize];
+		this.localQueue = new PriorityQueue<Integer>(clusterSize * 4, this);
+
+		int clusterCount = clustersX * clustersY;
+		this.clusterNodes = new ArrayList<ArrayList<AbstractNode>>(clusterCount);
+		for (int i = 0; i < clusterCount; i++) {
+			clusterNodes.add(new ArrayList<AbstractNode>());
+		}
+
+		for (int cluster = 0; cluster < clusterCount; cluster++) {
+			createNodes(cluster);
+		}
+		for (int cluster = 0; cluster < clusterCount; cluster++) {
+			connectNodes(cluster);
+		}
+	}
+
+	public GridSnapshot getGrid() {
+		return grid;
+	}
+
+	/** Total number of abstract nodes. */
+	public int getNodeCount() {
+		return nodesByCell.size();
+	}
+
+	public int getCluster(int cell) {
+		return (grid.getY(cell) / clusterSize) * clustersX + grid.getX(cell) / clusterSize;
+	}
+
+	/* -- CONSTRUCTION -- */
+
+	/**
+	 * Find the transitions on each border of a cluster, and create a node for
+	 * every transition cell inside this cluster.
+	 */
+	private void createNodes(int cluster) {
+		ArrayList<AbstractNode> nodes = clusterNodes.get(cluster);
+		for (AbstractNode node : nodes) {
+			nodesByCell.remove(node.getCell());
+		}
+		nodes.clear();
+
+		int cx = cluster % clustersX;
+		int cy = cluster / clustersX;
+		int left   = cx * clusterSize;
+		int top    = cy * clusterSize;
+		int right  = Math.min(left + clusterSize, grid.getWidth()) - 1;
+		int bottom = Math.min(top + clusterSize, grid.getHeight()) - 1;
+
+		// West and east borders.
+		addBorderNodes(cluster, left,  top, 0, 1, bottom - top + 1, -1, 0);
+		addBorderNodes(cluster, right, top, 0, 1, bottom - top + 1,  1, 0);
+
+		// North and south borders.
+		addBorderNodes(cluster, left, top,    1, 0, right - left + 1, 0, -1);
+		addBorderNodes(cluster, left, bottom, 1, 0, right - left + 1, 0,  1);
+	}
+
+	/**
+	 * Scan one border of a cluster for entrances.
+	 * @param x, y         the first border cell inside this cluster
+	 * @param stepX, stepY direction along the border
+	 * @param length       number of cells along the border
+	 * @param outX, outY   direction across the border, to the other cluster
+	 */
+	private void addBorderNodes(int cluster, int x, int y, int stepX, int stepY,
+			int length, int outX, int outY) {
+		int runStart = -1;
+		for (int i = 0; i <= length; i++) {
+			int bx = x + i * stepX;
+			int by = y + i * stepY;
+			boolean open = i < length &&
+					grid.isPassable(bx, by) && grid.isPassable(bx + outX, by + outY);
+
+			if (open && runStart == -1) {
+				runStart = i;
+			} else if (open == false && runStart != -1) {
+				int runEnd = i - 1;
+				if (runEnd - runStart + 1 >= MIN_DOUBLE_ENTRANCE_WIDTH) {
+					addNode(cluster, x + runStart * stepX, y + runStart * stepY);
+					addNode(cluster, x + runEnd * stepX, y + runEnd * stepY);
+				} else {
+					int middle = (runStart + runEnd) / 2;
+					addNode(cluster, x + middle * stepX, y + middle * stepY);
+				}
+				runStart = -1;
+			}
+		}
+	}
+
+	private void addNode(int cluster, int x, int y) {
+		int cell = grid.getIndex(x, y);
+		if (nodesByCell.containsKey(cell)) {
+			// Corner cells can be an entrance on two borders.
+			return;
+		}
+		AbstractNode node = new AbstractNode(cell, cluster);
+		nodesByCell.put(cell, node);
+		clusterNodes.get(cluster).add(node);
+	}
+
+	/**
+	 * Create the edges leaving every node of a cluster: one to each node of
+	 * the same cluster it can reach internally, and one across the border to
+	 * each adjacent node in a neighbouring cluster.
+	 */
+	private void connectNodes(int cluster) {
+		ArrayList<AbstractNode> nodes = clusterNodes.get(cluster);
+		for (AbstractNode node : nodes) {
+			node.clearEdges();
+
+			searchCluster(node.getCell(), cluster, true);
+			for (AbstractNode other : nodes) {
+				if (other != node) {
+					float cost = localCosts[toLocal(other.getCell())];
+					if (cost != Float.POSITIVE_INFINITY) {
+						node.addEdge(other, cost);
+					}
+				}
+			}
+
+			// Transition edges: straight neighbours in another cluster.
+			int x = grid.getX(node.getCell());
+			int y = grid.getY(node.getCell());
+			for (int direction = 0; direction < 8; direction += 2) {
+				int nx = x + GridSnapshot.DIRECTION_X[direction];
+				int ny = y + GridSnapshot.DIRECTION_Y[direction];
+				if (grid.isPassable(nx, ny) == false) {
+					continue;
+				}
+				int neighbourCell = grid.getIndex(nx, ny);
+				AbstractNode neighbour = nodesByCell.get(neighbourCell);
+				if (neighbour != null && neighbour.getCluster() != cluster) {
+					node.addEdge(neighbour, grid.getCost(neighbourCell));
+				}
+			}
+		}
+	}
+
+	/* -- MAINTENANCE -- */
+
+	/**
+	 * Rebuild the clusters touched by changed cells. Nodes depend on the
+	 * borders shared with neighbouring clusters, so those are rebuilt too.
+	 * The snapshot must already have been updated with the same edges.
+	 * @param changedEdges edges as returned by GridDomain.getChangedEdges()
+	 */
+	public void update(ArrayList<Edge> changedEdges) {
+		BitSet changed = new BitSet(clusterNodes.size());
+		for (Edge edge : changedEdges) {
+			GridCell[] ends = { (GridCell) edge.getStart(), (GridCell) edge.getEnd() };
+			for (GridCell cell : ends) {
+				changed.set(getCluster(grid.getIndex(cell)));
+			}
+		}
+		if (changed.isEmpty()) {
+			return;
+		}
+
+		// Changed clusters and their neighbours get new nodes...
+		BitSet rebuilt = new BitSet(clusterNodes.size());
+		for (int cluster = changed.nextSetBit(0); cluster >= 0; cluster = changed.nextSetBit(cluster + 1)) {
+			addWithNeighbours(rebuilt, cluster);
+		}
+		for (int cluster = rebuilt.nextSetBit(0); cluster >= 0; cluster = rebuilt.nextSetBit(cluster + 1)) {
+			createNodes(cluster);
+		}
+
+		// ...and the ring around those must reconnect to the new nodes.
+		BitSet reconnected = new BitSet(clusterNodes.size());
+		for (int cluster = rebuilt.nextSetBit(0); cluster >= 0; cluster = rebuilt.nextSetBit(cluster + 1)) {
+			addWithNeighbours(reconnected, cluster);
+		}
+		for (int cluster = reconnected.nextSetBit(0); cluster >= 0; cluster = reconnected.nextSetBit(cluster + 1)) {
+			connectNodes(cluster);
+		}
+
+		// Forget refined paths through any rebuilt cluster.
+		Iterator<Long> keys = pathCache.keySet().iterator();
+		while (keys.hasNext()) {
+			int from = (int) (keys.next() >>> 32);
+			if (rebuilt.get(getCluster(from))) {
+				keys.remove();
+			}
+		}
+	}
+
+	private void addWithNeighbours(BitSet clusters, int cluster) {
+		int cx = cluster % clustersX;
+		int cy = cluster / clustersX;
+		clusters.set(cluster);
+		if (cx > 0)             clusters.set(cluster - 1);
+		if (cx < clustersX - 1) clusters.set(cluster + 1);
+		if (cy > 0)             clusters.set(cluster - clustersX);
+		if (cy < clustersY - 1) clusters.set(cluster + clustersX);
+	}
+
+	/* -- QUERIES -- */
+
+	/**
+	 * Search the abstract graph.
+	 *
+	 * The start and goal are joined to the nodes of their clusters for the
+	 * duration of the search only; the graph itself is not modified.
+	 * @param start the start cell
+	 * @param goal  the goal cell
+	 * @return the cells of the abstract path from start to goal (inclusive),
+	 *         or null if none was found
+	 */
+	public LinkedList<Integer> getAbstractPath(int start, int goal) {
+		searchCount++;
+		lastSearched.clear();
+
+		if (start == goal) {
+			LinkedList<Integer> path = new LinkedList<Integer>();
+			path.add(start);
+			return path;
+		}
+
+		int startCluster = getCluster(start);
+		int goalCluster = getCluster(goal);
+
+		AbstractNode startNode = new AbstractNode(start, startCluster);
+		AbstractNode goalNode = new AbstractNode(goal, goalCluster);
+
+		// Start edges: forward costs inside the start cluster.
+		searchCluster(start, startCluster, true);
+		for (AbstractNode node : clusterNodes.get(startCluster)) {
+			float cost = localCosts[toLocal(node.getCell())];
+			if (cost != Float.POSITIVE_INFINITY) {
+				startNode.addEdge(node, cost);
+			}
+		}
+		if (startCluster == goalCluster && localCosts[toLocal(goal)] != Float.POSITIVE_INFINITY) {
+			startNode.addEdge(goalNode, localCosts[toLocal(goal)]);
+		}
+
+		// Goal edges: backward costs inside the goal cluster. These are held
+		// aside rather than added to the (shared) nodes.
+		searchCluster(goal, goalCluster, false);
+		HashMap<AbstractNode, Float> goalCosts = new HashMap<AbstractNode, Float>();
+		for (AbstractNode node : clusterNodes.get(goalCluster)) {
+			float cost = localCosts[toLocal(node.getCell())];
+			if (cost != Float.POSITIVE_INFINITY) {
+				goalCosts.put(node, cost);
+			}
+		}
+
+		PriorityQueue<AbstractNode> open = new PriorityQueue<AbstractNode>();
+		visit(startNode, 0f, null, goal);
+		open.offer(startNode);
+
+		while (open.isEmpty() == false) {
+			AbstractNode current = open.poll();
+			if (current.closed) {
+				continue;
+			}
+			current.closed = true;
+
+			if (current == goalNode) {
+				LinkedList<Integer> path = new LinkedList<Integer>();
+				for (AbstractNode node = goalNode; node != null; node = node.parent) {
+					path.addFirst(node.getCell());
+				}
+				return path;
+			}
+
+			for (AbstractEdge edge : current.getEdges()) {
+				relax(open, current, edge.getTarget(), edge.getCost(), goal);
+			}
+			Float goalCost = goalCosts.get(current);
+			if (goalCost != null) {
+				relax(open, current, goalNode, goalCost, goal);
+			}
+		}
+
+		return null;
+	}
+
+	private void relax(PriorityQueue<AbstractNode> open, AbstractNode from,
+			AbstractNode to, float cost, int goal) {
+		float gCost = from.gCost + cost;
+		if (to.searchId != searchCount) {
+			visit(to, gCost, from, goal);
+			open.offer(to);
+		} else if (to.closed == false && FloatUtil.lessThan(gCost, to.gCost)) {
+			open.remove(to);
+			to.gCost = gCost;
+			to.parent = from;
+			open.offer(to);
+		}
+	}
+
+	private void visit(AbstractNode node, float gCost, AbstractNode parent, int goal) {
+		node.searchId = searchCount;
+		node.gCost = gCost;
+		node.hCost = grid.getHCost(node.getCell(), goal);
+		node.parent = parent;
+		node.closed = false;
+		lastSearched.add(node);
+	}
+
+	/**
+	 * Refine one abstract edge into grid cells. The two cells must either be in
+	 * the same cluster or be neighbours across a border.
+	 * @return the cells after from, up to and including to, or null if to
+	 *         cannot be reached (which means the map has changed)
+	 */
+	public int[] refine(int from, int to) {
+		int cluster = getCluster(from);
+		if (cluster != getCluster(to)) {
+			return new int[] { to };
+		}
+
+		Long key = ((long) from << 32) | to;
+		int[] path = pathCache.get(key);
+		if (path != null) {
+			return path;
+		}
+
+		searchCluster(from, cluster, true);
+		if (localCosts[toLocal(to)] == Float.POSITIVE_INFINITY) {
+			return null;
+		}
+
+		int length = 0;
+		for (int local = toLocal(to); localParents[local] != -1; local = localParents[local]) {
+			length++;
+		}
+		path = new int[length];
+		int local = toLocal(to);
+		for (int i = length - 1; i >= 0; i--) {
+			path[i] = toCell(cluster, local);
+			local = localParents[local];
+		}
+
+		pathCache.put(key, path);
+		return path;
+	}
+
+	/* -- CLUSTER SEARCH -- */
+
+	/**
+	 * Dijkstra from (or, backward, to) a cell, without leaving its cluster.
+	 * Results are left in localCosts and localParents.
+	 * @param forward true for costs from the cell, false for costs to it
+	 */
+	private void searchCluster(int source, int cluster, boolean forward) {
+		Arrays.fill(localCosts, Float.POSITIVE_INFINITY);
+		Arrays.fill(localParents, -1);
+		localQueue.clear();
+
+		int sourceLocal = toLocal(source);
+		localCosts[sourceLocal] = 0f;
+		localQueue.offer(sourceLocal);
+
+		int[] directions = grid.getDirections();
+		while (localQueue.isEmpty() == false) {
+			int local = localQueue.poll();
+			int cell = toCell(cluster, local);
+			int x = grid.getX(cell);
+			int y = grid.getY(cell);
+
+			for (int i = 0; i < directions.length; i++) {
+				int nx = x + GridSnapshot.DIRECTION_X[directions[i]];
+				int ny = y + GridSnapshot.DIRECTION_Y[directions[i]];
+				if (grid.isPassable(nx, ny) == false) {
+					continue;
+				}
+				int neighbourCell = grid.getIndex(nx, ny);
+				if (getCluster(neighbourCell) != cluster) {
+					continue;
+				}
+
+				// Moving costs the cell being entered.
+				float step = forward ? grid.getCost(neighbourCell) : grid.getCost(cell);
+				float cost = localCosts[local] + step;
+				int neighbourLocal = toLocal(neighbourCell);
+				if (cost < localCosts[neighbourLocal]) {
+					localQueue.remove(neighbourLocal);
+					localCosts[neighbourLocal] = cost;
+					localParents[neighbourLocal] = local;
+					localQueue.offer(neighbourLocal);
+				}
+			}
+		}
+	}
+
+	private int toLocal(int cell) {
+		return (grid.getY(cell) % clusterSize) * clusterSize + grid.getX(cell) % clusterSize;
+	}
+
+	private int toCell(int cluster, int local) {
+		int x = (cluster % clustersX) * clusterSize + local % clusterSize;
+		int y = (cluster / clustersX) * clusterSize + local / clusterSize;
+		return grid.getIndex(x, y);
+	}
+
+	/**
+	 * Compare two local cells by their current cost.
+	 */
+	public int compare(Integer a, Integer b) {
+		return Float.compare(localCosts[a], localCosts[b]);
+	}
+
+	/* -- DEBUG -- */
+
+	/** Cells of the abstract nodes closed in the last search. */
+	public ArrayList<GridCell> getClosedArrayList() {
+		ArrayList<GridCell> closed = new ArrayList<GridCell>();
+		for (AbstractNode node : lastSearched) {
+			if (node.closed) {
+				closed.add(grid.getCell(node.getCell()));
+			}
+		}
+		return closed;
+	}
+
+	/** Cells of the abstract nodes left open by the last search. */
+	public ArrayList<GridCell> getOpenArrayList() {
+		ArrayList<GridCell> open = new ArrayList<GridCell>();
+		for (AbstractNode node : lastSearched) {
+			if (node.closed == false) {
+				open.add(grid.getCell(node.getCell()));
+			}
+		}
+		return open;
+	}
+}
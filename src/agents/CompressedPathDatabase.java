@@ -0,0 +1,180 @@
+package agents;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A compressed path database (Botea 2011): the first move of an optimal path
+ * between every pair of cells, read from a memory mapped file.
+ *
+ * Each source cell has a row giving the first move toward every target, in
+ * index order. Neighbouring targets mostly share a first move, so rows are
+ * stored as runs, each packed into an int:
+ *
+ *     (index of first target in run << 4) | direction
+ *
+ * Looking up a move is a binary search of one row. Blocked targets (and the
+ * source itself) are never queried, so they join whichever run they fall in.
+ *
+ * File layout (big endian):
+ *
+ *     int  FILE_VERSION
+ *     long map signature
+ *     int  cell count
+ *     int  run offsets, one per cell, and the total run count
+ *     int  runs
+ *
+ * The database is built offline by CpdBuilder.
+ */
+public class CompressedPathDatabase {
+
+	// Bumped whenever the file layout changes.
+	private static final int FILE_VERSION = 1;
+
+	// Bytes before the run offsets.
+	private static final int HEADER_SIZE = 4 + 8 + 4;
+
+	// Direction stored for unreachable targets.
+	private static final int NO_MOVE_CODE = 0xF;
+
+	private GridSnapshot grid;
+	private MappedByteBuffer buffer;
+
+	// Byte positions of the offsets and runs within the buffer.
+	private int offsetsStart;
+	private int runsStart;
+
+	private CompressedPathDatabase(GridSnapshot grid, MappedByteBuffer buffer) {
+		this.grid = grid;
+		this.buffer = buffer;
+		this.offsetsStart = HEADER_SIZE;
+		this.runsStart = HEADER_SIZE + (grid.getSize() + 1) * 4;
+	}
+
+	/**
+	 * The database file for a map.
+	 */
+	public static File getFile(GridSnapshot grid, File cacheDirectory) {
+		return new File(cacheDirectory,
+				"cpd-" + Long.toHexString(grid.getSignature()) + ".bin");
+	}
+
+	/**
+	 * Open the database for a map.
+	 * @return the database, or null if none has been built for this map
+	 */
+	public static CompressedPathDatabase open(GridSnapshot grid, File cacheDirectory) {
+		File file = getFile(grid, cacheDirectory);
+		if (file.exists() == false) {
+			return null;
+		}
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				MappedByteBuffer buffer = raf.getChannel().map(
+						FileChannel.MapMode.READ_ONLY, 0, raf.length());
+				if (buffer.getInt(0) != FILE_VERSION ||
+						buffer.getLong(4) != grid.getSignature() ||
+						buffer.getInt(12) != grid.getSize()) {
+					System.out.println("Stale path database " + file);
+					return null;
+				}
+				// The mapping stays valid once the file is closed.
+				return new CompressedPathDatabase(grid, buffer);
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Could not read path database " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Write a database.
+	 * @param rows the runs of each source cell, as packed by packRun()
+	 */
+	static void write(File file, GridSnapshot grid, int[][] rows) throws IOException {
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(FILE_VERSION);
+			out.writeLong(grid.getSignature());
+			out.writeInt(grid.getSize());
+
+			int offset = 0;
+			for (int source = 0; source < rows.length; source++) {
+				out.writeInt(offset);
+				offset += rows[source].length;
+			}
+			out.writeInt(offset);
+
+			for (int source = 0; source < rows.length; source++) {
+				for (int i = 0; i < rows[source].length; i++) {
+					out.writeInt(rows[source][i]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Pack one run.
+	 * @param firstTarget index of the first target in the run
+	 * @param direction   first move, or FirstMoveDijkstra.NO_MOVE
+	 */
+	static int packRun(int firstTarget, int direction) {
+		return (firstTarget << 4) |
+				(direction == FirstMoveDijkstra.NO_MOVE ? NO_MOVE_CODE : direction);
+	}
+
+	/**
+	 * Get the first move of an optimal path.
+	 * @param from a passable cell
+	 * @param to   a passable cell other than from
+	 * @return the direction (see GridSnapshot) of the first move, or
+	 *         FirstMoveDijkstra.NO_MOVE if to cannot be reached
+	 */
+	public int getFirstMove(int from, int to) {
+		int low = buffer.getInt(offsetsStart + from * 4);
+		int high = buffer.getInt(offsetsStart + (from + 1) * 4) - 1;
+
+		// Find the last run starting at or before the target.
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if ((buffer.getInt(runsStart + middle * 4) >>> 4) <= to) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		int direction = buffer.getInt(runsStart + low * 4) & 0xF;
+		return direction == NO_MOVE_CODE ? FirstMoveDijkstra.NO_MOVE : direction;
+	}
+
+	/**
+	 * Get the next cell of an optimal path.
+	 * @return the cell index, or -1 if to cannot be reached
+	 */
+	public int getNextCell(int from, int to) {
+		int direction = getFirstMove(from, to);
+		if (direction == FirstMoveDijkstra.NO_MOVE) {
+			return -1;
+		}
+		return grid.getNeighbour(from, direction);
+	}
+
+	/** Total number of runs stored. */
+	public int getRunCount() {
+		return buffer.getInt(offsetsStart + grid.getSize() * 4);
+	}
+}
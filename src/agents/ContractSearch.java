@@ -0,0 +1,340 @@
+package agents;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.Edge;
+import pplanning.interfaces.PlanningAgent;
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Contract search (Aine, Chakrabarti & Kumar 2010): a best first search that
+ * may expand only so many cells at each depth, so that the expansions the
+ * deadline allows are spread over the whole path rather than spent near the
+ * start.
+ *
+ * The contract is the number of expansions that fit before the deadline,
+ * measured as in DeadlineAwareSearch: the time between expansions is kept in
+ * a SlidingWindow, and the expansions remaining are the time remaining over
+ * its average. It is divided evenly between the levels down to the estimated
+ * depth of the goal (its move count from the start, scaled by how much
+ * longer than that the last paths found were), and the budget is worked out
+ * again as the estimate of the rate changes. A cell is expanded only if its
+ * level is within budget, and is otherwise put aside. Should the open set run
+ * dry with time left, the cells put aside are taken back, and each level gets
+ * a share of what remains.
+ *
+ * As in DeadlineAwareSearch, a greedy plan is found first, so that there is
+ * always a plan to return, and cells that cannot beat it are dropped. See
+ * DeadlineBenchmark for how the two compare.
+ */
+public class ContractSearch implements PlanningAgent {
+
+	// Conversion factor for MS (apparate interface) to nanosecond (our internal timing unit)
+	private final static long MS_TO_NS_CONV_FACT = 1000000;
+
+	// Time kept back from the search for Apparate.
+	private final static long SEARCH_END_TIME_OFFSET = 20000000; // 20ms
+
+	// Cells taken from open between reads of the clock. Reading HRTimer costs
+	// about as much as an expansion, so each window entry is the mean time per
+	// expansion since the last read, the time to put cells aside included.
+	private final static int CLOCK_INTERVAL = 64;
+
+	// Length of the sliding window of expansion times, in entries.
+	private final static int EXPANSION_TIME_WINDOW_LENGTH = 10;
+
+	// Time per expansion assumed before any has been measured.
+	private final static long INITIAL_EXPANSION_TIME = 1000;
+
+	// Path length over move count assumed before any path has been found, and
+	// the weight of each new path in the running estimate.
+	private final static double INITIAL_DEPTH_RATIO = 1.25;
+	private final static double DEPTH_RATIO_WEIGHT = 0.5;
+
+	// Which list a generated cell is on.
+	private final static byte NO_LIST = 0;
+	private final static byte OPEN_LIST = 1;
+	private final static byte PRUNED_LIST = 2;
+
+	// Plan to execute.
+	private ComputedPlan plan;
+	private int stepNo = 0;
+	private GridCell lastGoal = null;
+
+	private HRTimer timer = new HRTimer();
+	private SlidingWindow expansionTimeWindow = new SlidingWindow(
+			EXPANSION_TIME_WINDOW_LENGTH);
+
+	// Running estimate of path length over move count.
+	private double depthRatio = INITIAL_DEPTH_RATIO;
+
+	private GridSnapshot snapshot = null;
+	private GreedyBestFirst greedy;
+	private NodeStore nodes;
+	private OrderedOpenList openList;
+	private OrderedOpenList prunedList;
+	private byte[] lists;
+
+	// Level of each generated cell, and expansions made at each level.
+	private int[] depths;
+	private int[] levelExpansionCounts = new int[256];
+
+	private int expansionCount = 0;
+
+	@Override
+	public GridCell getNextMove(GridDomain map, GridCell start, GridCell goal,
+			int stepLeft, long stepTime, long timeLeft) {
+
+		try {
+			ArrayList<Edge> changedEdges = map.getChangedEdges();
+			boolean isMapChanged = updateSnapshot(map, changedEdges);
+
+			if (plan == null || isMapChanged || goal.equals(lastGoal) == false) {
+				long timeDeadline = timer.getCurrentNanotime() +
+						timeLeft * MS_TO_NS_CONV_FACT - SEARCH_END_TIME_OFFSET;
+				plan = generatePlan(snapshot.getIndex(start), snapshot.getIndex(goal), timeDeadline);
+				stepNo = 0;
+				lastGoal = goal;
+			}
+
+			if (plan == null) {
+				Trace.print("No plan found within deadline");
+				return start;
+			}
+
+			// Check if path has been exhausted.
+			if (stepNo >= plan.getLength()) {
+				return start;
+			}
+			return (GridCell) plan.getStep(stepNo++);
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			return start;
+		}
+	}
+
+	/**
+	 * Create the snapshot and search structures on the first call, or for a
+	 * new map, and bring the snapshot up to date otherwise.
+	 * @return true if any cell has changed since the last call
+	 */
+	private boolean updateSnapshot(GridDomain map, ArrayList<Edge> changedEdges) {
+		if (snapshot == null || snapshot.getMap() != map) {
+			snapshot = new GridSnapshot(map);
+			greedy = new GreedyBestFirst(snapshot);
+			nodes = new NodeStore(snapshot);
+			openList = new OrderedOpenList(snapshot.getSize());
+			prunedList = new OrderedOpenList(snapshot.getSize());
+			lists = new byte[snapshot.getSize()];
+			depths = new int[snapshot.getSize()];
+			plan = null;
+			return false;
+		}
+		if (snapshot.update(changedEdges)) {
+			greedy.update(changedEdges);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Search for the cheapest plan that the contract allows.
+	 * @param timeDeadline HRTimer time by which to return
+	 * @return the best plan found, or null if there was none
+	 */
+	private ComputedPlan generatePlan(int start, int goal, long timeDeadline) {
+		ComputedPlan incumbent = greedy.search(start, goal);
+		if (incumbent == null) {
+			return null;
+		}
+		float bound = incumbent.getCost();
+		boolean isContractSolution = false;
+
+		nodes.clear();
+		nodes.generate(start, 0f, -1);
+		depths[start] = 0;
+		addToList(openList, OPEN_LIST, start, snapshot.getHCost(start, goal), 0f);
+
+		int estimatedDepth = Math.max(1,
+				(int) Math.ceil(snapshot.getDistance(start, goal) * depthRatio));
+		Arrays.fill(levelExpansionCounts, 0);
+		expansionCount = 0;
+		int contractExpansionCount = 0;
+		int levelBudget = 0;
+		int popCount = 0;
+		int expansionCountAtLastRead = 0;
+		long timeAtLastRead = timer.getCurrentNanotime();
+		int[] directions = snapshot.getDirections();
+
+		while (true) {
+
+			// Measure the rate and rework the budget every so often.
+			if (popCount++ % CLOCK_INTERVAL == 0 || levelBudget == 0) {
+				long timeCurrent = timer.getCurrentNanotime();
+				if (timeCurrent >= timeDeadline) {
+					break;
+				}
+				if (expansionCount > expansionCountAtLastRead) {
+					expansionTimeWindow.push((timeCurrent - timeAtLastRead) /
+							(expansionCount - expansionCountAtLastRead));
+					expansionCountAtLastRead = expansionCount;
+					timeAtLastRead = timeCurrent;
+				}
+				long contract = contractExpansionCount +
+						calculateExpansionsRemaining(timeDeadline, timeCurrent);
+				levelBudget = (int) Math.max(1, contract / estimatedDepth);
+			}
+
+			if (openList.isEmpty()) {
+				if (prunedList.isEmpty()) {
+					break;
+				}
+
+				// Take back the cells put aside, under a new contract for the time left.
+				while (prunedList.isEmpty() == false) {
+					int cell = prunedList.first();
+					float fCost = prunedList.getKey(cell);
+					removeFromList(prunedList, cell);
+					addToList(openList, OPEN_LIST, cell, fCost, -nodes.getGCost(cell));
+				}
+				Arrays.fill(levelExpansionCounts, 0);
+				contractExpansionCount = 0;
+				levelBudget = 0;
+				continue;
+			}
+
+			int current = openList.first();
+			float fCost = openList.getKey(current);
+			removeFromList(openList, current);
+			float gCost = nodes.getGCost(current);
+
+			// Drop cells that cannot lead to a cheaper plan.
+			if (FloatUtil.compare(fCost, bound) != -1) {
+				continue;
+			}
+
+			if (current == goal) {
+				incumbent = nodes.computePlan(goal);
+				bound = gCost;
+				isContractSolution = true;
+				continue;
+			}
+
+			// Put the cell aside if its level has used up its budget.
+			int depth = depths[current];
+			if (depth >= levelExpansionCounts.length) {
+				levelExpansionCounts = Arrays.copyOf(levelExpansionCounts,
+						Math.max(depth + 1, 2 * levelExpansionCounts.length));
+			}
+			if (levelExpansionCounts[depth] >= levelBudget) {
+				addToList(prunedList, PRUNED_LIST, current, fCost, -gCost);
+				continue;
+			}
+			levelExpansionCounts[depth]++;
+			contractExpansionCount++;
+			expansionCount++;
+
+			for (int i = 0; i < directions.length; i++) {
+				int neighbour = snapshot.getNeighbour(current, directions[i]);
+				if (neighbour == -1) {
+					continue;
+				}
+				float childGCost = gCost + snapshot.getCost(neighbour);
+				float childFCost = childGCost + snapshot.getHCost(neighbour, goal);
+				if (FloatUtil.compare(childFCost, bound) != -1) {
+					continue;
+				}
+				// A cheaper path to an expanded cell reopens it. Cells are not
+				// expanded in order of f once some have been put aside, so the
+				// first path to a cell need not be its cheapest.
+				if (nodes.isGenerated(neighbour)) {
+					if (FloatUtil.compare(childGCost, nodes.getGCost(neighbour)) != -1) {
+						continue;
+					}
+					if (lists[neighbour] == OPEN_LIST) {
+						removeFromList(openList, neighbour);
+					} else if (lists[neighbour] == PRUNED_LIST) {
+						removeFromList(prunedList, neighbour);
+					}
+				}
+				nodes.generate(neighbour, childGCost, current);
+				depths[neighbour] = depth + 1;
+
+				// Ties go to the cell furthest along.
+				addToList(openList, OPEN_LIST, neighbour, childFCost, -childGCost);
+			}
+		}
+
+		clearList(openList);
+		clearList(prunedList);
+
+		Trace.print("Contract expansions: " + expansionCount +
+				", estimated depth: " + estimatedDepth + ", level budget: " + levelBudget +
+				", plan cost: " + incumbent.getCost() +
+				(isContractSolution ? "" : " (greedy)"));
+
+		// Learn how much longer than the move count paths are.
+		if (isContractSolution) {
+			double ratio = (double) (incumbent.getLength() - 1) /
+					Math.max(1, snapshot.getDistance(start, goal));
+			depthRatio += DEPTH_RATIO_WEIGHT * (Math.max(1.0, ratio) - depthRatio);
+		}
+		return incumbent;
+	}
+
+	/**
+	 * Get the predicted number of expansions that can be performed before the
+	 * deadline, at the current average expansion rate (see
+	 * DeadlineAwareSearch.calculateExpansionsRemaining()).
+	 * @param timeDeadline the time of the deadline, in nanoseconds
+	 * @param timeCurrent  the time now, in nanoseconds
+	 * @return expansions remaining
+	 */
+	private long calculateExpansionsRemaining(long timeDeadline, long timeCurrent) {
+		float averageExpTime = expansionTimeWindow.getAvg();
+		if (averageExpTime <= 0) {
+			averageExpTime = INITIAL_EXPANSION_TIME;
+		}
+		return (long) ((timeDeadline - timeCurrent) / averageExpTime);
+	}
+
+	private void addToList(OrderedOpenList list, byte listId, int cell, float fCost, float tie) {
+		list.add(cell, fCost, tie);
+		lists[cell] = listId;
+	}
+
+	private void removeFromList(OrderedOpenList list, int cell) {
+		list.remove(cell);
+		lists[cell] = NO_LIST;
+	}
+
+	private void clearList(OrderedOpenList list) {
+		while (list.isEmpty() == false) {
+			removeFromList(list, list.first());
+		}
+	}
+
+	// Nothing is kept to show.
+	@Override
+	public Boolean showInfo() {
+		return false;
+	}
+
+	@Override
+	public ArrayList<GridCell> expandedNodes() {
+		return new ArrayList<GridCell>();
+	}
+
+	@Override
+	public ArrayList<GridCell> unexpandedNodes() {
+		return new ArrayList<GridCell>();
+	}
+
+	@Override
+	public ComputedPlan getPath() {
+		return plan;
+	}
+}
@@ -0,0 +1,129 @@
+package agents;
+
+import java.util.ArrayList;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import pplanning.interfaces.PlanningAgent;
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Moves by looking up a compressed path database (see CpdBuilder). There is no
+ * search at all: each move is one lookup, and the moves are optimal.
+ *
+ * The database describes the map as it was built. If it has not been built,
+ * or once the map changes, the agent hands over to DeadlineAwareSearch.
+ */
+public class CpdAgent implements PlanningAgent {
+
+	private final static boolean DEBUG = false;
+
+	private GridSnapshot snapshot = null;
+	private CompressedPathDatabase database = null;
+
+	// Takes over when the database is missing or out of date.
+	private DeadlineAwareSearch fallback = null;
+
+	// Path from the last start to goal, for display only.
+	private ComputedPlan plan;
+	private GridCell lastGoal = null;
+
+	@Override
+	public GridCell getNextMove(GridDomain map, GridCell start, GridCell goal,
+			int stepLeft, long stepTime, long timeLeft) {
+
+		try {
+			if (fallback == null) {
+				if (snapshot == null || snapshot.getMap() != map) {
+					snapshot = new GridSnapshot(map);
+					database = CompressedPathDatabase.open(snapshot, GridUtil.CACHE_DIRECTORY);
+					if (database == null) {
+						useFallback("no path database for this map");
+					}
+				} else if (map.getChangedEdges().isEmpty() == false) {
+					useFallback("map has changed");
+				}
+			}
+
+			if (fallback != null) {
+				return fallback.getNextMove(map, start, goal, stepLeft, stepTime, timeLeft);
+			}
+
+			if (start == goal) {
+				return start;
+			}
+
+			int startCell = snapshot.getIndex(start);
+			int goalCell = snapshot.getIndex(goal);
+
+			if (goal != lastGoal) {
+				plan = computePlan(startCell, goalCell);
+				lastGoal = goal;
+			}
+
+			int next = database.getNextCell(startCell, goalCell);
+			if (next == -1) {
+				if (DEBUG) System.out.println("Could not find goal");
+				return start;
+			}
+			return snapshot.getCell(next);
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			return start;
+		}
+	}
+
+	private void useFallback(String reason) {
+		if (DEBUG) System.out.println("Using DAS: " + reason);
+		fallback = new DeadlineAwareSearch();
+		database = null;
+		plan = null;
+	}
+
+	/**
+	 * Follow the database from start to goal.
+	 */
+	private ComputedPlan computePlan(int start, int goal) {
+		ComputedPlan path = new ComputedPlan();
+		path.appendStep(snapshot.getCell(start));
+
+		float cost = 0f;
+		int cell = start;
+		while (cell != goal) {
+			cell = database.getNextCell(cell, goal);
+			if (cell == -1) {
+				return null;
+			}
+			cost += snapshot.getCost(cell);
+			path.appendStep(snapshot.getCell(cell));
+		}
+
+		path.setCost(cost);
+		return path;
+	}
+
+	// Do we want to show extra info? (e.g., close and open nodes, current path)
+	@Override
+	public Boolean showInfo() {
+		return fallback != null && fallback.showInfo();
+	}
+
+	@Override
+	public ArrayList<GridCell> expandedNodes() {
+		return fallback.expandedNodes();
+	}
+
+	@Override
+	public ArrayList<GridCell> unexpandedNodes() {
+		return fallback.unexpandedNodes();
+	}
+
+	@Override
+	public ComputedPlan getPath() {
+		if (fallback != null) {
+			return fallback.getPath();
+		}
+		return plan;
+	}
+}
@@ -0,0 +1,173 @@
+package agents;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Builds a CompressedPathDatabase for a map, by running Dijkstra's algorithm
+ * from every cell. Sources are independent, so they are shared out over all
+ * cores with a fork/join pool.
+ *
+ * This takes minutes to hours depending on the size of the map, so it is run
+ * offline:
+ *
+ *     java agents.CpdBuilder maps/AR0202SR.map [manhattan]
+ *
+ * The database is written to the cache directory, named by the map's
+ * signature, where CpdAgent will find it.
+ */
+public class CpdBuilder {
+
+	// Sources handled by a single task.
+	private static final int SOURCES_PER_TASK = 64;
+
+	private GridSnapshot grid;
+
+	// Compressed row of each source.
+	private int[][] rows;
+
+	private AtomicInteger sourcesDone = new AtomicInteger();
+
+	// Each worker thread keeps its own search (and row buffer), as they are
+	// large and not thread safe.
+	private ThreadLocal<FirstMoveDijkstra> dijkstras = new ThreadLocal<FirstMoveDijkstra>() {
+		@Override
+		protected FirstMoveDijkstra initialValue() {
+			return new FirstMoveDijkstra(grid);
+		}
+	};
+	private ThreadLocal<int[]> rowBuffers = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[grid.getSize()];
+		}
+	};
+
+	public CpdBuilder(GridSnapshot grid) {
+		this.grid = grid;
+	}
+
+	/**
+	 * Compute every row of the database.
+	 */
+	public void build() {
+		rows = new int[grid.getSize()][];
+		sourcesDone.set(0);
+		new ForkJoinPool().invoke(new BuildTask(0, grid.getSize()));
+	}
+
+	/**
+	 * Write the database to the cache directory.
+	 * @return the file written
+	 */
+	public File save(File cacheDirectory) throws IOException {
+		cacheDirectory.mkdirs();
+		File file = CompressedPathDatabase.getFile(grid, cacheDirectory);
+		CompressedPathDatabase.write(file, grid, rows);
+		return file;
+	}
+
+	/**
+	 * Search from one source and run length encode its first moves.
+	 */
+	private int[] buildRow(int source) {
+		if (grid.isPassable(source) == false) {
+			// Never queried.
+			return new int[] { CompressedPathDatabase.packRun(0, FirstMoveDijkstra.NO_MOVE) };
+		}
+
+		FirstMoveDijkstra dijkstra = dijkstras.get();
+		dijkstra.search(source);
+
+		int[] runs = rowBuffers.get();
+		int runCount = 0;
+		int lastMove = 0;
+		for (int target = 0; target < grid.getSize(); target++) {
+			if (target == source || grid.isPassable(target) == false) {
+				continue;
+			}
+			int move = dijkstra.getFirstMove(target);
+			if (runCount == 0) {
+				// The first run also covers any cells skipped before it.
+				runs[runCount++] = CompressedPathDatabase.packRun(0, move);
+			} else if (move != lastMove) {
+				runs[runCount++] = CompressedPathDatabase.packRun(target, move);
+			}
+			lastMove = move;
+		}
+		if (runCount == 0) {
+			runs[runCount++] = CompressedPathDatabase.packRun(0, FirstMoveDijkstra.NO_MOVE);
+		}
+
+		int[] row = new int[runCount];
+		System.arraycopy(runs, 0, row, 0, runCount);
+		return row;
+	}
+
+	/**
+	 * Builds the rows of a range of sources, splitting it in half until it is
+	 * small enough to do directly.
+	 */
+	private class BuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int from;
+		private int to;
+
+		BuildTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > SOURCES_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new BuildTask(from, middle), new BuildTask(middle, to));
+				return;
+			}
+
+			for (int source = from; source < to; source++) {
+				rows[source] = buildRow(source);
+			}
+
+			// Report progress every 5%.
+			int size = grid.getSize();
+			int before = sourcesDone.getAndAdd(to - from);
+			int after = before + to - from;
+			if (after * 20L / size != before * 20L / size) {
+				System.out.println((after * 100L / size) + "% of sources done");
+			}
+		}
+	}
+
+	/**
+	 * Build the database for a map file.
+	 * @param args map file, then optionally "manhattan" for a four connected map
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: CpdBuilder <map file> [manhattan]");
+			return;
+		}
+		boolean eightConnected = args.length < 2 || args[1].equals("manhattan") == false;
+
+		GridDomain map = MapFileDomain.load(args[0], eightConnected);
+		GridSnapshot grid = new GridSnapshot(map);
+
+		long startTime = System.nanoTime();
+		CpdBuilder builder = new CpdBuilder(grid);
+		builder.build();
+		File file = builder.save(GridUtil.CACHE_DIRECTORY);
+
+		CompressedPathDatabase database = CompressedPathDatabase.open(grid, GridUtil.CACHE_DIRECTORY);
+		System.out.println("Wrote " + file + " in " +
+				(System.nanoTime() - startTime) / 1000000 + "ms: " +
+				database.getRunCount() + " runs for " + grid.getSize() + " cells");
+	}
+}
@@ -0,0 +1,418 @@
+package agents;
+
+import java.util.Arrays;
+
+/**
+ * Dead end regions of a map (after Bjornsson & Halldorsson 2006), found from
+ * its block-cut tree.
+ *
+ * A cell whose removal splits the map in two is an articulation point. The
+ * map's passable cells fall into blocks (biconnected components) joined at
+ * articulation points, and the blocks and articulation points form a tree.
+ * A path between two cells never visits a cell twice, so it can only pass
+ * through the blocks on the tree path between them; every other block hangs
+ * off that path through a single cell, and is a dead end. Pocket rooms,
+ * corridors to nowhere and the like are all skipped, while every optimal
+ * path is kept.
+ *
+ * The tree is built with a depth first search over every cell, which takes
+ * about a second on a large map, so it can be built in parts, each stopping
+ * at a deadline, to be carried on later (see continueBuild()). Each query then
+ * marks the tree path between its start and goal (see setQuery()). The same
+ * search roots a tree in each connected component, so Bitboard, which labels
+ * components but cannot find articulation points, is not needed here.
+ */
+public class DeadEndRegions {
+
+	private GridSnapshot grid;
+
+	// Tree node of each cell: its block, or (for articulation points) a node of
+	// its own. -1 for impassable cells.
+	private int[] cellNodes;
+
+	// Nodes 0 to blockCount - 1 are blocks, the rest articulation points.
+	private int blockCount;
+	private int nodeCount;
+
+	// The tree, rooted at an arbitrary node of each connected component.
+	private int[] parents;
+	private int[] depths;
+	private int[] roots;
+
+	// Neighbouring tree nodes, in compressed sparse row form.
+	private int[] adjacencyStarts;
+	private int[] adjacency;
+
+	// Nodes on the path of the current query carry the current stamp.
+	private int[] stamps;
+	private int stamp = 0;
+
+	// Whether a query is set and can be used to skip cells.
+	private boolean isQuerySet = false;
+
+	// Cells searched between looks at the clock while building.
+	private static final int DEADLINE_CHECK_INTERVAL = 4096;
+
+	private boolean isBuilt = false;
+
+	// Depth first search state, kept between calls to continueBuild() and
+	// dropped once the tree is built. Visit order starts at 1; 0 is
+	// unvisited.
+	private int[] order;
+	private int[] low;
+	private int[] searchParents;
+	private int[] nextDirections;
+	private int[] searchStack;
+	private int[] cellStack;
+	private int searchTop;
+	private int cellTop;
+	private int visitCount;
+
+	// Root of the component being searched (-1 between components), the cell
+	// to try as the next root, and the number of search children of the root.
+	private int searchRoot;
+	private int nextRoot;
+	private int rootChildren;
+
+	// Block each non-root cell was popped into, the cell each block hangs
+	// from, and which cells are articulation points and search roots.
+	private int[] cellBlocks;
+	private int[] blockHeads;
+	private boolean[] isArticulation;
+	private boolean[] isRoot;
+
+	/**
+	 * Build the regions of a map in full.
+	 */
+	public DeadEndRegions(GridSnapshot grid) {
+		this(grid, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Start building the regions of a map, stopping at a deadline. Until the
+	 * build has been finished by continueBuild(), no cell is a dead end.
+	 * @param deadline System.nanoTime() by which to stop
+	 */
+	public DeadEndRegions(GridSnapshot grid, long deadline) {
+		this.grid = grid;
+		startBuild();
+		continueBuild(deadline);
+	}
+
+	public boolean isBuilt() {
+		return isBuilt;
+	}
+
+	/**
+	 * Mark the blocks that a path from start to goal may pass through.
+	 * @param start index of the start cell
+	 * @param goal  index of the goal cell
+	 */
+	public void setQuery(int start, int goal) {
+		isQuerySet = false;
+		if (isBuilt == false) {
+			return;
+		}
+		stamp++;
+
+		int a = cellNodes[start];
+		int b = cellNodes[goal];
+		if (a == -1 || b == -1) {
+			return;
+		}
+		isQuerySet = true;
+
+		// Nothing can be reached; mark only the start.
+		if (roots[a] != roots[b]) {
+			stamps[a] = stamp;
+			return;
+		}
+
+		// Climb from both ends to the nearest common ancestor.
+		while (depths[a] > depths[b]) {
+			stamps[a] = stamp;
+			a = parents[a];
+		}
+		while (depths[b] > depths[a]) {
+			stamps[b] = stamp;
+			b = parents[b];
+		}
+		while (a != b) {
+			stamps[a] = stamp;
+			stamps[b] = stamp;
+			a = parents[a];
+			b = parents[b];
+		}
+		stamps[a] = stamp;
+	}
+
+	/**
+	 * Can a cell be left out of a search between the current query's start and
+	 * goal? Always false until a query has been set.
+	 */
+	public boolean isDeadEnd(int cell) {
+		if (isQuerySet == false) {
+			return false;
+		}
+		int node = cellNodes[cell];
+		if (node == -1 || stamps[node] == stamp) {
+			return false;
+		}
+
+		// An articulation point may be passed through in any of its blocks.
+		if (node >= blockCount) {
+			for (int i = adjacencyStarts[node]; i < adjacencyStarts[node + 1]; i++) {
+				if (stamps[adjacency[i]] == stamp) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	public int getArticulationPointCount() {
+		return nodeCount - blockCount;
+	}
+
+	/* -- BUILDING -- */
+
+	/**
+	 * Start building the tree, to be carried on by continueBuild().
+	 */
+	private void startBuild() {
+		int size = grid.getSize();
+		order = new int[size];
+		low = new int[size];
+		searchParents = new int[size];
+		nextDirections = new int[size];
+		searchStack = new int[size];
+		cellStack = new int[size];
+		cellBlocks = new int[size];
+		blockHeads = new int[size];
+		isArticulation = new boolean[size];
+		isRoot = new boolean[size];
+
+		Arrays.fill(cellBlocks, -1);
+		visitCount = 0;
+		blockCount = 0;
+		searchRoot = -1;
+		nextRoot = 0;
+		searchTop = 0;
+		cellTop = 0;
+	}
+
+	/**
+	 * Carry on building the tree until it is done or the deadline passes.
+	 * Blocks and articulation points are found with Tarjan's depth first
+	 * search, which is resumed where it stopped, and then joined into a tree.
+	 * @param deadline System.nanoTime() by which to stop
+	 * @return whether the tree is built
+	 */
+	public boolean continueBuild(long deadline) {
+		if (isBuilt) {
+			return true;
+		}
+
+		int size = grid.getSize();
+		int[] directions = grid.getDirections();
+		int stepCount = 0;
+
+		while (true) {
+			if (searchTop == 0) {
+				if (searchRoot != -1) {
+					finishComponent();
+					searchRoot = -1;
+				}
+				while (nextRoot < size &&
+						(order[nextRoot] != 0 || grid.isPassable(nextRoot) == false)) {
+					nextRoot++;
+				}
+				if (nextRoot == size) {
+					break;
+				}
+				startComponent(nextRoot);
+			}
+
+			if (++stepCount % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+				return false;
+			}
+
+			int cell = searchStack[searchTop - 1];
+
+			if (nextDirections[cell] < directions.length) {
+				int neighbour = grid.getNeighbour(cell, directions[nextDirections[cell]++]);
+				if (neighbour == -1) {
+					continue;
+				}
+				if (order[neighbour] == 0) {
+					order[neighbour] = low[neighbour] = ++visitCount;
+					searchParents[neighbour] = cell;
+					nextDirections[neighbour] = 0;
+					searchStack[searchTop++] = neighbour;
+					cellStack[cellTop++] = neighbour;
+				} else if (neighbour != searchParents[cell]) {
+					low[cell] = Math.min(low[cell], order[neighbour]);
+				}
+				continue;
+			}
+
+			// All neighbours done; return to the parent.
+			searchTop--;
+			int parent = searchParents[cell];
+			if (parent == -1) {
+				continue;
+			}
+			low[parent] = Math.min(low[parent], low[cell]);
+
+			if (low[cell] >= order[parent]) {
+				// Everything above parent on the stack forms a block
+				// hanging from it.
+				int block = blockCount++;
+				blockHeads[block] = parent;
+				int popped;
+				do {
+					popped = cellStack[--cellTop];
+					cellBlocks[popped] = block;
+				} while (popped != cell);
+
+				if (parent == searchRoot) {
+					rootChildren++;
+				} else {
+					isArticulation[parent] = true;
+				}
+			}
+		}
+
+		joinTree();
+		isBuilt = true;
+
+		// Drop the search state.
+		order = low = searchParents = nextDirections = searchStack = cellStack = null;
+		cellBlocks = blockHeads = null;
+		isArticulation = isRoot = null;
+		return true;
+	}
+
+	private void startComponent(int root) {
+		searchRoot = root;
+		isRoot[root] = true;
+		rootChildren = 0;
+		cellTop = 0;
+		order[root] = low[root] = ++visitCount;
+		searchParents[root] = -1;
+		nextDirections[root] = 0;
+		searchStack[searchTop++] = root;
+		cellStack[cellTop++] = root;
+	}
+
+	private void finishComponent() {
+		int root = searchRoot;
+		if (rootChildren > 1) {
+			isArticulation[root] = true;
+		} else if (rootChildren == 0) {
+			// A cell on its own.
+			blockHeads[blockCount] = root;
+			cellBlocks[root] = blockCount++;
+		}
+	}
+
+	/**
+	 * Number the blocks and articulation points found by the search, and join
+	 * them into a tree.
+	 */
+	private void joinTree() {
+		int size = grid.getSize();
+
+		// Number the articulation points after the blocks.
+		cellNodes = new int[size];
+		Arrays.fill(cellNodes, -1);
+		nodeCount = blockCount;
+		for (int cell = 0; cell < size; cell++) {
+			if (isArticulation[cell]) {
+				cellNodes[cell] = nodeCount++;
+			}
+		}
+		for (int cell = 0; cell < size; cell++) {
+			if (order[cell] != 0 && isArticulation[cell] == false && cellBlocks[cell] != -1) {
+				cellNodes[cell] = cellBlocks[cell];
+			}
+		}
+		// A root that is not an articulation point lies in the one block
+		// hanging from it.
+		for (int block = 0; block < blockCount; block++) {
+			int head = blockHeads[block];
+			if (isRoot[head] && isArticulation[head] == false) {
+				cellNodes[head] = block;
+			}
+		}
+
+		// Tree edges: each block to the articulation point it hangs from, and
+		// each articulation point to the block it was popped into.
+		int[] edgeFrom = new int[2 * nodeCount];
+		int[] edgeTo = new int[2 * nodeCount];
+		int edgeCount = 0;
+		for (int block = 0; block < blockCount; block++) {
+			int head = blockHeads[block];
+			if (isArticulation[head]) {
+				edgeFrom[edgeCount] = block;
+				edgeTo[edgeCount++] = cellNodes[head];
+			}
+		}
+		for (int cell = 0; cell < size; cell++) {
+			if (isArticulation[cell] && isRoot[cell] == false) {
+				edgeFrom[edgeCount] = cellBlocks[cell];
+				edgeTo[edgeCount++] = cellNodes[cell];
+			}
+		}
+
+		adjacencyStarts = new int[nodeCount + 1];
+		for (int i = 0; i < edgeCount; i++) {
+			adjacencyStarts[edgeFrom[i] + 1]++;
+			adjacencyStarts[edgeTo[i] + 1]++;
+		}
+		for (int node = 0; node < nodeCount; node++) {
+			adjacencyStarts[node + 1] += adjacencyStarts[node];
+		}
+		adjacency = new int[2 * edgeCount];
+		int[] fill = Arrays.copyOf(adjacencyStarts, nodeCount);
+		for (int i = 0; i < edgeCount; i++) {
+			adjacency[fill[edgeFrom[i]]++] = edgeTo[i];
+			adjacency[fill[edgeTo[i]]++] = edgeFrom[i];
+		}
+
+		// Root each tree of the forest, breadth first.
+		parents = new int[nodeCount];
+		depths = new int[nodeCount];
+		roots = new int[nodeCount];
+		stamps = new int[nodeCount];
+		Arrays.fill(roots, -1);
+		int[] queue = new int[nodeCount];
+		for (int root = 0; root < nodeCount; root++) {
+			if (roots[root] != -1) {
+				continue;
+			}
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = root;
+			roots[root] = root;
+			parents[root] = -1;
+			depths[root] = 0;
+			while (head < tail) {
+				int node = queue[head++];
+				for (int i = adjacencyStarts[node]; i < adjacencyStarts[node + 1]; i++) {
+					int neighbour = adjacency[i];
+					if (roots[neighbour] == -1) {
+						roots[neighbour] = root;
+						parents[neighbour] = node;
+						depths[neighbour] = depths[node] + 1;
+						queue[tail++] = neighbour;
+					}
+				}
+			}
+		}
+	}
+}
@@ -6,11 +6,11 @@ package agents;
 import java.util.ArrayList;
 
 import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.Edge;
 import au.rmit.ract.planning.pathplanning.entity.State;
 import pplanning.interfaces.PlanningAgent;
 import pplanning.simviewer.model.GridCell;
 import pplanning.simviewer.model.GridDomain;
-import pplanning.simviewer.model.SuccessorIterator;
 
 public class DeadlineAwareSearch implements PlanningAgent
 {
@@ -33,11 +33,29 @@ public class DeadlineAwareSearch implements PlanningAgent
 	// along the plan afterwards.)
 	final private long SEARCH_END_TIME_OFFSET = 20000000; // 20ms
 
+	// Below this much search time, the initial incumbent comes from a beam
+	// search limited to a fraction of it, before the other providers are tried.
+	final private long SHORT_SEARCH_TIME = 100000000; // 100ms
+	final private double BEAM_TIME_FRACTION = 0.25;
+
+	// Most cells kept in a layer of the beam search.
+	final private int BEAM_MAX_WIDTH = 1024;
+
+	// After the map changes, the initial incumbent comes from a bounded-cost
+	// search for a plan within this factor of what was left of the old one,
+	// limited to a fraction of the search time.
+	final private float REPLAN_COST_FACTOR = 1.2f;
+	final private double BOUNDED_COST_TIME_FRACTION = 0.25;
+
+	// Share of a step's time given to building map data (see rebuildMapData()).
+	final private double STEP_BUILD_FRACTION = 0.5;
+
 	// Should the open and closed sets (graphics only!! - not in the search) be regenerated?
 	boolean shouldUpdateOpen = false;
 	boolean shouldUpdateClosed = false;
 
 	// The following members are used to determine the depth estimate (d^cheapest) heuristic to use
+	private GridUtil.Connectivity connectivity = null;
 	private DistanceCalculator distanceCalculator = null;
 
 	// r_default. Used before conExpansionIntervals has settled.
@@ -82,6 +100,45 @@ public class DeadlineAwareSearch implements PlanningAgent
 
 	private ComputedPlan incumbentPlan = null;
 
+	// Flat copy of the map, kept up to date with changed cells between calls.
+	private GridSnapshot snapshot = null;
+
+	// Fast planners for the initial incumbent, in order of preference.
+	private ArrayList<IncumbentProvider> incumbentProviders = null;
+
+	// The subgoal graph among them, if any. Rebuilding it takes seconds on a
+	// large map, so it is dropped once the map has changed.
+	private SubgoalGraph subgoalGraph = null;
+
+	// Incumbent provider for short deadlines (see SHORT_SEARCH_TIME).
+	private BeamSearch beamSearch = null;
+
+	// Incumbent provider after map changes (see REPLAN_COST_FACTOR), and the
+	// bound on its plan, or infinity for none.
+	private PotentialSearch potentialSearch = null;
+	private float replanCostBound = Float.POSITIVE_INFINITY;
+
+	// Goal bounding boxes, if built for this map. Dropped once the map changes.
+	private GoalBoundingTable goalBounds = null;
+
+	// Regions no path between start and goal can enter. Built in parts
+	// outside the search deadline, so missing for the first search, and
+	// rebuilt in the same way after the map changes (see rebuildMapData()).
+	private DeadEndRegions deadEnds = null;
+
+	// Evaluates the successors of each expanded cell together.
+	private SuccessorBatch successors = null;
+
+	// Connected components, to reject unreachable goals before searching.
+	private Bitboard bitboard = null;
+
+	// Index of the goal in the snapshot.
+	private int goalIndex;
+
+	// Per successor flags for the cell being expanded.
+	private boolean[] isSkipped = new boolean[SuccessorBatch.MAX_SUCCESSORS];
+	private boolean[] isHeld = new boolean[SuccessorBatch.MAX_SUCCESSORS];
+
 	// This code is purely for performance measurement after the application - not internal performance
 	//PerformanceMeasure metrics[] = new PerformanceMeasure[1000000];
 	
@@ -95,7 +152,8 @@ public class DeadlineAwareSearch implements PlanningAgent
 		try {
 
 			if (distanceCalculator == null) {
-				distanceCalculator = GridUtil.createDistanceCalculator(map);
+				connectivity = GridUtil.checkConnectivity(map);
+				distanceCalculator = GridUtil.getDistanceCalculator(connectivity);
 			}
 
 			/* We need to replan iff
@@ -109,9 +167,11 @@ public class DeadlineAwareSearch implements PlanningAgent
 			 * This is not necessarily a valid assumption, but determining whether to
 			 * replan is a separate issue!
 			 */
+			ArrayList<Edge> changedEdges = map.getChangedEdges();
+
 			boolean bReplan =
 					plan == null ||
-					map.getChangedEdges().size() > 0 ||
+					changedEdges.size() > 0 ||
 					!lastGoal.equals(goal) ||
 					timeLeft > previousTimeLeft;
 
@@ -127,6 +187,22 @@ public class DeadlineAwareSearch implements PlanningAgent
 				// Initialise the deadline, which is the time by which we must return a solution
 				timeDeadline = timeCurrent + searchTime;
 
+				// If only the map has changed, what is left of the old plan, as it
+				// cost before the change, bounds what the new one need cost.
+				replanCostBound = Float.POSITIVE_INFINITY;
+				if (plan != null && changedEdges.size() > 0 && lastGoal.equals(goal))
+				{
+					replanCostBound = REPLAN_COST_FACTOR * getRemainingCost(plan, stepNo);
+				}
+
+				// Bring our copy of the map up to date. This comes out of the search
+				// time: the first call builds the snapshot, the per-cell arrays of
+				// GreedyBestFirst, BeamSearch and PotentialSearch, the
+				// SuccessorBatch and the Bitboard, opens the GoalBoundingTable, and
+				// loads the subgoal graph if it is cached. The Bitboard's component
+				// labels (a few ms on a large map) are made by the first search.
+				updateSnapshot(map, changedEdges);
+
 				// a new plan has been generated, update open and closed debug sets.
 				shouldUpdateOpen = true;
 				shouldUpdateClosed = true;
@@ -144,6 +220,11 @@ public class DeadlineAwareSearch implements PlanningAgent
 				stepNo = 0;
 				lastGoal = goal;
 			}
+			else
+			{
+				// Following the plan leaves time to build what searches do without.
+				rebuildMapData(stepTime);
+			}
 
 			// Check if path has been exhausted.
 			if (stepNo >= plan.getLength()) {
@@ -220,10 +301,23 @@ public class DeadlineAwareSearch implements PlanningAgent
 		// application execution
 		mapInfo = new FastDasMapInfo(map);
 
+		// No search can reach a goal in another connected component.
+		if (bitboard.isReachable(snapshot.getIndex(start), snapshot.getIndex(goal)) == false)
+		{
+			return null;
+		}
+
 		// Construct an initial greedy plan
 
 		incumbentPlan = speedierSearch(map, start,goal);
 
+		goalIndex = snapshot.getIndex(goal);
+		successors.setGoal(goalIndex);
+		if (deadEnds != null)
+		{
+			deadEnds.setQuery(snapshot.getIndex(start), goalIndex);
+		}
+
 		// Initialize open set with start node.
 		//int hCost = (int)map.hCost(start, goal);
 		int hCost = (int)map.getMinCost() * distanceCalculator.dCost(start,goal);
@@ -303,14 +397,57 @@ public class DeadlineAwareSearch implements PlanningAgent
 					 * for the current node is within our performance bounds (d_max)
 					 */
 
-					// Generate all neighboring cells.
-					SuccessorIterator neighborIter = map.getNextSuccessor(current);
-					GridCell neighbor;
+					// Generate all neighboring cells, evaluated together. Children
+					// above current's queued f may be held back for a later expansion
+					// (see PartialExpansion).
+					int currentIndex = snapshot.getIndex(current);
+					int successorCount = successors.evaluate(currentIndex, mapInfo.getGCost(current));
+					int fLimit = mapInfo.getQueuedFCost(current);
+					int heldCount = 0;
 
-					while ((neighbor = neighborIter.next()) != null)
+					for (int i = 0; i < successorCount; i++)
 					{
-						//System.out.println(neighbor);
-						generateCell(map, goal, current, neighbor);
+						int cellIndex = successors.getCell(i);
+						isSkipped[i] = isSkippedMove(currentIndex, cellIndex);
+						isHeld[i] = false;
+
+						if (PartialExpansion.IS_ENABLED && !isSkipped[i] &&
+								successors.getGCost(i) + successors.getHCost(i) > fLimit)
+						{
+							// Children that cannot beat the incumbent, or that have
+							// already been reached as cheaply, are dropped outright.
+							if (isImprovement(cellIndex, successors.getGCost(i)))
+							{
+								isHeld[i] = true;
+								heldCount++;
+							}
+							else
+							{
+								isSkipped[i] = true;
+							}
+						}
+					}
+
+					boolean isDeferred = PartialExpansion.isDeferred(heldCount);
+					int nextFCost = Integer.MAX_VALUE;
+
+					for (int i = 0; i < successorCount; i++)
+					{
+						if (isSkipped[i])
+						{
+							continue;
+						}
+						if (isDeferred && isHeld[i])
+						{
+							nextFCost = Math.min(nextFCost, successors.getGCost(i) + successors.getHCost(i));
+							continue;
+						}
+						generateCell(current, i);
+					}
+
+					if (isDeferred)
+					{
+						mapInfo.deferCell(current, nextFCost);
 					}
 
 					/* Here, we calculate the expansion delay, which is our vacillation evaluation
@@ -379,6 +516,8 @@ public class DeadlineAwareSearch implements PlanningAgent
 			}
 		}
 
+		Trace.print("DAS expansions: " + expansionCount +
+				", peak open count: " + mapInfo.getPeakOpenCount());
 
 		/**
 		 *  This is where we make a hybrid speedier/DAS plan!
@@ -389,33 +528,44 @@ public class DeadlineAwareSearch implements PlanningAgent
 		if (/*!foundDASSolution && */ incumbentPlan != null)
 		{
 			ComputedPlan pathNew = new ComputedPlan();
-			int pathCost = 0;
+			float pathCost = 0;
 			int countGreedy = 0;
 			int countDAS = 0;
 
 			// Used to track the cost between start point and current node
 			boolean DASPathToNodeIsCheaper = false;
 
+			// Step after the current one on the plan, if any
+			GridCell nextCell = null;
+
 			// Combined the DAS partial plan with the greedy solution
 			for (int iterSteps = incumbentPlan.getLength()-1;
 					iterSteps >= 0 ; iterSteps--)
 			{
-				// Step backwards through each step of the greedy search that found the goal
+				// Step backwards through each step of the greedy search that found the goal.
+				// pathCost is the cost of the plan from this cell on.
 				GridCell cell = (GridCell) incumbentPlan.getStep(iterSteps);
+				if (nextCell != null)
+				{
+					pathCost += map.cost(cell, nextCell);
+				}
 				pathNew.prependStep(cell);
-				pathCost += cell.getCellCost();
+				nextCell = cell;
 				countGreedy++;
 				if (mapInfo.cellExists(cell))
 				{
 					// We have hooked up with the DAS partial solution!
 					// Get the upstream from the DAS mapInfo IFF it is cheaper from this point
-					DASPathToNodeIsCheaper = mapInfo.getGCost(cell) + pathCost
-							< incumbentPlan.getCost();
+					DASPathToNodeIsCheaper = FloatUtil.compare(mapInfo.getGCost(cell) + pathCost,
+							incumbentPlan.getCost()) == -1;
 					if (DASPathToNodeIsCheaper)
 					{
+						pathCost += mapInfo.getGCost(cell);
+
+						// The joining cell is already on the plan; add its DAS ancestors.
+						cell = mapInfo.getParent(cell);
 						while (cell != null)
 						{
-							pathCost += cell.getCellCost();
 							pathNew.prependStep(cell);
 							cell = mapInfo.getParent(cell);
 
@@ -447,49 +597,91 @@ public class DeadlineAwareSearch implements PlanningAgent
 	/**
 	 * This function is to generate a nominated node, and put it on the open set
 	 * We initialise the appropriate values here
-	 * @param map
-	 * @param goal
-	 * @param parent
-	 * @param cell
+	 * @param parent the cell being expanded
+	 * @param successor lane of the cell in successors, already evaluated
 	 */
-	private void generateCell(GridDomain map, GridCell goal, GridCell parent, GridCell cell)
+	private void generateCell(GridCell parent, int successor)
 	{
-			// consider node if it can be entered
-			if (map.isBlocked(cell) == false)
-			{
-				// Set the G cost equal to the G cost of a nodes parent + the transit cost of this node
-				int gCost = mapInfo.getGCost(parent) + (int)map.cost(parent, cell);
+			// Only passable cells are evaluated, so the cell can be entered.
+			GridCell cell = snapshot.getCell(successors.getCell(successor));
 
-				// Set the H cost to the Apparate provided H estimate
-				//int hCost = (int)map.hCost(cell, goal);
-				int hCost = (int) (map.getMinCost() * distanceCalculator.dCost(cell, goal));
+			// G cost is the G cost of a nodes parent + the transit cost of this node,
+			// and H cost is the minimum cost times the move count to the goal.
+			int gCost = successors.getGCost(successor);
+			int hCost = successors.getHCost(successor);
 
-				// d_cheapest cannot be assumed to be the same as h..
-				int dCheapestRaw = distanceCalculator.dCost(cell, goal);
+			// d_cheapest cannot be assumed to be the same as h..
+			int dCheapestRaw = successors.getDCheapest(successor);
 
-				// If we already have this cell in our open, closed, or pruned list, ignore it...
-				if (!mapInfo.cellExists(cell) && gCost < incumbentPlan.getCost())
-				{
-					// Node has not been seen before, add it to the open set.
-					mapInfo.add(cell, gCost, hCost, dCheapestRaw, expansionCount, parent);
-				}
-				// ... Unless it is a new and improved path to an existing cell!
-				else if (gCost < mapInfo.getGCost(cell))
-				{
-					// Shorter path to node found.
-					mapInfo.setPathToCell(cell, gCost, expansionCount, parent);
+			// If we already have this cell in our open, closed, or pruned list, ignore it...
+			if (!mapInfo.cellExists(cell) && gCost < incumbentPlan.getCost())
+			{
+				// Node has not been seen before, add it to the open set.
+				mapInfo.add(cell, gCost, hCost, dCheapestRaw, expansionCount, parent);
+			}
+			// ... Unless it is a new and improved path to an existing cell!
+			else if (gCost < mapInfo.getGCost(cell))
+			{
+				// Shorter path to node found.
+				mapInfo.setPathToCell(cell, gCost, expansionCount, parent);
 
-					// If node was closed, put it back into the open list. The new cost
-					// might make it viable. Pruned cells needn't be reopened as their
-					// dCheapest value is unaffected.
-					if (mapInfo.isClosed(cell))
-					{
-						mapInfo.reopenCell(cell);
-					}
+				// If node was closed, put it back into the open list. The new cost
+				// might make it viable. Pruned cells needn't be reopened as their
+				// dCheapest value is unaffected.
+				if (mapInfo.isClosed(cell))
+				{
+					mapInfo.reopenCell(cell);
 				}
 			}
 		}
 
+	/**
+	 * Could generating a cell with this g change the search?
+	 * @param cell  index of the cell
+	 * @param gCost g of the cell through the current parent
+	 */
+	private boolean isImprovement(int cell, int gCost)
+	{
+		if (incumbentPlan != null && gCost >= incumbentPlan.getCost())
+		{
+			return false;
+		}
+		GridCell gridCell = snapshot.getCell(cell);
+		return !mapInfo.cellExists(gridCell) || gCost < mapInfo.getGCost(gridCell);
+	}
+
+	/**
+	 * Can a move be left out of the search altogether?
+	 * @param from index of the cell being expanded
+	 * @param to   index of its successor
+	 */
+	private boolean isSkippedMove(int from, int to)
+	{
+		// Skip moves that do not start an optimal path to the goal.
+		if (goalBounds != null && goalBounds.canReach(from, to, goalIndex) == false)
+		{
+			return true;
+		}
+
+		// Skip cells in dead ends off the path between start and goal.
+		return deadEnds != null && deadEnds.isDeadEnd(to);
+	}
+
+	/**
+	 * The cost of the rest of a plan, from the step last taken, on the
+	 * snapshot as it is.
+	 * @param stepNo number of steps already taken
+	 */
+	private float getRemainingCost(ComputedPlan plan, int stepNo)
+	{
+		float cost = 0f;
+		for (int i = Math.max(1, stepNo); i < plan.getLength(); i++)
+		{
+			cost += snapshot.getCost(snapshot.getIndex((GridCell) plan.getStep(i)));
+		}
+		return cost;
+	}
+
 	/**
 	 * Estimate the number of expansions that can be performed before the deadline (dMax).
 	 * @param timeDeadline the time that a solution must be found by (ns)
@@ -528,9 +720,87 @@ public class DeadlineAwareSearch implements PlanningAgent
 		return exp;
 	}
 
+	/**
+	 * Create the map snapshot and incumbent providers on the first call, and
+	 * refresh them with any changed cells on later calls.
+	 */
+	private void updateSnapshot(GridDomain map, ArrayList<Edge> changedEdges)
+	{
+		if (snapshot == null || snapshot.getMap() != map)
+		{
+			snapshot = new GridSnapshot(map);
+
+			// The subgoal graph gives near optimal plans, but only on maps without
+			// weighted terrain, and is only used if it has been built ahead of
+			// time (by SubgoalGraphAgent). Greedy best first search works
+			// everywhere, and takes the least time from the deadline.
+			incumbentProviders = new ArrayList<IncumbentProvider>();
+			subgoalGraph = null;
+			if (SubgoalGraph.isCached(snapshot, GridUtil.CACHE_DIRECTORY))
+			{
+				// Only loads the cached graph.
+				subgoalGraph = new SubgoalGraph(snapshot, GridUtil.CACHE_DIRECTORY);
+				subgoalGraph.build();
+				incumbentProviders.add(subgoalGraph);
+			}
+			incumbentProviders.add(new GreedyBestFirst(snapshot));
+			beamSearch = new BeamSearch(snapshot, BEAM_MAX_WIDTH);
+			potentialSearch = new PotentialSearch(snapshot);
+
+			goalBounds = GoalBoundingTable.open(snapshot, GridUtil.CACHE_DIRECTORY);
+			deadEnds = null;
+			successors = new SuccessorBatch(snapshot, connectivity);
+			bitboard = new Bitboard(snapshot);
+		}
+		else if (snapshot.update(changedEdges))
+		{
+			goalBounds = null;
+			deadEnds = null;
+			bitboard.update(changedEdges);
+			if (subgoalGraph != null)
+			{
+				incumbentProviders.remove(subgoalGraph);
+				subgoalGraph = null;
+			}
+			for (IncumbentProvider provider : incumbentProviders)
+			{
+				provider.update(changedEdges);
+			}
+		}
+	}
+
+	/**
+	 * Build map data too slow to build within a search deadline, or rebuild
+	 * it after a change, on a call that does not plan, so that the time comes
+	 * from a step rather than from a deadline. Each call takes at most a
+	 * share of the step time, carrying on where the last one stopped. Until
+	 * then, searches do without it.
+	 * @param stepTime the time allowed for the step, in milliseconds
+	 */
+	private void rebuildMapData(long stepTime)
+	{
+		long deadline = System.nanoTime() +
+				(long) (stepTime * MS_TO_NS_CONV_FACT * STEP_BUILD_FRACTION);
+		if (deadEnds == null)
+		{
+			deadEnds = new DeadEndRegions(snapshot, deadline);
+		}
+		else if (deadEnds.isBuilt() == false)
+		{
+			deadEnds.continueBuild(deadline);
+		}
+	}
+
 	/**
 	 * This is a greedy search to quickly rush to get an incumbent solution
 	 * It's intent is to be as fast as possible, with no thought to the quality of the solution
+	 *
+	 * Each incumbent provider is tried in turn, and the first plan found is
+	 * used. The plan contains every cell on the path, so it can be hybridised
+	 * with the DAS tree as before. When the deadline is very close, a beam
+	 * search sized to finish within a fraction of the time left goes first,
+	 * and after a map change, a potential search for a plan not much dearer
+	 * than the old one goes before that.
 	 * @param map
 	 * @param start
 	 * @param goal
@@ -538,42 +808,45 @@ public class DeadlineAwareSearch implements PlanningAgent
 	 */
 	private ComputedPlan speedierSearch(GridDomain map, GridCell start, GridCell goal)
 	{
+		long searchTime = timeDeadline - timer.getCurrentNanotime();
+		if (replanCostBound != Float.POSITIVE_INFINITY)
+		{
+			potentialSearch.setTimeLimit((long) (searchTime * BOUNDED_COST_TIME_FRACTION));
+			ComputedPlan incumbentPlan = potentialSearch.findPlanUnder(start, goal, replanCostBound);
 
-		GreedyMapInfo mapInfo = new GreedyMapInfo(map);
-		float hCost = map.hCost(start, goal);
-		mapInfo.add(start, 0, hCost);
-
-		ComputedPlan incumbentPlan = null;
+			if (incumbentPlan != null)
+			{
+				Trace.print("Goal found with PotentialSearch under " + replanCostBound +
+						", GCost " + incumbentPlan.getCost());
+				return incumbentPlan;
+			}
+		}
 
-		while (mapInfo.isOpenEmpty() == false)
+		if (searchTime < SHORT_SEARCH_TIME)
 		{
-			GridCell current = mapInfo.closeCheapestOpen();
-			if (current == goal)
+			beamSearch.setTimeLimit((long) (searchTime * BEAM_TIME_FRACTION));
+			ComputedPlan incumbentPlan = beamSearch.findIncumbent(start, goal);
+
+			if (incumbentPlan != null)
 			{
-				System.out.println("Goal found with speedier search, GCost " + mapInfo.getGCost(current));
-				incumbentPlan = mapInfo.computePlan(current);
-				break;
+				Trace.print("Goal found with BeamSearch, GCost " + incumbentPlan.getCost());
+				return incumbentPlan;
 			}
+		}
+
+		for (IncumbentProvider provider : incumbentProviders)
+		{
+			ComputedPlan incumbentPlan = provider.findIncumbent(start, goal);
 
-			// Here we have changed the successor generation to match that of the DAS search
-			// This is much more likely to create a collision between the greedy path and
-			// the DAS path (a good thing for short deadlines!!!)
-			SuccessorIterator neighborIter = map.getNextSuccessor(current);
-			GridCell neighbor;
-			while ((neighbor = neighborIter.next()) != null)
+			if (incumbentPlan != null)
 			{
-				if (map.isBlocked(neighbor) == false &&
-					mapInfo.isClosed((GridCell) neighbor) == false &&
-					mapInfo.isOpen((GridCell)neighbor) == false)
-				{
-					float hNeighbor = map.hCost(neighbor, goal);
-					float gNeighbor = mapInfo.getGCost((GridCell)current) + map.cost(current, neighbor);
-					mapInfo.add((GridCell) neighbor, gNeighbor, hNeighbor, current);
-				}
-			}			
+				Trace.print("Goal found with " + provider.getClass().getSimpleName()
+						+ ", GCost " + incumbentPlan.getCost());
+				return incumbentPlan;
+			}
 		}
 
-		return incumbentPlan;
+		return null;
 	}
 
 	/**
@@ -0,0 +1,143 @@
+package agents;
+
+import java.util.Random;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import pplanning.interfaces.PlanningAgent;
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Compares the deadline aware agents (DeadlineAwareSearch and ContractSearch)
+ * on plan cost over a sweep of deadlines.
+ *
+ *     java -Djava.library.path=lib agents.DeadlineBenchmark maps/AR0202SR.map [manhattan] [deadline ms...]
+ *
+ * Each agent plans the same random queries under each deadline, as it would
+ * with that totaltime in Apparate. For each deadline this prints each
+ * agent's mean plan quality: the best cost found for a query by either
+ * agent, divided by the cost of the agent's plan (or zero if it had none).
+ * Agents are created afresh for each deadline, and plan one query unscored
+ * first, so that building their map data and warming the JIT is not counted.
+ */
+public class DeadlineBenchmark {
+
+	private final static int QUERY_COUNT = 20;
+	private final static long[] DEFAULT_DEADLINES = { 50, 100, 200, 500, 1000 };
+	private final static String[] AGENT_NAMES = { "DAS", "Contract" };
+
+	/**
+	 * @param args map file, then optionally "manhattan" for a four connected
+	 *             map, and the deadlines in milliseconds
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: DeadlineBenchmark <map file> [manhattan] [deadline ms...]");
+			return;
+		}
+		boolean eightConnected = true;
+		int deadlineCount = 0;
+		long[] deadlines = new long[args.length];
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("manhattan")) {
+				eightConnected = false;
+			} else {
+				deadlines[deadlineCount++] = Long.parseLong(args[i]);
+			}
+		}
+		if (deadlineCount == 0) {
+			deadlines = DEFAULT_DEADLINES;
+			deadlineCount = DEFAULT_DEADLINES.length;
+		}
+
+		GridDomain map = MapFileDomain.load(args[0], eightConnected);
+		GridSnapshot grid = new GridSnapshot(map);
+		Bitboard bitboard = new Bitboard(grid);
+
+		// Random queries with a path between start and goal, the first unscored.
+		Random random = new Random(1);
+		int[] starts = new int[QUERY_COUNT + 1];
+		int[] goals = new int[QUERY_COUNT + 1];
+		for (int q = 0; q <= QUERY_COUNT; q++) {
+			do {
+				starts[q] = randomPassableCell(grid, random);
+				goals[q] = randomPassableCell(grid, random);
+			} while (bitboard.isReachable(starts[q], goals[q]) == false);
+		}
+
+		float[][][] costs = new float[deadlineCount][AGENT_NAMES.length][QUERY_COUNT];
+		for (int d = 0; d < deadlineCount; d++) {
+			for (int agent = 0; agent < AGENT_NAMES.length; agent++) {
+				PlanningAgent planner = agent == 0 ?
+						new DeadlineAwareSearch() : new ContractSearch();
+				plan(planner, map, grid, starts[0], goals[0], deadlines[d]);
+				for (int q = 0; q < QUERY_COUNT; q++) {
+					costs[d][agent][q] = plan(planner, map, grid,
+							starts[q + 1], goals[q + 1], deadlines[d]);
+				}
+			}
+		}
+
+		// Score each plan on the best cost found for its query under any deadline.
+		for (int d = 0; d < deadlineCount; d++) {
+			System.out.print("Deadline " + deadlines[d] + "ms:");
+			for (int agent = 0; agent < AGENT_NAMES.length; agent++) {
+				double quality = 0;
+				int solved = 0;
+				for (int q = 0; q < QUERY_COUNT; q++) {
+					float bestCost = Float.POSITIVE_INFINITY;
+					for (int e = 0; e < deadlineCount; e++) {
+						for (int other = 0; other < AGENT_NAMES.length; other++) {
+							bestCost = Math.min(bestCost, costs[e][other][q]);
+						}
+					}
+					float cost = costs[d][agent][q];
+					if (Float.isInfinite(cost) == false) {
+						quality += bestCost / cost;
+						solved++;
+					}
+				}
+				System.out.print(" " + AGENT_NAMES[agent] +
+						" quality " + String.format("%.3f", quality / QUERY_COUNT) +
+						" (" + solved + " solved)");
+			}
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Have an agent plan a query, and cost its plan on the map.
+	 * @return the plan's cost, or infinity if it has none, or it does not
+	 *         lead from start to goal
+	 */
+	private static float plan(PlanningAgent planner, GridDomain map, GridSnapshot grid,
+			int start, int goal, long deadline) {
+		GridCell startCell = grid.getCell(start);
+		GridCell goalCell = grid.getCell(goal);
+		planner.getNextMove(map, startCell, goalCell, 0, 0, deadline);
+
+		ComputedPlan plan = planner.getPath();
+		if (plan == null || plan.getLength() == 0 ||
+				plan.getStep(0) != startCell || plan.getStep(plan.getLength() - 1) != goalCell) {
+			return Float.POSITIVE_INFINITY;
+		}
+		float cost = 0f;
+		for (int i = 1; i < plan.getLength(); i++) {
+			int from = grid.getIndex((GridCell) plan.getStep(i - 1));
+			int to = grid.getIndex((GridCell) plan.getStep(i));
+			if (grid.getDistance(from, to) != 1 || grid.isPassable(to) == false) {
+				return Float.POSITIVE_INFINITY;
+			}
+			cost += grid.getCost(to);
+		}
+		return cost;
+	}
+
+	private static int randomPassableCell(GridSnapshot grid, Random random) {
+		int cell;
+		do {
+			cell = random.nextInt(grid.getSize());
+		} while (grid.isPassable(cell) == false);
+		return cell;
+	}
+}
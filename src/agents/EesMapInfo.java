@@ -0,0 +1,397 @@
+package agents;
+
+import java.util.ArrayList;
+
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+import pplanning.simviewer.model.GridCoord;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+
+/**
+ * Cell metadata and the three open lists of ExplicitEstimationSearch.
+ *
+ * Every open cell is on the cleanup list, ordered on f = g + h, whose head
+ * gives the admissible lower bound, and on the open list, ordered on the
+ * inadmissible f^ = g + h^. Open cells with f^ no more than the weight times
+ * the lowest f^ are also on the focal list, ordered on d^, the estimated
+ * number of moves to the goal.
+ *
+ * d^ and h^ are corrected for the one step error seen along the path to a
+ * cell, exactly as DAS corrects d^cheapest (see FastDasMapInfo): each move
+ * that fails to bring the goal a move closer adds to the path's cumulative
+ * error, and estimates are divided by one less the average error.
+ *
+ * The lists are OrderedOpenLists rather than heaps, so any cell can be
+ * removed in O(log n), and when the lowest f^ moves only the cells whose f^
+ * lies between the old and new bounds are moved in to or out of focal.
+ */
+public class EesMapInfo {
+
+	GridDomain map;
+
+	private int closedCount = 0;
+
+	// Cleanup (f), open (f^) and focal (d^) lists, of cell indices.
+	private OrderedOpenList cleanupList;
+	private OrderedOpenList openList;
+	private OrderedOpenList focalList;
+
+	// Lowest f^ that the focal list was filled for. Focal holds exactly the
+	// open cells with f^ no more than the weight times this.
+	private float focalFHatCost = Float.NaN;
+
+	// Cell of each index on the lists.
+	private GridCell[] cells;
+	private int height;
+
+	// Suboptimality bound.
+	private float weight;
+
+	// Cell properties.
+	private CellSetMembership[][] sets;
+	private boolean[][]           isFocal;
+	private GridCell[][]          parents;
+	private float[][]             gCosts;
+	private float[][]             hCosts;
+	private int[][]               dCheapestRaws;
+	private int[][]               depths;
+	private int[][]               cumulativeErrors;
+	private float[][]             dHats;
+	private float[][]             hHats;
+
+	/**
+	 * @param map    the map to store information about
+	 * @param weight the suboptimality bound
+	 */
+	public EesMapInfo(GridDomain map, float weight) {
+		this.map = map;
+		this.weight = weight;
+		int width = map.getWidth();
+		int height = map.getHeight();
+		this.height = height;
+
+		this.sets             = new CellSetMembership[width][height];
+		this.isFocal          = new boolean[width][height];
+		this.parents          = new GridCell[width][height];
+		this.gCosts           = new float[width][height];
+		this.hCosts           = new float[width][height];
+		this.dCheapestRaws    = new int[width][height];
+		this.depths           = new int[width][height];
+		this.cumulativeErrors = new int[width][height];
+		this.dHats            = new float[width][height];
+		this.hHats            = new float[width][height];
+
+
+		this.cells       = new GridCell[width * height];
+		this.cleanupList = new OrderedOpenList(width * height);
+		this.openList    = new OrderedOpenList(width * height);
+		this.focalList   = new OrderedOpenList(width * height);
+	}
+
+	/**
+	 * Build the plan to a cell. Its cost is summed along the way, since a
+	 * cell reopened on a cheaper path leaves the g of its descendants too high.
+	 */
+	public ComputedPlan computePlan(GridCell goal)
+	{
+		ComputedPlan plan = new ComputedPlan();
+		float cost = 0;
+
+		GridCell cell = goal;
+		while (cell != null) {
+			plan.prependStep(cell);
+			GridCell parent = getParent(cell);
+			if (parent != null) {
+				cost += map.cost(parent, cell);
+			}
+			cell = parent;
+		}
+
+		plan.setCost(cost);
+		return plan;
+	}
+
+	/**
+	 * Add a cell to the open lists. This will fail if the cell has already
+	 * been added.
+	 * @param cell         the cell
+	 * @param gCost        the cost to get to the cell
+	 * @param hCost        the heuristic estimate to get to the goal
+	 * @param dCheapestRaw the estimated number of moves to the goal
+	 * @param parent       the previous cell in a path, or null for the start
+	 */
+	public void add(GridCell cell, float gCost, float hCost, int dCheapestRaw, GridCell parent)
+	{
+		CellSetMembership prevSet = getSetMembership(cell);
+		if (prevSet != CellSetMembership.NONE) {
+			throw new IllegalArgumentException("Cannot add cell " + cell +
+					", which has already been added as to the " + prevSet + ".");
+		}
+
+		GridCoord gc = cell.getCoord();
+		hCosts[gc.getX()][gc.getY()] = hCost;
+		dCheapestRaws[gc.getX()][gc.getY()] = dCheapestRaw;
+		setPathToCell(cell, gCost, parent);
+
+		offerOpen(cell);
+	}
+
+	/**
+	 * Record a cheaper path to a cell that has already been added, and put it
+	 * back on the open lists if it was closed.
+	 */
+	public void improve(GridCell cell, float gCost, GridCell parent)
+	{
+		if (isOpen(cell)) {
+			removeOpen(cell);
+		} else {
+			closedCount--;
+		}
+		setPathToCell(cell, gCost, parent);
+		offerOpen(cell);
+	}
+
+	/**
+	 * Set the cell's g and parent, and update its error corrected estimates.
+	 */
+	private void setPathToCell(GridCell cell, float gCost, GridCell parent)
+	{
+		GridCoord gc = cell.getCoord();
+		int x = gc.getX();
+		int y = gc.getY();
+
+		gCosts[x][y] = gCost;
+		parents[x][y] = parent;
+
+		int dCheapestRaw = dCheapestRaws[x][y];
+		if (parent == null) {
+			depths[x][y] = 0;
+			cumulativeErrors[x][y] = 0;
+		} else {
+			GridCoord pc = parent.getCoord();
+			depths[x][y] = depths[pc.getX()][pc.getY()] + 1;
+			cumulativeErrors[x][y] = cumulativeErrors[pc.getX()][pc.getY()] +
+					dCheapestRaw - dCheapestRaws[pc.getX()][pc.getY()] + 1;
+		}
+
+		float avgError = depths[x][y] == 0 ? 0 :
+				(float) cumulativeErrors[x][y] / depths[x][y];
+		float dHat = FastDasMapInfo.correctDCheapest(dCheapestRaw, avgError);
+		dHats[x][y] = dHat;
+
+		// h is a multiple of d, so is corrected in the same proportion.
+		hHats[x][y] = dCheapestRaw == 0 ? 0 : hCosts[x][y] * (dHat / dCheapestRaw);
+	}
+
+	/**
+	 * Choose the next cell to expand, as EES does, and close it:
+	 *
+	 *  - the head of focal, if its f^ is within the bound of the lowest f;
+	 *  - otherwise the head of open, if its f^ is within that bound;
+	 *  - otherwise the head of cleanup, to raise the lowest f.
+	 *
+	 * @return the cell
+	 */
+	public GridCell closeSelectedOpen()
+	{
+		int bestF = cleanupList.first();
+		if (bestF == -1) {
+			throw new IllegalStateException(
+					"Open set is empty - cannot close an open cell");
+		}
+		float bound = weight * cleanupList.getKey(bestF);
+
+		int bestDHat = focalList.first();
+		int bestFHat = openList.first();
+
+		int index;
+		if (bestDHat != -1 && FloatUtil.compare(openList.getKey(bestDHat), bound) != 1) {
+			index = bestDHat;
+		} else if (FloatUtil.compare(openList.getKey(bestFHat), bound) != 1) {
+			index = bestFHat;
+		} else {
+			index = bestF;
+		}
+
+		GridCell cell = cells[index];
+		removeOpen(cell);
+		GridCoord gc = cell.getCoord();
+		sets[gc.getX()][gc.getY()] = CellSetMembership.CLOSED;
+		closedCount++;
+
+		return cell;
+	}
+
+	/**
+	 * Put a cell on the cleanup and open lists, and on focal if it is within
+	 * the bound.
+	 */
+	private void offerOpen(GridCell cell)
+	{
+		GridCoord gc = cell.getCoord();
+		int x = gc.getX();
+		int y = gc.getY();
+		int index = x * height + y;
+		sets[x][y] = CellSetMembership.OPEN;
+		cells[index] = cell;
+
+		float fHatCost = getFHatCost(cell);
+		cleanupList.add(index, getFCost(cell), hCosts[x][y]);
+		openList.add(index, fHatCost, dHats[x][y]);
+		if (fHatCost <= weight * focalFHatCost) {
+			addFocal(index);
+		}
+		updateFocal();
+	}
+
+	private void removeOpen(GridCell cell)
+	{
+		GridCoord gc = cell.getCoord();
+		int index = gc.getX() * height + gc.getY();
+		cleanupList.remove(index);
+		openList.remove(index);
+		if (isFocal[gc.getX()][gc.getY()]) {
+			removeFocal(index);
+		}
+		updateFocal();
+	}
+
+	/**
+	 * Keep focal in step with the lowest f^. If it has risen, the open cells
+	 * between the old and new bounds join focal; if it has fallen, those
+	 * between the new and old bounds leave. Either way only that range of
+	 * the open list is visited, at O(log n) a cell.
+	 */
+	private void updateFocal()
+	{
+		int bestFHat = openList.first();
+		float fHatCost = bestFHat == -1 ? Float.NaN : openList.getKey(bestFHat);
+		if (Float.compare(fHatCost, focalFHatCost) == 0) {
+			return;
+		}
+		float oldBound = weight * focalFHatCost;
+		float newBound = weight * fHatCost;
+		focalFHatCost = fHatCost;
+
+		// Emptied; focal emptied along with it.
+		if (bestFHat == -1) {
+			return;
+		}
+
+		if (Float.isNaN(oldBound) || newBound > oldBound) {
+			int index = Float.isNaN(oldBound) ? bestFHat : openList.firstAbove(oldBound);
+			while (index != -1 && openList.getKey(index) <= newBound) {
+				if (isFocal(index) == false) {
+					addFocal(index);
+				}
+				index = openList.next(index);
+			}
+		} else {
+			int index = openList.firstAbove(newBound);
+			while (index != -1 && openList.getKey(index) <= oldBound) {
+				if (isFocal(index)) {
+					removeFocal(index);
+				}
+				index = openList.next(index);
+			}
+		}
+	}
+
+	private boolean isFocal(int index) {
+		return isFocal[index / height][index % height];
+	}
+
+	private void addFocal(int index) {
+		int x = index / height;
+		int y = index % height;
+		isFocal[x][y] = true;
+		focalList.add(index, dHats[x][y], openList.getKey(index));
+	}
+
+	private void removeFocal(int index) {
+		isFocal[index / height][index % height] = false;
+		focalList.remove(index);
+	}
+
+	/**
+	 * Returns true if there are no cells in the open set.
+	 */
+	public boolean isOpenEmpty() {
+		return cleanupList.isEmpty();
+	}
+
+	public int closedCount() {
+		return closedCount;
+	}
+
+	public GridCell getParent(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		return parents[gc.getX()][gc.getY()];
+	}
+
+	public float getGCost(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		return gCosts[gc.getX()][gc.getY()];
+	}
+
+	public float getHCost(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		return hCosts[gc.getX()][gc.getY()];
+	}
+
+	public float getFCost(GridCell cell) {
+		return getGCost(cell) + getHCost(cell);
+	}
+
+	/** Inadmissible estimate of the cost of a path through this cell. */
+	public float getFHatCost(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		return getGCost(cell) + hHats[gc.getX()][gc.getY()];
+	}
+
+	/** Error corrected estimate of the moves from this cell to the goal. */
+	public float getDHat(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		return dHats[gc.getX()][gc.getY()];
+	}
+
+	public CellSetMembership getSetMembership(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		CellSetMembership set = sets[gc.getX()][gc.getY()];
+		return set == null ? CellSetMembership.NONE : set;
+	}
+
+	public boolean cellExists(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		return (sets[gc.getX()][gc.getY()] != null);
+	}
+
+	public boolean isOpen(GridCell cell) {
+		return getSetMembership(cell) == CellSetMembership.OPEN;
+	}
+
+	/* -- DEBUG -- */
+
+	/** Return an ArrayList of all the GridCells currently in the closed set. */
+	public ArrayList<GridCell> getClosedArrayList() {
+		ArrayList<GridCell> closed = new ArrayList<GridCell>(closedCount);
+		for (int x = 0; x < map.getWidth(); x++) {
+			for (int y = 0; y < map.getHeight(); y++) {
+				if (sets[x][y] == CellSetMembership.CLOSED) {
+					closed.add(map.getCell(x, y));
+				}
+			}
+		}
+		return closed;
+	}
+
+	/** Return an ArrayList of all GridCells currently in the open set. */
+	public ArrayList<GridCell> getOpenArrayList() {
+		ArrayList<GridCell> open = new ArrayList<GridCell>(cleanupList.size());
+		for (int index = cleanupList.first(); index != -1; index = cleanupList.next(index)) {
+			open.add(cells[index]);
+		}
+		return open;
+	}
+}
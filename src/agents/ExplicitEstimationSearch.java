@@ -0,0 +1,167 @@
+package agents;
+import java.util.ArrayList;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.State;
+import pplanning.interfaces.PlanningAgent;
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Explicit Estimation Search (Thayer & Ruml 2011).
+ *
+ * A bounded suboptimal search: the plan it returns costs no more than
+ * SUBOPTIMALITY_BOUND times the optimal cost, however long that takes. Within
+ * the bound it heads for the goal along whichever path looks shortest,
+ * using error corrected estimates of distance (d^) and cost (h^) to the goal
+ * (see EesMapInfo). An admissible f keeps the search within the bound.
+ *
+ * There is no weight schedule to tune: the bound is the only parameter, and
+ * it is a guarantee on quality rather than a guide to the search. The search
+ * does stop at the deadline, though, with no plan if it has not reached the
+ * goal by then.
+ */
+public class ExplicitEstimationSearch implements PlanningAgent {
+
+	// Plans cost at most this times the optimal cost.
+	private final float SUBOPTIMALITY_BOUND = 1.5f;
+
+	// plan to execute
+	private ComputedPlan plan;
+
+	EesMapInfo mapInfo;
+
+	private int stepNo = 0;
+
+	// For timing.
+	final ThreadMXBean threadMX = ManagementFactory.getThreadMXBean();
+
+	private final long MS_TO_NS = 1000000;
+
+	final private long SEARCH_END_TIME_OFFSET = 20000000;
+
+	@Override
+	public GridCell getNextMove(GridDomain map, GridCell start, GridCell goal,
+			int stepLeft, long stepTime, long timeLeft) {
+
+		try {
+			GridCell nextStep = null;
+
+			if (plan == null) {
+				long currentTime = threadMX.getCurrentThreadCpuTime();
+				long searchTime = timeLeft * MS_TO_NS - SEARCH_END_TIME_OFFSET;
+
+				plan = generatePlan(map, start, goal, currentTime + searchTime);
+				stepNo = 0;
+			}
+
+			if (plan == null) {
+				System.out.println("Could not find goal");
+				return start;
+			}
+
+			if (stepNo < plan.getLength()) {
+				nextStep = (GridCell) plan.getStep(stepNo++);
+
+				if (nextStep == null)
+				{
+					Trace.print("next step is null!");
+				}
+			}
+
+			return nextStep;
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			return start;
+		}
+	}
+
+	/**
+	 * Search for a plan within the bound.
+	 * @param deadlineTime thread CPU time by which to give up
+	 * @return the plan, or null if there is none or time ran out first
+	 */
+	private ComputedPlan generatePlan(GridDomain map, GridCell start,
+			GridCell goal, long deadlineTime) {
+
+		GridSnapshot snapshot = new GridSnapshot(map);
+		int goalIndex = snapshot.getIndex(goal);
+		int startIndex = snapshot.getIndex(start);
+
+		// Skip dead ends that no path between start and goal can enter.
+		DeadEndRegions deadEnds = new DeadEndRegions(snapshot);
+		deadEnds.setQuery(startIndex, goalIndex);
+
+		mapInfo = new EesMapInfo(map, SUBOPTIMALITY_BOUND);
+		mapInfo.add(start, 0f, snapshot.getHCost(startIndex, goalIndex),
+				snapshot.getDistance(startIndex, goalIndex), null);
+
+		while (mapInfo.isOpenEmpty() == false) {
+
+			if (threadMX.getCurrentThreadCpuTime() >= deadlineTime) {
+				Trace.print("EES out of time after " + mapInfo.closedCount() + " expansions");
+				return null;
+			}
+
+			GridCell current = mapInfo.closeSelectedOpen();
+
+			if (current == goal) {
+				Trace.print("EES expansions: " + mapInfo.closedCount() +
+						", cost = " + mapInfo.getGCost(goal));
+				return mapInfo.computePlan(goal);
+			}
+
+			for (State stateIter : map.getSuccessors(current)) {
+				GridCell neighbor = (GridCell) stateIter;
+
+				if (map.isBlocked(neighbor)) {
+					continue;
+				}
+
+				int neighborIndex = snapshot.getIndex(neighbor);
+				if (deadEnds.isDeadEnd(neighborIndex)) {
+					continue;
+				}
+
+				float gCost = mapInfo.getGCost(current) + map.cost(current, neighbor);
+
+				if (mapInfo.cellExists(neighbor) == false) {
+					mapInfo.add(neighbor, gCost, snapshot.getHCost(neighborIndex, goalIndex),
+							snapshot.getDistance(neighborIndex, goalIndex), current);
+				} else if (FloatUtil.compare(gCost, mapInfo.getGCost(neighbor)) == -1) {
+					mapInfo.improve(neighbor, gCost, current);
+				}
+			}
+		}
+
+		// No path exists.
+		return null;
+	}
+
+	// Do we want to show extra info? (e.g., close and open nodes, current path)
+	@Override
+	public Boolean showInfo() {
+		return mapInfo != null;
+	}
+
+	@Override
+	public ArrayList<GridCell> expandedNodes() {
+		return mapInfo.getClosedArrayList();
+	}
+
+	@Override
+	public ArrayList<GridCell> unexpandedNodes() {
+		return mapInfo.getOpenArrayList();
+	}
+
+
+	@Override
+	public ComputedPlan getPath() {
+		return plan;
+	}
+
+}
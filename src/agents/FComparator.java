@@ -13,7 +13,7 @@ public class FComparator implements Comparator<GridCell> {
 
 	/**
 	 * Perform a comparison of two GridCells by f cost. Compares cells on their
-	 * f cost breaking ties on h.
+	 * queued f cost (see FastDasMapInfo.getQueuedFCost) breaking ties on h.
 	 * @param a grid cell 1
 	 * @param b grid cell 2
 	 * @return 0, -1 or 1 if a is equal to, less than or greater than b respectively
@@ -21,7 +21,7 @@ public class FComparator implements Comparator<GridCell> {
 	public int compare(GridCell a, GridCell b) {
 
 		// Compare total cost estimate.
-		int fCompare = FloatUtil.compare(mapInfo.getFCost(a), mapInfo.getFCost(b));
+		int fCompare = FloatUtil.compare(mapInfo.getQueuedFCost(a), mapInfo.getQueuedFCost(b));
 		if (fCompare != 0) {
 			return fCompare;
 		}
@@ -50,6 +50,10 @@ public class FastDasMapInfo
 	private int[][]               expansionNumbers;    // Expansion number stamped on each node
 	private int[][]               cumulativeErrors;    // Error experienced so far, to this node, from the start point
 	private int[][]               depths;              // Depth of each node, from the start point
+	private int[][]               fBounds;             // F of held back children, once partially expanded
+
+	// Largest size the open set has reached.
+	private int peakOpenCount = 0;
 
 	// Used to initialise the priority queues - arbitrary value
 	// Does not seem to have an impact on performance.
@@ -78,6 +82,7 @@ public class FastDasMapInfo
 		this.expansionNumbers     = new int[width][height];
 		this.cumulativeErrors     = new int[width][height];
 		this.depths               = new int[width][height];
+		this.fBounds              = new int[width][height];
 
 		// Initialize queues for open and pruned sets.
 		this.openQueue = new PriorityQueue<GridCell>(INITIAL_QUEUE_CAPACITY,
@@ -152,7 +157,7 @@ public class FastDasMapInfo
 
 		// Add to open set.
 		sets[x][y] = CellSetMembership.OPEN;
-		openQueue.offer(cell);
+		offerOpen(cell);
 
 	}
 
@@ -216,7 +221,34 @@ public class FastDasMapInfo
 
 		// Add to open set
 		sets[x][y] = CellSetMembership.OPEN;
+		offerOpen(cell);
+	}
+
+	/**
+	 * Return a partially expanded cell to the open set (Partial Expansion A*).
+	 * It will be expanded again, generating the children it held back, once
+	 * the search reaches the next f cost.
+	 * @param cell      a cell that has just been closed
+	 * @param nextFCost the lowest f among the children not yet generated
+	 */
+	public void deferCell(GridCell cell, int nextFCost) {
+		if (getSetMembership(cell) != CellSetMembership.CLOSED) {
+			throw new IllegalStateException("Cannot defer cell " + cell +
+					" - not in closed set.");
+		}
+
+		GridCoord gc = cell.getCoord();
+		fBounds[gc.getX()][gc.getY()] = nextFCost;
+		sets[gc.getX()][gc.getY()] = CellSetMembership.OPEN;
+		closedCount--;
+		offerOpen(cell);
+	}
+
+	private void offerOpen(GridCell cell) {
 		openQueue.offer(cell);
+		if (openQueue.size() > peakOpenCount) {
+			peakOpenCount = openQueue.size();
+		}
 	}
 
 	/**
@@ -235,6 +267,13 @@ public class FastDasMapInfo
 		return openQueue.size();
 	}
 
+	/**
+	 * Returns the largest number of cells the open set has held.
+	 */
+	public int getPeakOpenCount() {
+		return peakOpenCount;
+	}
+
 	/**
 	 * This function just points out that we need a structure for closed list.
 	 * It is only used for debugging of the output of closed list.
@@ -352,7 +391,7 @@ public class FastDasMapInfo
 //			dErrors[gc.getX()][gc.getY()] = 0;
 
 			// Add to opened priority queue.
-			openQueue.offer(cell);
+			offerOpen(cell);
 		}
 	}
 
@@ -375,6 +414,15 @@ public class FastDasMapInfo
 		return getGCost(cell) + getHCost(cell);
 	}
 
+	/**
+	 * F cost a cell is queued on: its f, or the f of its next held back child
+	 * once it has been partially expanded.
+	 */
+	public int getQueuedFCost(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		return Math.max(getFCost(cell), fBounds[gc.getX()][gc.getY()]);
+	}
+
 	public int getGCost(GridCell cell) {
 		GridCoord gc = cell.getCoord();
 		return gCosts[gc.getX()][gc.getY()];
@@ -386,6 +434,7 @@ public class FastDasMapInfo
 			case CLOSED: {
 				GridCoord gc = cell.getCoord();
 				gCosts[gc.getX()][gc.getY()] = gCost;
+				fBounds[gc.getX()][gc.getY()] = 0;
 				break;
 			}
 			case OPEN: {
@@ -417,9 +466,10 @@ public class FastDasMapInfo
 			throw new IllegalArgumentException("Cell was not found priority queue!");
 		}
 
-		// Update g cost.
+		// Update g cost. Every child must be generated again from the new g.
 		GridCoord gc = cell.getCoord();
 		gCosts[gc.getX()][gc.getY()] = gCost;
+		fBounds[gc.getX()][gc.getY()] = 0;
 
 		// Reinsert node sorted.
 		queue.offer(cell);
@@ -487,14 +537,24 @@ public class FastDasMapInfo
 	 */
 	public float calculateDCheapestWithError(GridCell cell)
 	{
-		float avgError = calculateAverageError(cell);
+		return correctDCheapest(getDCheapestRaw(cell), calculateAverageError(cell));
+	}
+
+	/**
+	 * Correct a d^cheapest estimate for the average single step error seen on
+	 * the path to a node. Shared with EesMapInfo.
+	 * @param dCheapest the uncorrected estimate
+	 * @param avgError  the average single step error
+	 * @return the corrected estimate, or infinity if the error is 1 or more
+	 */
+	public static float correctDCheapest(float dCheapest, float avgError)
+	{
 		float result;
 
 		// Check if the average error up to this node from the subtree, is < 1
 		if (FloatUtil.lessThan(avgError, 1.0f))
 		{
 			// If so, d^cheapest = dCheapest(s) / (1 - AvgError), as per DAS paper
-			float dCheapest = (float) getDCheapestRaw(cell);
 			result = dCheapest / (1.0f - avgError);
 		}
 		else
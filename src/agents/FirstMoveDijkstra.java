@@ -0,0 +1,170 @@
+package agents;
+
+/**
+ * Dijkstra's algorithm from a single source over a GridSnapshot, recording
+ * for every cell reached the first move of a cheapest path to it.
+ *
+ * Used by the offline builders, which run it once per cell of the map, so it
+ * is written for throughput: all storage is allocated once and reused, and
+ * the open list is a binary heap of cell indices. Instances are not thread
+ * safe; give each worker its own.
+ */
+public class FirstMoveDijkstra {
+
+	// First move of cells not reached, and of the source itself.
+	public static final int NO_MOVE = -1;
+
+	private GridSnapshot grid;
+
+	// Per cell data, valid iff the cell's stamp matches the current search.
+	private int[]   stamps;
+	private int     stamp = 0;
+	private float[] costs;
+	private int[]   firstMoves;
+	private int[]   heapPositions;  // -1 once settled
+
+	// Binary heap of cell indices, on cost.
+	private int[] heap;
+	private int   heapSize;
+
+	// Cells in the order they were settled.
+	private int[] settled;
+	private int   settledCount;
+
+	public FirstMoveDijkstra(GridSnapshot grid) {
+		this.grid = grid;
+
+		int size = grid.getSize();
+		stamps = new int[size];
+		costs = new float[size];
+		firstMoves = new int[size];
+		heapPositions = new int[size];
+		heap = new int[size];
+		settled = new int[size];
+	}
+
+	/**
+	 * Find the cheapest paths from a cell to every other.
+	 */
+	public void search(int source) {
+		stamp++;
+		heapSize = 0;
+		settledCount = 0;
+
+		stamps[source] = stamp;
+		costs[source] = 0f;
+		firstMoves[source] = NO_MOVE;
+		push(source);
+
+		int[] directions = grid.getDirections();
+		while (heapSize > 0) {
+			int cell = pop();
+			settled[settledCount++] = cell;
+
+			for (int i = 0; i < directions.length; i++) {
+				int neighbour = grid.getNeighbour(cell, directions[i]);
+				if (neighbour == -1) {
+					continue;
+				}
+
+				// Moving costs the cell being entered.
+				float cost = costs[cell] + grid.getCost(neighbour);
+				int firstMove = cell == source ? directions[i] : firstMoves[cell];
+
+				if (stamps[neighbour] != stamp) {
+					stamps[neighbour] = stamp;
+					costs[neighbour] = cost;
+					firstMoves[neighbour] = firstMove;
+					push(neighbour);
+				} else if (heapPositions[neighbour] != -1 && cost < costs[neighbour]) {
+					costs[neighbour] = cost;
+					firstMoves[neighbour] = firstMove;
+					siftUp(heapPositions[neighbour]);
+				}
+			}
+		}
+	}
+
+	/** Was the cell reached by the last search? */
+	public boolean isReached(int cell) {
+		return stamps[cell] == stamp;
+	}
+
+	/** Cost of the cheapest path to a reached cell. */
+	public float getCost(int cell) {
+		return costs[cell];
+	}
+
+	/** Direction of the first move toward a cell, or NO_MOVE. */
+	public int getFirstMove(int cell) {
+		return isReached(cell) ? firstMoves[cell] : NO_MOVE;
+	}
+
+	/** Number of cells reached by the last search. */
+	public int getSettledCount() {
+		return settledCount;
+	}
+
+	/** The i'th cell settled by the last search (the source is first). */
+	public int getSettled(int i) {
+		return settled[i];
+	}
+
+	/* -- HEAP -- */
+
+	private void push(int cell) {
+		heap[heapSize] = cell;
+		heapPositions[cell] = heapSize;
+		siftUp(heapSize++);
+	}
+
+	private int pop() {
+		int top = heap[0];
+		heapPositions[top] = -1;
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPositions[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int position) {
+		int cell = heap[position];
+		float cost = costs[cell];
+		while (position > 0) {
+			int parent = (position - 1) >> 1;
+			if (costs[heap[parent]] <= cost) {
+				break;
+			}
+			heap[position] = heap[parent];
+			heapPositions[heap[position]] = position;
+			position = parent;
+		}
+		heap[position] = cell;
+		heapPositions[cell] = position;
+	}
+
+	private void siftDown(int position) {
+		int cell = heap[position];
+		float cost = costs[cell];
+		while (true) {
+			int child = position * 2 + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && costs[heap[child + 1]] < costs[heap[child]]) {
+				child++;
+			}
+			if (costs[heap[child]] >= cost) {
+				break;
+			}
+			heap[position] = heap[child];
+			heapPositions[heap[position]] = position;
+			position = child;
+		}
+		heap[position] = cell;
+		heapPositions[cell] = position;
+	}
+}
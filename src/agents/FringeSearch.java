@@ -0,0 +1,201 @@
+package agents;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+
+/**
+ * Fringe Search (Bjornsson, Enzenberger, Holte & Schaeffer 2005) over a
+ * GridSnapshot, in bounded memory.
+ *
+ * Like IDA*, the search is a series of passes under a rising f threshold,
+ * but the frontier of each pass is kept for the next rather than regrown
+ * from the start. The fringe is a linked list walked from the front: cells
+ * above the threshold are left where they are, and the rest are expanded,
+ * their children going in just after them so they are seen in the same
+ * pass. Nothing is ever sorted, so an expansion costs O(1), and the next
+ * threshold is the lowest f passed over.
+ *
+ * Node data is kept in a CellTable of fixed capacity, rather than arrays the
+ * size of the map. If it fills, the search fails (see isOutOfMemory()).
+ */
+public class FringeSearch {
+
+	// Expansions between checks of the clock.
+	private final static int CLOCK_INTERVAL = 1024;
+
+	private GridSnapshot grid;
+	private CellTable table;
+
+	// The fringe, as a doubly linked list of table slots (-1 ends).
+	private int[] next;
+	private int[] prev;
+	private boolean[] isOnFringe;
+	private int head;
+
+	private int expansionCount = 0;
+	private int iterationCount = 0;
+	private boolean isOutOfMemory = false;
+
+	/**
+	 * @param grid     the map
+	 * @param capacity the number of cells that may be stored (see CellTable)
+	 */
+	public FringeSearch(GridSnapshot grid, int capacity) {
+		this.grid = grid;
+		this.table = new CellTable(capacity);
+
+		int slots = table.getCapacity();
+		next       = new int[slots];
+		prev       = new int[slots];
+		isOnFringe = new boolean[slots];
+	}
+
+	/**
+	 * Find an optimal path between two cells.
+	 * @param start        index of the cell to search from
+	 * @param goal         index of the cell to search to
+	 * @param deadlineTime System.nanoTime() by which to give up
+	 * @return a plan from start to goal (including start), or null if there
+	 *         is none, or the table filled or time ran out first
+	 */
+	public ComputedPlan search(int start, int goal, long deadlineTime) {
+		table.clear();
+		head = -1;
+		expansionCount = 0;
+		iterationCount = 0;
+		isOutOfMemory = false;
+
+		if (grid.isPassable(start) == false || grid.isPassable(goal) == false) {
+			return null;
+		}
+
+		int startSlot = table.insert(start);
+		table.setPath(startSlot, 0f, -1);
+		linkAfter(-1, startSlot);
+
+		int[] directions = grid.getDirections();
+		float threshold = grid.getHCost(start, goal);
+
+		while (head != -1) {
+			iterationCount++;
+			float nextThreshold = Float.POSITIVE_INFINITY;
+
+			int slot = head;
+			while (slot != -1) {
+				int cell = table.getCell(slot);
+				float gCost = table.getGCost(slot);
+				float fCost = gCost + grid.getHCost(cell, goal);
+
+				// Leave it for a later pass.
+				if (FloatUtil.compare(fCost, threshold) == 1) {
+					nextThreshold = Math.min(nextThreshold, fCost);
+					slot = next[slot];
+					continue;
+				}
+
+				if (cell == goal) {
+					return computePlan(goal);
+				}
+
+				if (++expansionCount % CLOCK_INTERVAL == 0 && System.nanoTime() > deadlineTime) {
+					return null;
+				}
+
+				// Children go straight after the cell, to be seen this pass.
+				for (int i = 0; i < directions.length; i++) {
+					int neighbour = grid.getNeighbour(cell, directions[i]);
+					if (neighbour == -1) {
+						continue;
+					}
+					float childGCost = gCost + grid.getCost(neighbour);
+
+					int childSlot = table.find(neighbour);
+					if (childSlot == -1) {
+						childSlot = table.insert(neighbour);
+						if (childSlot == -1) {
+							isOutOfMemory = true;
+							return null;
+						}
+						isOnFringe[childSlot] = false;
+					} else if (FloatUtil.compare(childGCost, table.getGCost(childSlot)) != -1) {
+						continue;
+					} else if (isOnFringe[childSlot]) {
+						unlink(childSlot);
+					}
+
+					table.setPath(childSlot, childGCost, cell);
+					linkAfter(slot, childSlot);
+				}
+
+				int following = next[slot];
+				unlink(slot);
+				slot = following;
+			}
+
+			threshold = nextThreshold;
+		}
+
+		// No path exists.
+		return null;
+	}
+
+	/**
+	 * Put a slot on the fringe after another, or at the front if after is -1.
+	 */
+	private void linkAfter(int after, int slot) {
+		int following = after == -1 ? head : next[after];
+		prev[slot] = after;
+		next[slot] = following;
+		if (following != -1) {
+			prev[following] = slot;
+		}
+		if (after == -1) {
+			head = slot;
+		} else {
+			next[after] = slot;
+		}
+		isOnFringe[slot] = true;
+	}
+
+	private void unlink(int slot) {
+		if (prev[slot] == -1) {
+			head = next[slot];
+		} else {
+			next[prev[slot]] = next[slot];
+		}
+		if (next[slot] != -1) {
+			prev[next[slot]] = prev[slot];
+		}
+		isOnFringe[slot] = false;
+	}
+
+	private ComputedPlan computePlan(int goal) {
+		ComputedPlan plan = new ComputedPlan();
+		for (int cell = goal; cell != -1; cell = table.getParent(table.find(cell))) {
+			plan.prependStep(grid.getCell(cell));
+		}
+		plan.setCost(table.getGCost(table.find(goal)));
+		return plan;
+	}
+
+	/**
+	 * Did the last search fail because the table was full?
+	 */
+	public boolean isOutOfMemory() {
+		return isOutOfMemory;
+	}
+
+	/** Number of cells expanded by the last search, over all passes. */
+	public int getExpansionCount() {
+		return expansionCount;
+	}
+
+	/** Number of passes made by the last search. */
+	public int getIterationCount() {
+		return iterationCount;
+	}
+
+	/** Number of cells stored by the last search. */
+	public int getStoredCount() {
+		return table.size();
+	}
+}
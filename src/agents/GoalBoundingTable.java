@@ -0,0 +1,233 @@
+package agents;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Goal bounding (Rabin & Sturtevant 2016).
+ *
+ * For every cell and each direction out of it we store the bounding box of
+ * the goals whose optimal path (the one found by FirstMoveDijkstra) starts
+ * with that move. During a search, a move whose box does not contain the goal
+ * cannot be the start of that path, so it is skipped. The path itself is
+ * never pruned, so A* stays optimal.
+ *
+ * Boxes are four shorts (min x, min y, max x, max y) per cell and direction.
+ * They are built offline, with a Dijkstra from every cell spread over a
+ * fork/join pool:
+ *
+ *     java agents.GoalBoundingTable maps/AR0202SR.map [manhattan]
+ *
+ * and memory mapped from the cache directory when used. A table describes
+ * the map as it was built, so it must be dropped once the map changes.
+ */
+public class GoalBoundingTable {
+
+	// Bumped whenever the file layout changes.
+	private static final int FILE_VERSION = 1;
+
+	// Bytes before the boxes.
+	private static final int HEADER_SIZE = 4 + 8 + 4;
+
+	// Sources handled by a single build task.
+	private static final int SOURCES_PER_TASK = 64;
+
+	private GridSnapshot grid;
+
+	// boxes[(cell * 8 + direction) * 4 + (0: min x, 1: min y, 2: max x, 3: max y)]
+	private ShortBuffer boxes;
+
+	private GoalBoundingTable(GridSnapshot grid, ShortBuffer boxes) {
+		this.grid = grid;
+		this.boxes = boxes;
+	}
+
+	/**
+	 * Can the goal lie at the end of an optimal path starting with this move?
+	 * @param from a cell
+	 * @param to   a neighbour of from
+	 * @param goal the goal cell
+	 */
+	public boolean canReach(int from, int to, int goal) {
+		int base = (from * 8 + grid.getDirection(from, to)) * 4;
+		int x = grid.getX(goal);
+		int y = grid.getY(goal);
+		return x >= boxes.get(base)     && y >= boxes.get(base + 1) &&
+		       x <= boxes.get(base + 2) && y <= boxes.get(base + 3);
+	}
+
+	/* -- LOADING -- */
+
+	/**
+	 * The table file for a map.
+	 */
+	public static File getFile(GridSnapshot grid, File cacheDirectory) {
+		return new File(cacheDirectory,
+				"bounds-" + Long.toHexString(grid.getSignature()) + ".bin");
+	}
+
+	/**
+	 * Open the table for a map.
+	 * @return the table, or null if none has been built for this map
+	 */
+	public static GoalBoundingTable open(GridSnapshot grid, File cacheDirectory) {
+		File file = getFile(grid, cacheDirectory);
+		if (file.exists() == false) {
+			return null;
+		}
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				ByteBuffer buffer = raf.getChannel().map(
+						FileChannel.MapMode.READ_ONLY, 0, raf.length());
+				if (buffer.getInt(0) != FILE_VERSION ||
+						buffer.getLong(4) != grid.getSignature() ||
+						buffer.getInt(12) != grid.getSize()) {
+					System.out.println("Stale goal bounding table " + file);
+					return null;
+				}
+				buffer.position(HEADER_SIZE);
+				return new GoalBoundingTable(grid, buffer.slice().asShortBuffer());
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Could not read goal bounding table " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/* -- BUILDING -- */
+
+	/**
+	 * Compute the boxes for every cell of a map.
+	 */
+	public static GoalBoundingTable build(final GridSnapshot grid) {
+		final short[] boxes = new short[grid.getSize() * 8 * 4];
+		final ThreadLocal<FirstMoveDijkstra> dijkstras = new ThreadLocal<FirstMoveDijkstra>() {
+			@Override
+			protected FirstMoveDijkstra initialValue() {
+				return new FirstMoveDijkstra(grid);
+			}
+		};
+
+		new ForkJoinPool().invoke(new BuildTask(grid, boxes, dijkstras, 0, grid.getSize()));
+		return new GoalBoundingTable(grid, ShortBuffer.wrap(boxes));
+	}
+
+	/**
+	 * Builds the boxes of a range of sources, splitting it in half until it is
+	 * small enough to do directly.
+	 */
+	private static class BuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private GridSnapshot grid;
+		private short[] boxes;
+		private ThreadLocal<FirstMoveDijkstra> dijkstras;
+		private int from;
+		private int to;
+
+		BuildTask(GridSnapshot grid, short[] boxes,
+				ThreadLocal<FirstMoveDijkstra> dijkstras, int from, int to) {
+			this.grid = grid;
+			this.boxes = boxes;
+			this.dijkstras = dijkstras;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > SOURCES_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new BuildTask(grid, boxes, dijkstras, from, middle),
+				          new BuildTask(grid, boxes, dijkstras, middle, to));
+				return;
+			}
+
+			FirstMoveDijkstra dijkstra = dijkstras.get();
+			for (int source = from; source < to; source++) {
+				// Start every box empty.
+				for (int direction = 0; direction < 8; direction++) {
+					int base = (source * 8 + direction) * 4;
+					boxes[base]     = Short.MAX_VALUE;
+					boxes[base + 1] = Short.MAX_VALUE;
+					boxes[base + 2] = Short.MIN_VALUE;
+					boxes[base + 3] = Short.MIN_VALUE;
+				}
+				if (grid.isPassable(source) == false) {
+					continue;
+				}
+
+				dijkstra.search(source);
+
+				// Skip the source itself, which has no first move.
+				for (int i = 1; i < dijkstra.getSettledCount(); i++) {
+					int target = dijkstra.getSettled(i);
+					int base = (source * 8 + dijkstra.getFirstMove(target)) * 4;
+					short x = (short) grid.getX(target);
+					short y = (short) grid.getY(target);
+					if (x < boxes[base])     boxes[base]     = x;
+					if (y < boxes[base + 1]) boxes[base + 1] = y;
+					if (x > boxes[base + 2]) boxes[base + 2] = x;
+					if (y > boxes[base + 3]) boxes[base + 3] = y;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the table to the cache directory.
+	 * @return the file written
+	 */
+	public File save(File cacheDirectory) throws IOException {
+		cacheDirectory.mkdirs();
+		File file = getFile(grid, cacheDirectory);
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(FILE_VERSION);
+			out.writeLong(grid.getSignature());
+			out.writeInt(grid.getSize());
+			for (int i = 0; i < boxes.limit(); i++) {
+				out.writeShort(boxes.get(i));
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Build the table for a map file.
+	 * @param args map file, then optionally "manhattan" for a four connected map
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: GoalBoundingTable <map file> [manhattan]");
+			return;
+		}
+		boolean eightConnected = args.length < 2 || args[1].equals("manhattan") == false;
+
+		GridDomain map = MapFileDomain.load(args[0], eightConnected);
+		GridSnapshot grid = new GridSnapshot(map);
+
+		long startTime = System.nanoTime();
+		File file = build(grid).save(GridUtil.CACHE_DIRECTORY);
+		System.out.println("Wrote " + file + " in " +
+				(System.nanoTime() - startTime) / 1000000 + "ms");
+	}
+}
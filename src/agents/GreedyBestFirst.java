@@ -0,0 +1,104 @@
+package agents;
+
+import java.util.ArrayList;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.Edge;
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * Greedy best first search for incumbent plans, built to take as little of a
+ * deadline as possible.
+ *
+ * Cells are expanded in order of their move count to the goal, which on a
+ * grid is a small integer, so the open list is a BucketQueue. Node data lives
+ * in a NodeStore that is kept between searches, and the map is read from the
+ * GridSnapshot, so a search allocates nothing but its plan. Each cell is
+ * generated at most once, and the search stops as soon as the goal is
+ * generated. A goal in another connected component, which would otherwise
+ * be found only once every cell the start can reach had been expanded, is
+ * rejected from the Bitboard's component labels.
+ */
+public class GreedyBestFirst implements IncumbentProvider {
+
+	private GridSnapshot grid;
+	private NodeStore nodes;
+	private BucketQueue openQueue;
+	private Bitboard bitboard;
+
+	private int expansionCount = 0;
+
+	public GreedyBestFirst(GridSnapshot grid) {
+		this.grid = grid;
+		this.nodes = new NodeStore(grid);
+
+		// No two cells are further apart than this, in either connectivity.
+		this.openQueue = new BucketQueue(grid.getSize(), grid.getWidth() + grid.getHeight());
+		this.bitboard = new Bitboard(grid);
+	}
+
+	/**
+	 * Only the component labels are precomputed; the snapshot is otherwise
+	 * read directly.
+	 */
+	public void update(ArrayList<Edge> changedEdges) {
+		bitboard.update(changedEdges);
+	}
+
+	public ComputedPlan findIncumbent(GridCell start, GridCell goal) {
+		return search(grid.getIndex(start), grid.getIndex(goal));
+	}
+
+	/**
+	 * Find a path between two cells.
+	 * @param start index of the cell to search from
+	 * @param goal  index of the cell to search to
+	 * @return a plan from start to goal (including start), or null if the goal
+	 *         cannot be reached
+	 */
+	public ComputedPlan search(int start, int goal) {
+		nodes.clear();
+		openQueue.clear();
+		expansionCount = 0;
+
+		if (bitboard.isReachable(start, goal) == false) {
+			return null;
+		}
+
+		nodes.generate(start, 0f, -1);
+		if (start == goal) {
+			return nodes.computePlan(goal);
+		}
+		openQueue.push(start, grid.getDistance(start, goal));
+
+		int[] directions = grid.getDirections();
+		while (openQueue.isEmpty() == false) {
+			int current = openQueue.pop();
+			expansionCount++;
+
+			float gCost = nodes.getGCost(current);
+			for (int i = 0; i < directions.length; i++) {
+				int neighbour = grid.getNeighbour(current, directions[i]);
+				if (neighbour == -1 || nodes.isGenerated(neighbour)) {
+					continue;
+				}
+
+				nodes.generate(neighbour, gCost + grid.getCost(neighbour), current);
+				if (neighbour == goal) {
+					return nodes.computePlan(goal);
+				}
+				openQueue.push(neighbour, grid.getDistance(neighbour, goal));
+			}
+		}
+
+		// No path exists.
+		return null;
+	}
+
+	/**
+	 * Number of cells expanded by the last search.
+	 */
+	public int getExpansionCount() {
+		return expansionCount;
+	}
+}
@@ -0,0 +1,278 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import au.rmit.ract.planning.pathplanning.entity.Edge;
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * A flat, primitive copy of the parts of a GridDomain that the search engines
+ * care about: which cells can be entered, and what it costs to enter them.
+ *
+ * Going through GridDomain for this costs a GridCell dereference, a cell type
+ * lookup and (for cost) a virtual call into the map view per query. The
+ * engines built on top of this class ask these questions many times per
+ * expansion, so we take the hit once when the snapshot is built and then only
+ * refresh the cells reported by getChangedEdges().
+ *
+ * Cells are addressed by a single index (y * width + x).
+ */
+public class GridSnapshot {
+
+	// Directions, clockwise from north. Even directions are cardinal, odd
+	// directions are diagonal.
+	final static int[] DIRECTION_X = {  0,  1, 1, 1, 0, -1, -1, -1 };
+	final static int[] DIRECTION_Y = { -1, -1, 0, 1, 1,  1,  0, -1 };
+
+	final static int[] CHESSBOARD_DIRECTIONS = { 0, 1, 2, 3, 4, 5, 6, 7 };
+	final static int[] MANHATTAN_DIRECTIONS  = { 0, 2, 4, 6 };
+
+	// Direction of each offset, indexed by (dx + 1) * 3 + dy + 1.
+	private final static int[] OFFSET_DIRECTIONS = { 7, 6, 5, 0, -1, 4, 1, 2, 3 };
+
+	private GridDomain map;
+
+	private int width;
+	private int height;
+
+	// Whether diagonal moves are permitted on this map.
+	private boolean eightConnected;
+
+	// The cheapest cell on the map. Used to scale distances into costs.
+	private float minCost;
+
+	private float[] costs;    // Cost of entering each cell (infinite when blocked)
+	private BitSet  passable; // Cells that can be entered at a finite cost
+	private BitSet  uniform;  // Passable cells whose cost is exactly minCost
+
+	// Number of passable cells that are not uniform (water, swamp etc).
+	private int nonUniformCount = 0;
+
+	/**
+	 * Take a snapshot of the given map.
+	 * @param map the map to copy
+	 */
+	public GridSnapshot(GridDomain map) {
+		this.map = map;
+		this.width = map.getWidth();
+		this.height = map.getHeight();
+		this.eightConnected = GridUtil.allowsDiagonalMoves(map);
+		this.minCost = map.getMinCost();
+
+		int size = width * height;
+		this.costs = new float[size];
+		this.passable = new BitSet(size);
+		this.uniform = new BitSet(size);
+
+		// NaN never compares equal, so every cell is read on the first pass.
+		Arrays.fill(costs, Float.NaN);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				refreshCell(x, y);
+			}
+		}
+	}
+
+	/**
+	 * Refresh the cells touched by a list of changed edges, as returned by
+	 * GridDomain.getChangedEdges().
+	 * @param changedEdges the changed edges
+	 * @return true if any cell was actually altered
+	 */
+	public boolean update(ArrayList<Edge> changedEdges) {
+		boolean altered = false;
+		for (Edge edge : changedEdges) {
+			GridCell from = (GridCell) edge.getStart();
+			GridCell to = (GridCell) edge.getEnd();
+			altered |= refreshCell(from.getCoord().getX(), from.getCoord().getY());
+			altered |= refreshCell(to.getCoord().getX(), to.getCoord().getY());
+		}
+		return altered;
+	}
+
+	/**
+	 * Reread a single cell from the map.
+	 * @return true if the cell's cost or passability changed
+	 */
+	public boolean refreshCell(int x, int y) {
+		int index = getIndex(x, y);
+		GridCell cell = map.getCell(x, y);
+
+		float cost = Float.POSITIVE_INFINITY;
+		if (cell != null && map.isBlocked(cell) == false) {
+			cost = cell.getCellCost();
+		}
+
+		if (cost == costs[index]) {
+			return false;
+		}
+
+		if (passable.get(index) && uniform.get(index) == false) {
+			nonUniformCount--;
+		}
+
+		costs[index] = cost;
+		boolean canEnter = cost != Float.POSITIVE_INFINITY;
+		passable.set(index, canEnter);
+
+		if (canEnter && cost < minCost) {
+			// A cheaper terrain has appeared; every uniform flag is now wrong.
+			minCost = cost;
+			recountUniform();
+		} else {
+			uniform.set(index, canEnter && cost == minCost);
+			if (canEnter && cost != minCost) {
+				nonUniformCount++;
+			}
+		}
+		return true;
+	}
+
+	private void recountUniform() {
+		nonUniformCount = 0;
+		uniform.clear();
+		for (int i = passable.nextSetBit(0); i >= 0; i = passable.nextSetBit(i + 1)) {
+			if (costs[i] == minCost) {
+				uniform.set(i);
+			} else {
+				nonUniformCount++;
+			}
+		}
+	}
+
+	/**
+	 * A 64 bit FNV-1a hash of the map dimensions, connectivity and every cell
+	 * cost. Used to key data that is precomputed per map and cached on disk.
+	 */
+	public long getSignature() {
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ width) * 0x100000001b3L;
+		hash = (hash ^ height) * 0x100000001b3L;
+		hash = (hash ^ (eightConnected ? 8 : 4)) * 0x100000001b3L;
+		for (int i = 0; i < costs.length; i++) {
+			hash = (hash ^ Float.floatToIntBits(costs[i])) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/* -- ACCESSORS -- */
+
+	public GridDomain getMap() {
+		return map;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/** Number of cells (passable or otherwise) on the map. */
+	public int getSize() {
+		return costs.length;
+	}
+
+	public boolean isEightConnected() {
+		return eightConnected;
+	}
+
+	/** The directions (indices into DIRECTION_X/Y) legal on this map. */
+	public int[] getDirections() {
+		return eightConnected ? CHESSBOARD_DIRECTIONS : MANHATTAN_DIRECTIONS;
+	}
+
+	public float getMinCost() {
+		return minCost;
+	}
+
+	/** True if every passable cell costs the same to enter. */
+	public boolean isUniformMap() {
+		return nonUniformCount == 0;
+	}
+
+	public int getIndex(int x, int y) {
+		return y * width + x;
+	}
+
+	public int getIndex(GridCell cell) {
+		return getIndex(cell.getCoord().getX(), cell.getCoord().getY());
+	}
+
+	public int getX(int index) {
+		return index % width;
+	}
+
+	public int getY(int index) {
+		return index / width;
+	}
+
+	public GridCell getCell(int index) {
+		return map.getCell(getX(index), getY(index));
+	}
+
+	public boolean isInBounds(int x, int y) {
+		return x >= 0 && y >= 0 && x < width && y < height;
+	}
+
+	/** Bounds checked passability test. */
+	public boolean isPassable(int x, int y) {
+		return isInBounds(x, y) && passable.get(getIndex(x, y));
+	}
+
+	public boolean isPassable(int index) {
+		return passable.get(index);
+	}
+
+	/** Bounds checked test for a passable cell of minimum cost. */
+	public boolean isUniform(int x, int y) {
+		return isInBounds(x, y) && uniform.get(getIndex(x, y));
+	}
+
+	public boolean isUniform(int index) {
+		return uniform.get(index);
+	}
+
+	/** Cost of entering a cell, infinite if the cell is blocked. */
+	public float getCost(int index) {
+		return costs[index];
+	}
+
+	/**
+	 * Index of the neighbour of a cell in the given direction, or -1 if that
+	 * neighbour is off the map or impassable.
+	 */
+	public int getNeighbour(int index, int direction) {
+		int x = getX(index) + DIRECTION_X[direction];
+		int y = getY(index) + DIRECTION_Y[direction];
+		return isPassable(x, y) ? getIndex(x, y) : -1;
+	}
+
+	/**
+	 * Direction of the move between two neighbouring cells.
+	 */
+	public int getDirection(int from, int to) {
+		int dx = getX(to) - getX(from);
+		int dy = getY(to) - getY(from);
+		return OFFSET_DIRECTIONS[(dx + 1) * 3 + dy + 1];
+	}
+
+	/**
+	 * Move count lower bound between two cells, using the distance metric of
+	 * this map's connectivity.
+	 */
+	public int getDistance(int from, int to) {
+		int dx = Math.abs(getX(to) - getX(from));
+		int dy = Math.abs(getY(to) - getY(from));
+		return eightConnected ? Math.max(dx, dy) : dx + dy;
+	}
+
+	/** Admissible estimate of the cost between two cells. */
+	public float getHCost(int from, int to) {
+		return minCost * getDistance(from, to);
+	}
+}
@@ -2,6 +2,7 @@ package agents;
 
 import pplanning.simviewer.model.GridCell;
 import pplanning.simviewer.model.GridDomain;
+import java.io.File;
 import java.lang.IllegalArgumentException;
 
 /**
@@ -9,6 +10,9 @@ import java.lang.IllegalArgumentException;
  * connectivity.
  */
 public class GridUtil {
+	// Where data precomputed per map is kept between runs.
+	final static File CACHE_DIRECTORY = new File("cache");
+
 	final static int[][] MANHATTAN_SUCCESSORS = {
 		{ 0, 1 }, { 1, 0 }, { 0, -1 }, { -1, 0 } };
 
@@ -57,6 +61,21 @@ public class GridUtil {
 		}
 	}
 
+	/**
+	 * Determine whether the map permits diagonal moves. Unlike
+	 * checkConnectivity (which always answers chessboard, because that
+	 * heuristic performs better for DAS) this reports what the map view really
+	 * does, which matters to anything that prunes or precomputes moves.
+	 * @param map the map
+	 */
+	public static boolean allowsDiagonalMoves(GridDomain map) {
+		// Get center cell (so that it is not on the perimeter)
+		GridCell cell = map.getCell(map.getWidth() / 2, map.getHeight() / 2);
+
+		// Judge map type on number of successors.
+		return map.getSuccessors(cell).size() == 8;
+	}
+
 	/**
 	 * Determine whether grid is four or eight directional. This is expensive,
 	 * only ever call it once per execution.
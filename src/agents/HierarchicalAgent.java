@@ -0,0 +1,187 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.Edge;
+import pplanning.interfaces.PlanningAgent;
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Hierarchical path planning (HPA*).
+ *
+ * The map is abstracted into clusters once (see ClusterAbstraction), after
+ * which each query is a search over a few entrance nodes per cluster. The
+ * abstract path is only refined into grid cells one edge at a time, as the
+ * agent reaches each waypoint, so the cost of the first move hardly depends on
+ * the size of the map.
+ *
+ * The resulting paths are near optimal rather than optimal: they are forced
+ * through the chosen entrances.
+ */
+public class HierarchicalAgent implements PlanningAgent {
+
+	private final static boolean DEBUG = false;
+
+	// Width and height of a cluster, in cells.
+	private final static int CLUSTER_SIZE = 16;
+
+	private GridDomain         lastMap = null;
+	private GridSnapshot       snapshot;
+	private ClusterAbstraction abstraction;
+
+	// Abstract waypoints not yet refined, and refined cells not yet visited.
+	private LinkedList<Integer> waypoints = new LinkedList<Integer>();
+	private LinkedList<Integer> steps = new LinkedList<Integer>();
+
+	// Cell the agent is expected to be in on the next call.
+	private int expectedCell = -1;
+	private GridCell lastGoal = null;
+
+	// Every step refined so far, for display.
+	private ComputedPlan plan;
+
+	@Override
+	public GridCell getNextMove(GridDomain map, GridCell start, GridCell goal,
+			int stepLeft, long stepTime, long timeLeft) {
+
+		try {
+			ArrayList<Edge> changedEdges = map.getChangedEdges();
+			boolean mapChanged = updateAbstraction(map, changedEdges);
+
+			int startCell = snapshot.getIndex(start);
+			int goalCell = snapshot.getIndex(goal);
+
+			boolean replan =
+				plan == null            ||  // not planned yet
+				mapChanged              ||  // cells have changed
+				goal != lastGoal        ||  // goal has moved
+				startCell != expectedCell;  // agent is off track
+
+			if (replan) {
+				generatePlan(startCell, goalCell);
+				lastGoal = goal;
+			}
+
+			if (steps.isEmpty()) {
+				refineNextWaypoint(startCell);
+			}
+
+			if (steps.isEmpty()) {
+				if (DEBUG) System.out.println("Could not find goal");
+				expectedCell = startCell;
+				return start;
+			}
+
+			expectedCell = steps.removeFirst();
+			return snapshot.getCell(expectedCell);
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			return start;
+		}
+	}
+
+	/**
+	 * Bring the abstraction up to date with the map, building it if required.
+	 * @return true if the map has changed since the last call
+	 */
+	private boolean updateAbstraction(GridDomain map, ArrayList<Edge> changedEdges) {
+		if (map != lastMap) {
+			long startTime = System.nanoTime();
+			snapshot = new GridSnapshot(map);
+			abstraction = new ClusterAbstraction(snapshot, CLUSTER_SIZE);
+			lastMap = map;
+			if (DEBUG) {
+				System.out.println("abstraction built in " +
+						(System.nanoTime() - startTime) / 1000000 + "ms, " +
+						abstraction.getNodeCount() + " nodes");
+			}
+			return true;
+		}
+
+		if (changedEdges.isEmpty() == false && snapshot.update(changedEdges)) {
+			abstraction.update(changedEdges);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Find a new abstract path. If the abstraction has none (for instance when
+	 * the only way through is diagonally between clusters), search the grid.
+	 */
+	private void generatePlan(int start, int goal) {
+		waypoints.clear();
+		steps.clear();
+		plan = new ComputedPlan();
+		plan.appendStep(snapshot.getCell(start));
+
+		LinkedList<Integer> path = abstraction.getAbstractPath(start, goal);
+		if (path != null) {
+			if (DEBUG) System.out.println("abstract path of " + path.size() + " nodes");
+			path.removeFirst();
+			waypoints.addAll(path);
+			return;
+		}
+
+		if (DEBUG) System.out.println("no abstract path, searching grid");
+		ComputedPlan flatPlan = new JumpPointSearch(snapshot, false).search(
+				snapshot.getCell(start), snapshot.getCell(goal));
+		if (flatPlan == null) {
+			return;
+		}
+		// Plan includes the start cell.
+		for (int i = 1; i < flatPlan.getLength(); i++) {
+			GridCell cell = (GridCell) flatPlan.getStep(i);
+			steps.add(snapshot.getIndex(cell));
+			plan.appendStep(cell);
+		}
+	}
+
+	/**
+	 * Turn the next abstract edge into grid cells. Waypoints the agent is
+	 * already on are skipped; the abstract path repeats a cell when the start
+	 * or goal is itself an entrance.
+	 */
+	private void refineNextWaypoint(int from) {
+		while (steps.isEmpty() && waypoints.isEmpty() == false) {
+			int to = waypoints.removeFirst();
+			if (to == from) {
+				continue;
+			}
+			int[] refined = abstraction.refine(from, to);
+			if (refined == null) {
+				waypoints.clear();
+				return;
+			}
+			for (int i = 0; i < refined.length; i++) {
+				steps.add(refined[i]);
+				plan.appendStep(snapshot.getCell(refined[i]));
+			}
+		}
+	}
+
+	// Do we want to show extra info? (e.g., close and open nodes, current path)
+	@Override
+	public Boolean showInfo() {
+		return abstraction != null;
+	}
+
+	@Override
+	public ArrayList<GridCell> expandedNodes() {
+		return abstraction.getClosedArrayList();
+	}
+
+	@Override
+	public ArrayList<GridCell> unexpandedNodes() {
+		return abstraction.getOpenArrayList();
+	}
+
+	@Override
+	public ComputedPlan getPath() {
+		return plan;
+	}
+}
@@ -0,0 +1,28 @@
+package agents;
+
+import java.util.ArrayList;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.Edge;
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * A fast planner that DeadlineAwareSearch can ask for its initial incumbent
+ * solution. Providers work from a GridSnapshot shared with DAS.
+ */
+public interface IncumbentProvider {
+
+	/**
+	 * Bring any precomputed data up to date. Called after the snapshot has been
+	 * updated with the same edges.
+	 * @param changedEdges edges as returned by GridDomain.getChangedEdges()
+	 */
+	public void update(ArrayList<Edge> changedEdges);
+
+	/**
+	 * Find a plan from start to goal as quickly as possible.
+	 * @return the plan, including the start cell, or null if this provider
+	 *         could not find one
+	 */
+	public ComputedPlan findIncumbent(GridCell start, GridCell goal);
+}
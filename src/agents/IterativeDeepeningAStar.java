@@ -0,0 +1,195 @@
+package agents;
+
+import java.util.Arrays;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+
+/**
+ * IDA* (Korf 1985) over a GridSnapshot, with a small transposition table.
+ *
+ * Each iteration is a depth first search that cuts off cells with f above
+ * the threshold, which then rises to the lowest f that was cut off. Only the
+ * current path is kept, on an explicit stack, so memory is fixed by the
+ * depth limit however large the map.
+ *
+ * A grid is full of transpositions, and plain IDA* would search every path
+ * to every cell. The transposition table records the g of cells expanded in
+ * the current iteration, and a cell reached again no more cheaply is cut
+ * off. The table is direct mapped and simply overwritten on a collision, so
+ * it can be made as small as wanted; a smaller table only repeats more work.
+ */
+public class IterativeDeepeningAStar {
+
+	// Expansions between checks of the clock.
+	private final static int CLOCK_INTERVAL = 1024;
+
+	private GridSnapshot grid;
+
+	// The path being searched: cell, g, and the next direction to try.
+	private int[]   stackCells;
+	private float[] stackGCosts;
+	private int[]   stackDirections;
+
+	// Transposition table: cell, g, and the iteration it was stored in.
+	private int[]   tableCells;
+	private float[] tableGCosts;
+	private int[]   tableStamps;
+	private int     tableShift;
+	private int     stamp = 0;
+
+	private int expansionCount = 0;
+	private int iterationCount = 0;
+	private boolean isDepthLimited = false;
+
+	/**
+	 * @param grid          the map
+	 * @param maxDepth      the most moves in a path
+	 * @param tableCapacity transposition table entries, rounded up to a power
+	 *                      of two
+	 */
+	public IterativeDeepeningAStar(GridSnapshot grid, int maxDepth, int tableCapacity) {
+		this.grid = grid;
+
+		stackCells      = new int[maxDepth + 1];
+		stackGCosts     = new float[maxDepth + 1];
+		stackDirections = new int[maxDepth + 1];
+
+		int slots = Integer.highestOneBit(Math.max(tableCapacity, 2) - 1) << 1;
+		tableShift  = 32 - Integer.numberOfTrailingZeros(slots);
+		tableCells  = new int[slots];
+		tableGCosts = new float[slots];
+		tableStamps = new int[slots];
+	}
+
+	/**
+	 * Find an optimal path between two cells.
+	 * @param start        index of the cell to search from
+	 * @param goal         index of the cell to search to
+	 * @param deadlineTime System.nanoTime() by which to give up
+	 * @return a plan from start to goal (including start), or null if there
+	 *         is none within the depth limit, or time ran out first
+	 */
+	public ComputedPlan search(int start, int goal, long deadlineTime) {
+		expansionCount = 0;
+		iterationCount = 0;
+		isDepthLimited = false;
+
+		if (grid.isPassable(start) == false || grid.isPassable(goal) == false) {
+			return null;
+		}
+
+		int[] directions = grid.getDirections();
+		int maxTop = stackCells.length;
+		float threshold = grid.getHCost(start, goal);
+
+		while (threshold != Float.POSITIVE_INFINITY) {
+			iterationCount++;
+			nextStamp();
+			float nextThreshold = Float.POSITIVE_INFINITY;
+
+			stackCells[0] = start;
+			stackGCosts[0] = 0f;
+			stackDirections[0] = -1;
+			int top = 1;
+
+			while (top > 0) {
+				int current = top - 1;
+				int cell = stackCells[current];
+				float gCost = stackGCosts[current];
+
+				// First visit: cut off, finish, or expand.
+				if (stackDirections[current] == -1) {
+					float fCost = gCost + grid.getHCost(cell, goal);
+					if (FloatUtil.compare(fCost, threshold) == 1) {
+						nextThreshold = Math.min(nextThreshold, fCost);
+						top--;
+						continue;
+					}
+					if (cell == goal) {
+						return computePlan(top, gCost);
+					}
+					if (isTransposition(cell, gCost)) {
+						top--;
+						continue;
+					}
+					if (++expansionCount % CLOCK_INTERVAL == 0 && System.nanoTime() > deadlineTime) {
+						return null;
+					}
+					stackDirections[current] = 0;
+				}
+
+				// Next child, if any are left.
+				if (stackDirections[current] == directions.length) {
+					top--;
+					continue;
+				}
+				int neighbour = grid.getNeighbour(cell, directions[stackDirections[current]++]);
+				if (neighbour == -1 || (current > 0 && neighbour == stackCells[current - 1])) {
+					continue;
+				}
+				if (top == maxTop) {
+					isDepthLimited = true;
+					continue;
+				}
+				stackCells[top] = neighbour;
+				stackGCosts[top] = gCost + grid.getCost(neighbour);
+				stackDirections[top] = -1;
+				top++;
+			}
+
+			threshold = nextThreshold;
+		}
+
+		// No path exists, at least within the depth limit.
+		return null;
+	}
+
+	/**
+	 * Has a cell been expanded this iteration as cheaply? If not, record it.
+	 */
+	private boolean isTransposition(int cell, float gCost) {
+		int slot = (cell * 0x9E3779B9) >>> tableShift;
+		if (tableStamps[slot] == stamp && tableCells[slot] == cell &&
+				FloatUtil.compare(tableGCosts[slot], gCost) != 1) {
+			return true;
+		}
+		tableCells[slot] = cell;
+		tableGCosts[slot] = gCost;
+		tableStamps[slot] = stamp;
+		return false;
+	}
+
+	private void nextStamp() {
+		stamp++;
+		if (stamp == Integer.MAX_VALUE) {
+			Arrays.fill(tableStamps, 0);
+			stamp = 1;
+		}
+	}
+
+	private ComputedPlan computePlan(int length, float cost) {
+		ComputedPlan plan = new ComputedPlan();
+		for (int i = 0; i < length; i++) {
+			plan.appendStep(grid.getCell(stackCells[i]));
+		}
+		plan.setCost(cost);
+		return plan;
+	}
+
+	/**
+	 * Was part of the last search cut off by the depth limit?
+	 */
+	public boolean isDepthLimited() {
+		return isDepthLimited;
+	}
+
+	/** Number of cells expanded by the last search, over all iterations. */
+	public int getExpansionCount() {
+		return expansionCount;
+	}
+
+	/** Number of iterations made by the last search. */
+	public int getIterationCount() {
+		return iterationCount;
+	}
+}
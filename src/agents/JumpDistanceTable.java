@@ -0,0 +1,395 @@
+package agents;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import au.rmit.ract.planning.pathplanning.entity.Edge;
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * JPS+ jump distances (Harabor & Grastien 2014).
+ *
+ * For every cell and each of the eight directions we store how far a jump
+ * would travel:
+ *
+ *     d > 0   the jump stops at a jump point d steps away
+ *     d <= 0  there are -d free cells before a wall, and no jump point
+ *
+ * This turns every jump in JumpPointSearch into a single array lookup. A jump
+ * point here is exactly what JumpPointSearch.jump() would stop at, except for
+ * the goal, which is query dependent and checked by getJumpTarget().
+ *
+ * The table is built once per map (or loaded from the cache directory), and
+ * only the cells around a change are recomputed when the map is altered.
+ */
+public class JumpDistanceTable {
+
+	// Bumped whenever the file layout or the jump point rules change.
+	private static final int FILE_VERSION = 1;
+
+	private GridSnapshot grid;
+
+	// distances[index * 8 + direction]
+	private short[] distances;
+
+	// The min cost that the weighted borders were last computed against.
+	private float builtMinCost;
+
+	/**
+	 * Build the table for a map.
+	 * @param grid the map
+	 */
+	public JumpDistanceTable(GridSnapshot grid) {
+		this.grid = grid;
+		this.distances = new short[grid.getSize() * 8];
+		build();
+	}
+
+	private JumpDistanceTable(GridSnapshot grid, short[] distances) {
+		this.grid = grid;
+		this.distances = distances;
+		this.builtMinCost = grid.getMinCost();
+	}
+
+	/**
+	 * Load the table for this map from the cache directory, building (and
+	 * saving) it if it is not there.
+	 * @param grid           the map
+	 * @param cacheDirectory where tables are kept, or null to not cache
+	 */
+	public static JumpDistanceTable loadOrBuild(GridSnapshot grid, File cacheDirectory) {
+		if (cacheDirectory == null) {
+			return new JumpDistanceTable(grid);
+		}
+
+		File file = new File(cacheDirectory,
+				"jps-" + Long.toHexString(grid.getSignature()) + ".bin");
+
+		if (file.exists()) {
+			try {
+				return load(grid, file);
+			} catch (IOException e) {
+				System.out.println("Could not read jump table " + file + ": " + e.getMessage());
+			}
+		}
+
+		JumpDistanceTable table = new JumpDistanceTable(grid);
+		try {
+			cacheDirectory.mkdirs();
+			table.save(file);
+		} catch (IOException e) {
+			System.out.println("Could not save jump table " + file + ": " + e.getMessage());
+		}
+		return table;
+	}
+
+	private static JumpDistanceTable load(GridSnapshot grid, File file) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != FILE_VERSION || in.readLong() != grid.getSignature()) {
+				throw new IOException("stale table");
+			}
+			short[] distances = new short[grid.getSize() * 8];
+			for (int i = 0; i < distances.length; i++) {
+				distances[i] = in.readShort();
+			}
+			return new JumpDistanceTable(grid, distances);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Write the table to disk, keyed by the map signature.
+	 */
+	public void save(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(FILE_VERSION);
+			out.writeLong(grid.getSignature());
+			for (int i = 0; i < distances.length; i++) {
+				out.writeShort(distances[i]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Raw jump distance from a cell.
+	 */
+	public int getDistance(int index, int direction) {
+		return distances[index * 8 + direction];
+	}
+
+	/**
+	 * Where a jump from this cell in this direction lands, accounting for the
+	 * goal.
+	 * @return the jump point index, or -1 if the jump hits a wall
+	 */
+	public int getJumpTarget(int from, int direction, int goal) {
+		int dx = GridSnapshot.DIRECTION_X[direction];
+		int dy = GridSnapshot.DIRECTION_Y[direction];
+		int distance = getDistance(from, direction);
+		int reach = Math.abs(distance);
+
+		int x = grid.getX(from);
+		int y = grid.getY(from);
+		int gx = grid.getX(goal) - x;
+		int gy = grid.getY(goal) - y;
+
+		if (dx == 0 || dy == 0) {
+			// Straight: is the goal on this ray, and no further than we travel?
+			int steps = (dx != 0) ? gx * dx : gy * dy;
+			boolean onRay = (dx != 0) ? gy == 0 : gx == 0;
+			if (onRay && steps > 0 && steps <= reach) {
+				return goal;
+			}
+		} else if (gx * dx > 0 && gy * dy > 0) {
+			// Diagonal: stop where we line up with the goal, if we get that far.
+			int steps = Math.min(gx * dx, gy * dy);
+			if (steps <= reach) {
+				return grid.getIndex(x + steps * dx, y + steps * dy);
+			}
+		}
+
+		if (distance > 0) {
+			return grid.getIndex(x + distance * dx, y + distance * dy);
+		}
+		return -1;
+	}
+
+	/* -- CONSTRUCTION -- */
+
+	/**
+	 * Compute every distance. Straight directions are swept against their
+	 * direction of travel so that each cell can extend its neighbour's answer,
+	 * then the diagonals are swept the same way (they depend on the straight
+	 * distances of the cells they pass through).
+	 */
+	private void build() {
+		builtMinCost = grid.getMinCost();
+		int width = grid.getWidth();
+		int height = grid.getHeight();
+
+		for (int pass = 0; pass < 2; pass++) {
+			for (int direction = 0; direction < 8; direction++) {
+				boolean diagonal = (direction & 1) == 1;
+				if (diagonal != (pass == 1)) {
+					continue;
+				}
+
+				int dx = GridSnapshot.DIRECTION_X[direction];
+				int dy = GridSnapshot.DIRECTION_Y[direction];
+
+				// Visit the cell nearest the end of the ray first.
+				int yStart = (dy > 0) ? height - 1 : 0;
+				int yStep  = (dy > 0) ? -1 : 1;
+				int xStart = (dx > 0) ? width - 1 : 0;
+				int xStep  = (dx > 0) ? -1 : 1;
+
+				for (int y = yStart; y >= 0 && y < height; y += yStep) {
+					for (int x = xStart; x >= 0 && x < width; x += xStep) {
+						int index = grid.getIndex(x, y);
+						distances[index * 8 + direction] = (short) compute(x, y, direction);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compute one distance from the distance of the next cell along the ray.
+	 */
+	private int compute(int x, int y, int direction) {
+		int dx = GridSnapshot.DIRECTION_X[direction];
+		int dy = GridSnapshot.DIRECTION_Y[direction];
+		int nx = x + dx;
+		int ny = y + dy;
+
+		if (grid.isPassable(nx, ny) == false) {
+			return 0;
+		}
+
+		int next = grid.getIndex(nx, ny);
+		if (isJumpPoint(nx, ny, direction)) {
+			return 1;
+		}
+
+		int distance = distances[next * 8 + direction];
+		return (distance > 0) ? distance + 1 : distance - 1;
+	}
+
+	/**
+	 * Would a jump travelling in this direction stop on this (passable) cell?
+	 * Mirrors JumpPointSearch.jump().
+	 */
+	private boolean isJumpPoint(int x, int y, int direction) {
+		int index = grid.getIndex(x, y);
+		if (isNearWeightedTerrain(index)) {
+			return true;
+		}
+
+		int dx = GridSnapshot.DIRECTION_X[direction];
+		int dy = GridSnapshot.DIRECTION_Y[direction];
+
+		if (dx != 0 && dy != 0) {
+			if ((grid.isPassable(x - dx, y) == false && grid.isPassable(x - dx, y + dy)) ||
+			    (grid.isPassable(x, y - dy) == false && grid.isPassable(x + dx, y - dy))) {
+				return true;
+			}
+			// A straight jump from here finds something.
+			int horizontal = (dx > 0) ? 2 : 6;
+			int vertical   = (dy > 0) ? 4 : 0;
+			return distances[index * 8 + horizontal] > 0 ||
+			       distances[index * 8 + vertical] > 0;
+		}
+
+		if (dx != 0) {
+			return (grid.isPassable(x, y + 1) == false && grid.isPassable(x + dx, y + 1)) ||
+			       (grid.isPassable(x, y - 1) == false && grid.isPassable(x + dx, y - 1));
+		}
+		return (grid.isPassable(x + 1, y) == false && grid.isPassable(x + 1, y + dy)) ||
+		       (grid.isPassable(x - 1, y) == false && grid.isPassable(x - 1, y + dy));
+	}
+
+	private boolean isNearWeightedTerrain(int index) {
+		if (grid.isUniformMap()) {
+			return false;
+		}
+		if (grid.isUniform(index) == false) {
+			return true;
+		}
+		int x = grid.getX(index);
+		int y = grid.getY(index);
+		for (int direction = 0; direction < 8; direction++) {
+			int nx = x + GridSnapshot.DIRECTION_X[direction];
+			int ny = y + GridSnapshot.DIRECTION_Y[direction];
+			if (grid.isPassable(nx, ny) && grid.isUniform(nx, ny) == false) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* -- LOCAL UPDATE -- */
+
+	/**
+	 * Recompute the distances affected by changed cells. The snapshot must
+	 * already have been updated with the same edges.
+	 *
+	 * Whether a cell is a jump point depends on its immediate neighbours, so
+	 * every cell within one step of a change is reconsidered. From there the
+	 * change is propagated back along each ray only while values keep changing,
+	 * so a change far from any open corridor costs almost nothing.
+	 * @param changedEdges edges as returned by GridDomain.getChangedEdges()
+	 */
+	public void update(ArrayList<Edge> changedEdges) {
+		if (changedEdges.isEmpty()) {
+			return;
+		}
+
+		// If the cheapest terrain changed then every weighted border has moved.
+		if (builtMinCost != grid.getMinCost()) {
+			build();
+			return;
+		}
+
+		BitSet queued = new BitSet(distances.length);
+		int[] queue = new int[64];
+		int head = 0;
+		int tail = 0;
+
+		for (Edge edge : changedEdges) {
+			GridCell[] ends = { (GridCell) edge.getStart(), (GridCell) edge.getEnd() };
+			for (GridCell cell : ends) {
+				int cx = cell.getCoord().getX();
+				int cy = cell.getCoord().getY();
+
+				// Everything that could be a jump point because of this cell...
+				for (int y = cy - 2; y <= cy + 2; y++) {
+					for (int x = cx - 2; x <= cx + 2; x++) {
+						if (grid.isInBounds(x, y) == false) {
+							continue;
+						}
+						int index = grid.getIndex(x, y);
+						for (int direction = 0; direction < 8; direction++) {
+							int entry = index * 8 + direction;
+							if (queued.get(entry) == false) {
+								if (tail == queue.length) {
+									queue = grow(queue, head, tail);
+									tail -= head;
+									head = 0;
+								}
+								queued.set(entry);
+								queue[tail++] = entry;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		while (head < tail) {
+			int entry = queue[head++];
+			queued.clear(entry);
+
+			int index = entry / 8;
+			int direction = entry % 8;
+			int x = grid.getX(index);
+			int y = grid.getY(index);
+
+			int distance = compute(x, y, direction);
+			if (distance == distances[entry]) {
+				continue;
+			}
+			distances[entry] = (short) distance;
+
+			// The cell behind us on this ray extends our value.
+			int dx = GridSnapshot.DIRECTION_X[direction];
+			int dy = GridSnapshot.DIRECTION_Y[direction];
+			int[] dependants;
+			if (dx != 0 && dy != 0) {
+				dependants = new int[] { direction };
+			} else {
+				// Diagonal rays stop on cells whose straight distance is positive.
+				dependants = new int[] { direction, (direction + 7) % 8, (direction + 1) % 8 };
+			}
+
+			for (int dependant : dependants) {
+				int bx = x - GridSnapshot.DIRECTION_X[dependant];
+				int by = y - GridSnapshot.DIRECTION_Y[dependant];
+				if (grid.isInBounds(bx, by) == false) {
+					continue;
+				}
+				int dependantEntry = grid.getIndex(bx, by) * 8 + dependant;
+				if (queued.get(dependantEntry) == false) {
+					if (tail == queue.length) {
+						queue = grow(queue, head, tail);
+						tail -= head;
+						head = 0;
+					}
+					queued.set(dependantEntry);
+					queue[tail++] = dependantEntry;
+				}
+			}
+		}
+	}
+
+	/** Compact the live part of the queue into a larger array. */
+	private static int[] grow(int[] queue, int head, int tail) {
+		int[] larger = new int[Math.max(64, (tail - head) * 2)];
+		System.arraycopy(queue, head, larger, 0, tail - head);
+		return larger;
+	}
+}
@@ -0,0 +1,38 @@
+package agents;
+
+import java.util.ArrayList;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.Edge;
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * Provides incumbents by greedy jump point search. Works on any map, so it
+ * is the provider of last resort.
+ */
+public class JumpPointProvider implements IncumbentProvider {
+
+	private GridSnapshot grid;
+
+	// JPS+ jump distances (null on four connected maps).
+	private JumpDistanceTable jumpTable = null;
+
+	public JumpPointProvider(GridSnapshot grid) {
+		this.grid = grid;
+		if (grid.isEightConnected()) {
+			jumpTable = JumpDistanceTable.loadOrBuild(grid, GridUtil.CACHE_DIRECTORY);
+		}
+	}
+
+	public void update(ArrayList<Edge> changedEdges) {
+		if (jumpTable != null) {
+			jumpTable.update(changedEdges);
+		}
+	}
+
+	public ComputedPlan findIncumbent(GridCell start, GridCell goal) {
+		JumpPointSearch greedySearch = new JumpPointSearch(grid, true);
+		greedySearch.setJumpDistanceTable(jumpTable);
+		return greedySearch.search(start, goal);
+	}
+}
@@ -0,0 +1,410 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * Jump Point Search (Harabor & Grastien 2011) over a GridSnapshot.
+ *
+ * Open areas of a uniform cost grid contain huge numbers of equally cheap
+ * paths, and plain A* generates every cell on every one of them. JPS only
+ * generates "jump points": cells where an optimal path may have to change
+ * direction because of a nearby obstacle. The cells in between are scanned,
+ * but never touch the open list.
+ *
+ * The pruning rules are only valid where every cell costs the same, so we
+ * stop jumping at terrain that is not of minimum cost (water, swamp etc.)
+ * and at any cell that borders it. Those cells are expanded with all of their
+ * neighbours, exactly like a normal A* expansion. On a map with no weighted
+ * terrain this is plain JPS; on a fully weighted map it degrades to A*.
+ *
+ * Maps without diagonal moves are not jumped at all; every cell is expanded
+ * normally.
+ *
+ * Set greedy to order the open list on h alone, which gives a fast (but not
+ * optimal) incumbent search.
+ */
+public class JumpPointSearch implements Comparator<GridCell> {
+
+	private GridSnapshot grid;
+
+	// Order on h only?
+	private boolean greedy;
+
+	// Jumping is only sound when diagonal moves are allowed.
+	private boolean jumping;
+
+	// Precomputed jump distances. Scans the grid when this is null.
+	private JumpDistanceTable jumpTable = null;
+
+	// Dead ends to skip, with the query already set, or null.
+	private DeadEndRegions deadEnds = null;
+
+	private int goal = -1;
+
+	private int expansionCount = 0;
+
+	private PriorityQueue<GridCell> openQueue;
+
+	// Cell properties, indexed by GridSnapshot index.
+	private CellSetMembership[] sets;
+	private int[]               parents;
+	private float[]             gCosts;
+	private float[]             hCosts;
+
+	private final int INITIAL_QUEUE_CAPACITY = 1000;
+
+	/**
+	 * Create a new search engine for the given map snapshot.
+	 * @param grid   the map to search
+	 * @param greedy order nodes by h rather than f
+	 */
+	public JumpPointSearch(GridSnapshot grid, boolean greedy) {
+		this.grid = grid;
+		this.greedy = greedy;
+		this.jumping = grid.isEightConnected();
+
+		int size = grid.getSize();
+		this.sets    = new CellSetMembership[size];
+		this.parents = new int[size];
+		this.gCosts  = new float[size];
+		this.hCosts  = new float[size];
+
+		this.openQueue = new PriorityQueue<GridCell>(INITIAL_QUEUE_CAPACITY, this);
+	}
+
+	/**
+	 * Use precomputed jump distances instead of scanning the grid. The table
+	 * must describe the same snapshot as this search. Ignored on maps without
+	 * diagonal moves, where nothing is jumped anyway.
+	 * @param jumpTable the table, or null to scan
+	 */
+	public void setJumpDistanceTable(JumpDistanceTable jumpTable) {
+		this.jumpTable = jumping ? jumpTable : null;
+	}
+
+	/**
+	 * Skip jump points in dead ends. A straight jump cannot leave a dead end
+	 * once inside it, as the region is entered through a single cell, so only
+	 * the jump points themselves need checking.
+	 * @param deadEnds dead ends with the query set for the next search, or
+	 *                 null to skip none
+	 */
+	public void setDeadEnds(DeadEndRegions deadEnds) {
+		this.deadEnds = deadEnds;
+	}
+
+	/**
+	 * Find a path between two cells.
+	 * @param start the cell to search from
+	 * @param goal  the cell to search to
+	 * @return a plan from start to goal (including start), or null if the goal
+	 *         cannot be reached
+	 */
+	public ComputedPlan search(GridCell start, GridCell goal) {
+		Arrays.fill(sets, null);
+		openQueue.clear();
+		expansionCount = 0;
+
+		this.goal = grid.getIndex(goal);
+		int startIndex = grid.getIndex(start);
+
+		if (grid.isPassable(startIndex) == false || grid.isPassable(this.goal) == false) {
+			return null;
+		}
+
+		add(startIndex, 0f, -1);
+
+		while (openQueue.isEmpty() == false) {
+			GridCell cell = openQueue.poll();
+			int current = grid.getIndex(cell);
+			sets[current] = CellSetMembership.CLOSED;
+			expansionCount++;
+
+			if (current == this.goal) {
+				return computePlan(current);
+			}
+
+			expandJumpPoint(current);
+		}
+
+		// No path exists.
+		return null;
+	}
+
+	/**
+	 * Number of jump points expanded by the last search.
+	 */
+	public int getExpansionCount() {
+		return expansionCount;
+	}
+
+	/**
+	 * Generate the successors of a jump point.
+	 */
+	private void expandJumpPoint(int current) {
+		int[] directions = grid.getDirections();
+		for (int i = 0; i < directions.length; i++) {
+			int direction = directions[i];
+
+			if (isNaturalOrForced(current, direction) == false) {
+				continue;
+			}
+
+			int successor = jump(current, direction);
+			if (successor == -1 || sets[successor] == CellSetMembership.CLOSED ||
+					(deadEnds != null && deadEnds.isDeadEnd(successor))) {
+				continue;
+			}
+
+			// All cells skipped over cost the minimum; only the jump point itself
+			// may be more expensive.
+			int steps = Math.max(
+					Math.abs(grid.getX(successor) - grid.getX(current)),
+					Math.abs(grid.getY(successor) - grid.getY(current)));
+			float gCost = gCosts[current] + (steps - 1) * grid.getMinCost() +
+					grid.getCost(successor);
+
+			if (sets[successor] == null) {
+				add(successor, gCost, current);
+			} else if (FloatUtil.lessThan(gCost, gCosts[successor])) {
+				// Cheaper route to an open node. Requeue it at its new position.
+				GridCell cell = grid.getCell(successor);
+				openQueue.remove(cell);
+				gCosts[successor] = gCost;
+				parents[successor] = current;
+				openQueue.offer(cell);
+			}
+		}
+	}
+
+	private void add(int index, float gCost, int parent) {
+		sets[index] = CellSetMembership.OPEN;
+		gCosts[index] = gCost;
+		hCosts[index] = grid.getHCost(index, goal);
+		parents[index] = parent;
+		openQueue.offer(grid.getCell(index));
+	}
+
+	/**
+	 * Should the successor in this direction be generated? This implements the
+	 * JPS neighbour pruning rules, relative to the direction we arrived from.
+	 */
+	private boolean isNaturalOrForced(int current, int direction) {
+		int parent = parents[current];
+		if (parent == -1 || jumping == false || isNearWeightedTerrain(current)) {
+			// No pruning - expand like A*.
+			return true;
+		}
+
+		int x = grid.getX(current);
+		int y = grid.getY(current);
+
+		// Normalised direction of travel into this cell.
+		int px = Integer.signum(x - grid.getX(parent));
+		int py = Integer.signum(y - grid.getY(parent));
+
+		int dx = GridSnapshot.DIRECTION_X[direction];
+		int dy = GridSnapshot.DIRECTION_Y[direction];
+
+		if (px != 0 && py != 0) {
+			// Diagonal travel: (px,0), (0,py) and (px,py) are natural.
+			if ((dx == px && dy == 0) || (dx == 0 && dy == py) || (dx == px && dy == py)) {
+				return true;
+			}
+			// Forced when the cell behind us on either axis is blocked.
+			if (dx == -px && dy == py) {
+				return grid.isPassable(x - px, y) == false;
+			}
+			if (dx == px && dy == -py) {
+				return grid.isPassable(x, y - py) == false;
+			}
+			return false;
+		}
+
+		// Straight travel: only (px,py) is natural.
+		if (dx == px && dy == py) {
+			return true;
+		}
+		// Forced when the cell beside us is blocked.
+		if (px != 0 && dx == px && dy != 0) {
+			return grid.isPassable(x, y + dy) == false;
+		}
+		if (py != 0 && dy == py && dx != 0) {
+			return grid.isPassable(x + dx, y) == false;
+		}
+		return false;
+	}
+
+	/**
+	 * Scan from a cell in a direction until a jump point is found.
+	 * @return the index of the jump point, or -1 if we hit a wall first
+	 */
+	private int jump(int from, int direction) {
+		if (jumpTable != null) {
+			return jumpTable.getJumpTarget(from, direction, goal);
+		}
+
+		int dx = GridSnapshot.DIRECTION_X[direction];
+		int dy = GridSnapshot.DIRECTION_Y[direction];
+		int x = grid.getX(from);
+		int y = grid.getY(from);
+
+		while (true) {
+			x += dx;
+			y += dy;
+
+			if (grid.isPassable(x, y) == false) {
+				return -1;
+			}
+
+			int index = grid.getIndex(x, y);
+
+			// Weighted terrain is handled by regular expansion, so we stop on it
+			// and on its borders.
+			if (index == goal || jumping == false || isNearWeightedTerrain(index)) {
+				return index;
+			}
+
+			if (dx != 0 && dy != 0) {
+				if (hasForcedNeighbourDiagonal(x, y, dx, dy) ||
+						jumpStraight(x, y, dx, 0) || jumpStraight(x, y, 0, dy)) {
+					return index;
+				}
+			} else if (hasForcedNeighbourStraight(x, y, dx, dy)) {
+				return index;
+			}
+		}
+	}
+
+	/**
+	 * Straight scan used by diagonal jumps. Only reports whether a jump point
+	 * exists; the diagonal cell becomes the jump point in that case.
+	 */
+	private boolean jumpStraight(int x, int y, int dx, int dy) {
+		while (true) {
+			x += dx;
+			y += dy;
+
+			if (grid.isPassable(x, y) == false) {
+				return false;
+			}
+
+			int index = grid.getIndex(x, y);
+			if (index == goal || isNearWeightedTerrain(index) ||
+					hasForcedNeighbourStraight(x, y, dx, dy)) {
+				return true;
+			}
+		}
+	}
+
+	private boolean hasForcedNeighbourStraight(int x, int y, int dx, int dy) {
+		if (dx != 0) {
+			return (grid.isPassable(x, y + 1) == false && grid.isPassable(x + dx, y + 1)) ||
+			       (grid.isPassable(x, y - 1) == false && grid.isPassable(x + dx, y - 1));
+		}
+		return (grid.isPassable(x + 1, y) == false && grid.isPassable(x + 1, y + dy)) ||
+		       (grid.isPassable(x - 1, y) == false && grid.isPassable(x - 1, y + dy));
+	}
+
+	private boolean hasForcedNeighbourDiagonal(int x, int y, int dx, int dy) {
+		return (grid.isPassable(x - dx, y) == false && grid.isPassable(x - dx, y + dy)) ||
+		       (grid.isPassable(x, y - dy) == false && grid.isPassable(x + dx, y - dy));
+	}
+
+	/**
+	 * True if this cell, or any cell it could step into, is passable but more
+	 * expensive than the minimum cost.
+	 */
+	private boolean isNearWeightedTerrain(int index) {
+		if (grid.isUniformMap()) {
+			return false;
+		}
+		if (grid.isUniform(index) == false) {
+			return true;
+		}
+
+		int x = grid.getX(index);
+		int y = grid.getY(index);
+		int[] directions = grid.getDirections();
+		for (int i = 0; i < directions.length; i++) {
+			int nx = x + GridSnapshot.DIRECTION_X[directions[i]];
+			int ny = y + GridSnapshot.DIRECTION_Y[directions[i]];
+			if (grid.isPassable(nx, ny) && grid.isUniform(nx, ny) == false) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Build a plan by walking back through the jump points, filling in the
+	 * cells that were jumped over.
+	 */
+	private ComputedPlan computePlan(int goal) {
+		ComputedPlan plan = new ComputedPlan();
+
+		int cell = goal;
+		while (parents[cell] != -1) {
+			int parent = parents[cell];
+			int x = grid.getX(cell);
+			int y = grid.getY(cell);
+			int dx = Integer.signum(grid.getX(parent) - x);
+			int dy = Integer.signum(grid.getY(parent) - y);
+
+			// Step back toward the parent one cell at a time.
+			while (grid.getIndex(x, y) != parent) {
+				plan.prependStep(grid.getCell(grid.getIndex(x, y)));
+				x += dx;
+				y += dy;
+			}
+			cell = parent;
+		}
+		plan.prependStep(grid.getCell(cell));
+
+		plan.setCost(gCosts[goal]);
+		return plan;
+	}
+
+	/* -- GRID CELL COMPARATOR -- */
+
+	/**
+	 * Compare two grid cells on f (or h when greedy), breaking ties on h.
+	 */
+	public int compare(GridCell a, GridCell b) {
+		int ia = grid.getIndex(a);
+		int ib = grid.getIndex(b);
+
+		if (greedy == false) {
+			int fCompare = FloatUtil.compare(gCosts[ia] + hCosts[ia], gCosts[ib] + hCosts[ib]);
+			if (fCompare != 0) {
+				return fCompare;
+			}
+		}
+
+		return FloatUtil.compare(hCosts[ia], hCosts[ib]);
+	}
+
+	/* -- DEBUG -- */
+
+	/** Return an ArrayList of all the jump points in the closed set. */
+	public ArrayList<GridCell> getClosedArrayList() {
+		ArrayList<GridCell> closed = new ArrayList<GridCell>(expansionCount);
+		for (int i = 0; i < sets.length; i++) {
+			if (sets[i] == CellSetMembership.CLOSED) {
+				closed.add(grid.getCell(i));
+			}
+		}
+		return closed;
+	}
+
+	/** Return an ArrayList of all the jump points in the open set. */
+	public ArrayList<GridCell> getOpenArrayList() {
+		return new ArrayList<GridCell>(openQueue);
+	}
+}
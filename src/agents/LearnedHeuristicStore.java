@@ -0,0 +1,221 @@
+package agents;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Heuristic values learned for one goal on one map, kept between runs.
+ *
+ * Real-time search raises h where the map's estimate proved too low, and the
+ * values it learns hold for as long as the map and goal stay the same. A
+ * store holds a float per cell (zero where nothing has been learned), and is
+ * memory mapped to and from a file in the cache directory named for the map
+ * signature and the goal. Loading merges the file into the values, and
+ * saving merges the values into the file, each keeping the larger value per
+ * cell; learned values are admissible, so their maximum is too, and an
+ * optimal search could use them in place of the map's h.
+ *
+ * Stores are shared: open() returns the store already open for a map and
+ * goal, and every open store is saved when the program exits. A store
+ * describes the map as it was, so must be closed (see close()) as soon as a
+ * cell changes; a cheaper cell could make its values overestimate.
+ */
+public class LearnedHeuristicStore {
+
+	// Bumped whenever the file layout changes.
+	private static final int FILE_VERSION = 1;
+
+	// Bytes before the values: version, signature, size and goal.
+	private static final int HEADER_SIZE = 4 + 8 + 4 + 4;
+
+	// Stores not yet closed, saved by the shutdown hook.
+	private static ArrayList<LearnedHeuristicStore> openStores =
+			new ArrayList<LearnedHeuristicStore>();
+	private static boolean isShutdownHookAdded = false;
+
+	private File file;
+	private long signature;
+	private int goal;
+	private float[] values;
+
+	// Has anything been learned since the last save?
+	private boolean isDirty = false;
+
+	private LearnedHeuristicStore(File file, long signature, int goal, int size) {
+		this.file = file;
+		this.signature = signature;
+		this.goal = goal;
+		this.values = new float[size];
+	}
+
+	/**
+	 * The store file for a map and goal.
+	 */
+	public static File getFile(GridSnapshot grid, int goal, File cacheDirectory) {
+		return new File(cacheDirectory,
+				"learned-" + Long.toHexString(grid.getSignature()) + "-" + goal + ".bin");
+	}
+
+	/**
+	 * Open the store for a goal, with any values saved by earlier runs.
+	 * @param grid           the map as it is now
+	 * @param goal           index of the goal cell
+	 * @param cacheDirectory where store files are kept
+	 */
+	public static synchronized LearnedHeuristicStore open(GridSnapshot grid, int goal,
+			File cacheDirectory) {
+		long signature = grid.getSignature();
+		for (LearnedHeuristicStore store : openStores) {
+			if (store.signature == signature && store.goal == goal &&
+					store.values.length == grid.getSize()) {
+				return store;
+			}
+		}
+
+		LearnedHeuristicStore store = new LearnedHeuristicStore(
+				getFile(grid, goal, cacheDirectory), signature, goal, grid.getSize());
+		store.load();
+		openStores.add(store);
+
+		if (isShutdownHookAdded == false) {
+			isShutdownHookAdded = true;
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					saveAll();
+				}
+			});
+		}
+		return store;
+	}
+
+	private static synchronized void saveAll() {
+		for (LearnedHeuristicStore store : openStores) {
+			store.save();
+		}
+	}
+
+	/**
+	 * Save the store and stop sharing it. Later calls to open() read it back
+	 * from its file.
+	 */
+	public void close() {
+		synchronized (LearnedHeuristicStore.class) {
+			openStores.remove(this);
+		}
+		save();
+	}
+
+	public int getGoal() {
+		return goal;
+	}
+
+	/**
+	 * The learned h of a cell: zero if nothing has been learned, and infinite
+	 * if the goal cannot be reached from it.
+	 */
+	public float get(int cell) {
+		return values[cell];
+	}
+
+	/**
+	 * Record a learned h. This must not exceed the true cost to the goal.
+	 */
+	public void set(int cell, float hCost) {
+		values[cell] = hCost;
+		isDirty = true;
+	}
+
+	/* -- FILES -- */
+
+	/**
+	 * Merge in the values saved in the store file, if there is one.
+	 */
+	private void load() {
+		if (file.exists() == false) {
+			return;
+		}
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				ByteBuffer buffer = raf.getChannel().map(
+						FileChannel.MapMode.READ_ONLY, 0, raf.length());
+				FloatBuffer saved = getValues(buffer);
+				if (saved == null) {
+					System.out.println("Stale learned heuristic " + file);
+					return;
+				}
+				for (int cell = 0; cell < values.length; cell++) {
+					values[cell] = Math.max(values[cell], saved.get(cell));
+				}
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Could not read learned heuristic " + file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Merge the values into the store file, creating it if need be. Values
+	 * saved meanwhile by another run are kept where they are larger.
+	 */
+	private synchronized void save() {
+		if (isDirty == false) {
+			return;
+		}
+		try {
+			file.getParentFile().mkdirs();
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				long length = HEADER_SIZE + 4L * values.length;
+				boolean isValid = raf.length() == length;
+				ByteBuffer buffer = raf.getChannel().map(
+						FileChannel.MapMode.READ_WRITE, 0, length);
+				FloatBuffer saved = isValid ? getValues(buffer) : null;
+				if (saved == null) {
+					buffer.putInt(0, FILE_VERSION);
+					buffer.putLong(4, signature);
+					buffer.putInt(12, values.length);
+					buffer.putInt(16, goal);
+					saved = getValues(buffer);
+					for (int cell = 0; cell < values.length; cell++) {
+						saved.put(cell, values[cell]);
+					}
+				} else {
+					for (int cell = 0; cell < values.length; cell++) {
+						if (values[cell] > saved.get(cell)) {
+							saved.put(cell, values[cell]);
+						}
+					}
+				}
+			} finally {
+				raf.close();
+			}
+			isDirty = false;
+		} catch (IOException e) {
+			System.out.println("Could not write learned heuristic " + file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * The values in a mapped store file.
+	 * @return the values, or null if the header is not for this store
+	 */
+	private FloatBuffer getValues(ByteBuffer buffer) {
+		if (buffer.limit() != HEADER_SIZE + 4L * values.length ||
+				buffer.getInt(0) != FILE_VERSION ||
+				buffer.getLong(4) != signature ||
+				buffer.getInt(12) != values.length ||
+				buffer.getInt(16) != goal) {
+			return null;
+		}
+		buffer.position(HEADER_SIZE);
+		return buffer.slice().asFloatBuffer();
+	}
+}
@@ -0,0 +1,299 @@
+package agents;
+import java.util.ArrayList;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.Edge;
+import pplanning.interfaces.PlanningAgent;
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Real-time search with a bounded lookahead: LSS-LRTA* (Koenig & Sun 2009),
+ * or RTAA* (Koenig & Likhachev 2006).
+ *
+ * Rather than planning all the way to the goal, each search is an A* from
+ * the agent's cell that stops after a number of expansions chosen to fit the
+ * time per step. The agent then heads for the most promising cell on the
+ * frontier, and before it does, the h of every cell expanded is raised to
+ * what the search has learned:
+ *
+ *  - LSS-LRTA* backs up h from the frontier through the expanded cells with
+ *    a Dijkstra search, so each gets the cheapest cost through the frontier;
+ *  - RTAA* sets the h of each to the f of the chosen frontier cell less its
+ *    g, which is less informed but takes one pass.
+ *
+ * Learned h values only ever rise, and stay admissible, so repeated visits
+ * to a region fill in its heuristic depressions until the agent escapes.
+ * They are kept in a LearnedHeuristicStore for as long as the map and goal
+ * stay the same, across calls, episodes and runs, so later runs start better
+ * informed. Node data and the open list are indexed by cell and reused, so
+ * the time each search takes depends only on the lookahead, not on the size
+ * of the map.
+ */
+public class LearningRealTimeAStar implements PlanningAgent {
+
+	// Back up h with Dijkstra (LSS-LRTA*), rather than from f (RTAA*).
+	private final static boolean USE_DIJKSTRA_BACKUP = true;
+
+	// Share of the time per step given to the lookahead.
+	private final static double LOOKAHEAD_TIME_FRACTION = 0.5;
+
+	// Bounds on the expansions in a lookahead.
+	private final static int MIN_LOOKAHEAD = 1;
+	private final static int MAX_LOOKAHEAD = 100000;
+
+	// Time per expansion assumed before any has been measured.
+	private final static long INITIAL_EXPANSION_TIME = 1000;
+
+	private final long MS_TO_NS = 1000000;
+
+	// Learned h for the current map and goal.
+	private LearnedHeuristicStore learnedHCosts = null;
+
+	private GridSnapshot snapshot = null;
+	private NodeStore nodes;
+	private OrderedOpenList openList;
+	private OrderedOpenList backupList;
+	private int goal;
+
+	// Cells expanded by the last lookahead.
+	private int[] closedCells = new int[MAX_LOOKAHEAD];
+	private int closedCount = 0;
+
+	// Time spent in lookaheads and cells expanded, over every lookahead, for
+	// the time per expansion. Totals rather than the last lookahead alone, so
+	// that one interrupted lookahead does not shrink the next.
+	private long totalSearchTime = 0;
+	private long totalExpansionCount = 0;
+
+	// Path to the frontier cell being headed for (start excluded).
+	private int[] path = new int[0];
+	private int pathLength = 0;
+	private int stepNo = 0;
+
+	@Override
+	public GridCell getNextMove(GridDomain map, GridCell start, GridCell goal,
+			int stepLeft, long stepTime, long timeLeft) {
+
+		try {
+			ArrayList<Edge> changedEdges = map.getChangedEdges();
+			boolean isMapChanged = updateSnapshot(map, changedEdges);
+			int startIndex = snapshot.getIndex(start);
+			int goalIndex = snapshot.getIndex(goal);
+			if (startIndex == goalIndex) {
+				return start;
+			}
+			updateLearnedHCosts(goalIndex, isMapChanged);
+
+			// Search again once at the frontier cell, or when knocked off course.
+			boolean isOnPath = stepNo < pathLength &&
+					(stepNo == 0 || path[stepNo - 1] == startIndex);
+			if (isMapChanged || isOnPath == false) {
+				long lookaheadTime = (long) (stepTime * MS_TO_NS * LOOKAHEAD_TIME_FRACTION);
+				long expansionTime = totalExpansionCount == 0 ? INITIAL_EXPANSION_TIME :
+						Math.max(1, totalSearchTime / totalExpansionCount);
+				int lookahead = (int) Math.max(MIN_LOOKAHEAD,
+						Math.min(MAX_LOOKAHEAD, lookaheadTime / expansionTime));
+				if (search(startIndex, lookahead) == false) {
+					Trace.print("Goal cannot be reached");
+					return start;
+				}
+			}
+
+			return snapshot.getCell(path[stepNo++]);
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			return start;
+		}
+	}
+
+	/**
+	 * Create the snapshot and search structures on the first call, or for a
+	 * new map, and bring the snapshot up to date otherwise.
+	 * @return true if any cell has changed since the last call
+	 */
+	private boolean updateSnapshot(GridDomain map, ArrayList<Edge> changedEdges) {
+		if (snapshot == null || snapshot.getMap() != map) {
+			snapshot = new GridSnapshot(map);
+			nodes = new NodeStore(snapshot);
+			openList = new OrderedOpenList(snapshot.getSize());
+			backupList = new OrderedOpenList(snapshot.getSize());
+			pathLength = 0;
+			return false;
+		}
+		return snapshot.update(changedEdges);
+	}
+
+	/**
+	 * Keep the learned h values if they are for this map and goal, and open
+	 * the store for them otherwise. A changed map may have cheaper cells,
+	 * which could make the old values overestimate, so they are put away.
+	 */
+	private void updateLearnedHCosts(int goalIndex, boolean isMapChanged) {
+		goal = goalIndex;
+		if (learnedHCosts != null && (isMapChanged || learnedHCosts.getGoal() != goalIndex)) {
+			learnedHCosts.close();
+			learnedHCosts = null;
+		}
+		if (learnedHCosts == null) {
+			learnedHCosts = LearnedHeuristicStore.open(snapshot, goalIndex, GridUtil.CACHE_DIRECTORY);
+		}
+	}
+
+	private float getHCost(int cell) {
+		return Math.max(learnedHCosts.get(cell), snapshot.getHCost(cell, goal));
+	}
+
+	/**
+	 * Look ahead from a cell, learn from it, and set the path to follow.
+	 * @param lookahead the most cells to expand
+	 * @return false if the goal cannot be reached
+	 */
+	private boolean search(int start, int lookahead) {
+		long startTime = System.nanoTime();
+		int[] directions = snapshot.getDirections();
+
+		nodes.clear();
+		nodes.generate(start, 0f, -1);
+		openList.add(start, getHCost(start), 0f);
+		closedCount = 0;
+
+		// A* until the lookahead is spent or the goal is next.
+		while (openList.isEmpty() == false && closedCount < lookahead) {
+			int current = openList.first();
+			if (current == goal) {
+				break;
+			}
+			openList.remove(current);
+			nodes.close(current);
+			closedCells[closedCount++] = current;
+
+			float gCost = nodes.getGCost(current);
+			for (int i = 0; i < directions.length; i++) {
+				int neighbour = snapshot.getNeighbour(current, directions[i]);
+				if (neighbour == -1 || nodes.isClosed(neighbour)) {
+					continue;
+				}
+				float childGCost = gCost + snapshot.getCost(neighbour);
+				if (nodes.isGenerated(neighbour)) {
+					if (FloatUtil.compare(childGCost, nodes.getGCost(neighbour)) != -1) {
+						continue;
+					}
+					openList.remove(neighbour);
+				}
+				nodes.generate(neighbour, childGCost, current);
+
+				// Ties go to the cell furthest along.
+				openList.add(neighbour, childGCost + getHCost(neighbour), -childGCost);
+			}
+		}
+
+		if (openList.isEmpty()) {
+			return false;
+		}
+
+		// Head for the best frontier cell.
+		int target = openList.first();
+		pathLength = 0;
+		for (int cell = target; cell != start; cell = nodes.getParent(cell)) {
+			pathLength++;
+		}
+		if (path.length < pathLength) {
+			path = new int[Math.max(pathLength, 2 * path.length)];
+		}
+		int i = pathLength;
+		for (int cell = target; cell != start; cell = nodes.getParent(cell)) {
+			path[--i] = cell;
+		}
+		stepNo = 0;
+
+		if (USE_DIJKSTRA_BACKUP) {
+			backUpHCosts();
+		} else {
+			float targetFCost = nodes.getGCost(target) + getHCost(target);
+			for (int c = 0; c < closedCount; c++) {
+				int cell = closedCells[c];
+				learnedHCosts.set(cell, Math.max(learnedHCosts.get(cell), targetFCost - nodes.getGCost(cell)));
+			}
+		}
+
+		while (openList.isEmpty() == false) {
+			openList.remove(openList.first());
+		}
+
+		totalSearchTime += System.nanoTime() - startTime;
+		totalExpansionCount += closedCount;
+		return true;
+	}
+
+	/**
+	 * Set the h of each expanded cell to its cheapest cost to the goal through
+	 * the frontier: a Dijkstra search from the frontier cells, in order of
+	 * their h, back through the expanded cells. A cell's neighbours are its
+	 * predecessors, and moving from one costs the cell's own cost.
+	 */
+	private void backUpHCosts() {
+		for (int c = 0; c < closedCount; c++) {
+			learnedHCosts.set(closedCells[c], Float.POSITIVE_INFINITY);
+		}
+		for (int cell = openList.first(); cell != -1; cell = openList.next(cell)) {
+			backupList.add(cell, getHCost(cell), 0f);
+		}
+
+		int[] directions = snapshot.getDirections();
+		while (backupList.isEmpty() == false) {
+			int cell = backupList.first();
+			backupList.remove(cell);
+			float hCost = getHCost(cell);
+			float moveCost = snapshot.getCost(cell);
+
+			for (int i = 0; i < directions.length; i++) {
+				int predecessor = snapshot.getNeighbour(cell, directions[i]);
+				if (predecessor == -1 || nodes.isClosed(predecessor) == false) {
+					continue;
+				}
+				float backedUpHCost = moveCost + hCost;
+				if (FloatUtil.compare(backedUpHCost, learnedHCosts.get(predecessor)) == -1) {
+					if (learnedHCosts.get(predecessor) != Float.POSITIVE_INFINITY) {
+						backupList.remove(predecessor);
+					}
+					learnedHCosts.set(predecessor, backedUpHCost);
+					backupList.add(predecessor, backedUpHCost, 0f);
+				}
+			}
+		}
+	}
+
+	// Do we want to show extra info? (e.g., close and open nodes, current path)
+	@Override
+	public Boolean showInfo() {
+		return snapshot != null;
+	}
+
+	@Override
+	public ArrayList<GridCell> expandedNodes() {
+		ArrayList<GridCell> closed = new ArrayList<GridCell>(closedCount);
+		for (int c = 0; c < closedCount; c++) {
+			closed.add(snapshot.getCell(closedCells[c]));
+		}
+		return closed;
+	}
+
+	@Override
+	public ArrayList<GridCell> unexpandedNodes() {
+		return new ArrayList<GridCell>();
+	}
+
+	@Override
+	public ComputedPlan getPath() {
+		if (snapshot == null) {
+			return null;
+		}
+		ComputedPlan plan = new ComputedPlan();
+		for (int i = stepNo; i < pathLength; i++) {
+			plan.appendStep(snapshot.getCell(path[i]));
+		}
+		return plan;
+	}
+}
@@ -0,0 +1,98 @@
+package agents;
+
+import java.util.Arrays;
+
+/**
+ * Distances between the cells of a 4x4 block, for every arrangement of
+ * obstacles within it (Yap et al. 2011). Used by BlockAStar.
+ *
+ * A block's obstacles are a 16 bit pattern, bit (y * 4 + x) set when that
+ * cell is blocked (or off the map), so there are 65536 possible blocks. Each
+ * entry holds the number of moves between every pair of the block's cells,
+ * staying within the block. Entries are computed the first time a pattern is
+ * seen, and kept for the life of the database.
+ */
+public class LocalDistanceDatabase {
+
+	public static final int BLOCK_SIZE = 4;
+	public static final int BLOCK_CELLS = BLOCK_SIZE * BLOCK_SIZE;
+
+	// Distance between cells that cannot reach each other within the block.
+	public static final int UNREACHABLE = 0xFF;
+
+	private final static int PATTERN_COUNT = 1 << BLOCK_CELLS;
+
+	private boolean eightConnected;
+
+	// entries[pattern][from * BLOCK_CELLS + to], or null if not yet computed.
+	private byte[][] entries = new byte[PATTERN_COUNT][];
+
+	// Scratch queue for filling entries.
+	private int[] queue = new int[BLOCK_CELLS];
+
+	/**
+	 * @param eightConnected whether diagonal moves are allowed
+	 */
+	public LocalDistanceDatabase(boolean eightConnected) {
+		this.eightConnected = eightConnected;
+	}
+
+	/**
+	 * Get the distances for a block.
+	 * @param pattern the block's obstacles
+	 * @return distances, indexed by from * BLOCK_CELLS + to. Read as unsigned.
+	 */
+	public byte[] getDistances(int pattern) {
+		byte[] distances = entries[pattern];
+		if (distances == null) {
+			distances = computeDistances(pattern);
+			entries[pattern] = distances;
+		}
+		return distances;
+	}
+
+	/**
+	 * Can a move be made between two cells of a block?
+	 */
+	public boolean isMove(int pattern, int from, int to) {
+		if ((pattern & (1 << to)) != 0) {
+			return false;
+		}
+		int dx = Math.abs(to % BLOCK_SIZE - from % BLOCK_SIZE);
+		int dy = Math.abs(to / BLOCK_SIZE - from / BLOCK_SIZE);
+		return dx <= 1 && dy <= 1 && dx + dy > 0 && (eightConnected || dx + dy == 1);
+	}
+
+	/**
+	 * Breadth first search from each free cell of the block.
+	 */
+	private byte[] computeDistances(int pattern) {
+		byte[] distances = new byte[BLOCK_CELLS * BLOCK_CELLS];
+		Arrays.fill(distances, (byte) UNREACHABLE);
+
+		for (int source = 0; source < BLOCK_CELLS; source++) {
+			if ((pattern & (1 << source)) != 0) {
+				continue;
+			}
+
+			int base = source * BLOCK_CELLS;
+			distances[base + source] = 0;
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = source;
+
+			while (head < tail) {
+				int cell = queue[head++];
+				int distance = distances[base + cell] & 0xFF;
+				for (int neighbour = 0; neighbour < BLOCK_CELLS; neighbour++) {
+					if ((distances[base + neighbour] & 0xFF) == UNREACHABLE &&
+							isMove(pattern, cell, neighbour)) {
+						distances[base + neighbour] = (byte) (distance + 1);
+						queue[tail++] = neighbour;
+					}
+				}
+			}
+		}
+		return distances;
+	}
+}
@@ -0,0 +1,46 @@
+package agents;
+
+import pplanning.simviewer.model.GridDomain;
+import pplanning.simviewer.model.GridView;
+import pplanning.simviewer.model.MapData;
+
+/**
+ * A map read straight from a .map file, without the rest of Apparate. Used by
+ * the offline builders (CpdBuilder etc.) to precompute data for a map ahead
+ * of time.
+ *
+ * GridDomain overrides the generic getChangedEdges(), getPredecessors() and
+ * getSuccessors() of SearchDomain with plain ArrayLists, an unchecked
+ * conversion that javac reports against every subclass. The warning cannot be
+ * suppressed on the methods, as they are inherited, and overriding them again
+ * with the generic signatures clashes with GridDomain's, so it is suppressed
+ * here. Nothing in this class is unchecked itself.
+ */
+@SuppressWarnings("unchecked")
+class MapFileDomain extends GridDomain {
+
+	private MapFileDomain(MapData data, GridView view) {
+		super(data);
+		setCellEvaluator(view.getCellEvaluator());
+		setCostCalculator(view.getCostCalculator());
+		setHeuristicCalculator(view.getHeuristicCalculator());
+
+		// Loading counts as changing every cell.
+		applyChanges();
+	}
+
+	/**
+	 * Read a map file.
+	 * @param fileName      path to the .map file
+	 * @param eightConnected true for the euclidean (eight connected) view,
+	 *                       false for manhattan
+	 */
+	public static GridDomain load(String fileName, boolean eightConnected) {
+		MapData data = MapData.readExternalData(fileName);
+		if (data == null) {
+			throw new IllegalArgumentException("Could not read map '" + fileName + "'");
+		}
+		return new MapFileDomain(data,
+				eightConnected ? GridView.EUCLIDEANGRID : GridView.MANHATTENGRID);
+	}
+}
@@ -0,0 +1,165 @@
+package agents;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Compares FringeSearch and IterativeDeepeningAStar with A* on expansions,
+ * expansion rate and plan cost.
+ *
+ *     java agents.MemoryBoundedBenchmark maps/maze_1024.map [manhattan]
+ *
+ * A* here is plain A* over a NodeStore, with arrays the size of the map, so
+ * that expansions are comparable; AStar itself uses jump points. Each search
+ * is given QUERY_TIME to finish. The first queries are slow while the JIT
+ * warms up.
+ */
+public class MemoryBoundedBenchmark {
+
+	private final static int QUERY_COUNT = 20;
+	private final static long QUERY_TIME = 10000000000L; // 10s
+
+	private final static int FRINGE_CAPACITY = 1 << 22;
+	private final static int IDA_MAX_DEPTH = 1 << 18;
+	private final static int IDA_TABLE_CAPACITY = 1 << 16;
+
+	private final static String[] SEARCH_NAMES = { "A*", "Fringe", "IDA*" };
+
+	/**
+	 * @param args map file, then optionally "manhattan" for a four connected map
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: MemoryBoundedBenchmark <map file> [manhattan]");
+			return;
+		}
+		boolean eightConnected = args.length < 2 || args[1].equals("manhattan") == false;
+
+		GridDomain map = MapFileDomain.load(args[0], eightConnected);
+		GridSnapshot grid = new GridSnapshot(map);
+		Bitboard bitboard = new Bitboard(grid);
+
+		FringeSearch fringe = new FringeSearch(grid, FRINGE_CAPACITY);
+		IterativeDeepeningAStar ida = new IterativeDeepeningAStar(grid, IDA_MAX_DEPTH, IDA_TABLE_CAPACITY);
+		AStarSearch aStar = new AStarSearch(grid);
+
+		long[] times = new long[SEARCH_NAMES.length];
+		long[] expansions = new long[SEARCH_NAMES.length];
+		double[] costs = new double[SEARCH_NAMES.length];
+		int[] failures = new int[SEARCH_NAMES.length];
+
+		Random random = new Random(1);
+		for (int q = 0; q < QUERY_COUNT; q++) {
+			int start;
+			int goal;
+			do {
+				start = randomPassableCell(grid, random);
+				goal = randomPassableCell(grid, random);
+			} while (bitboard.isReachable(start, goal) == false);
+
+			for (int s = 0; s < SEARCH_NAMES.length; s++) {
+				long startTime = System.nanoTime();
+				long deadlineTime = startTime + QUERY_TIME;
+				ComputedPlan plan;
+				int expansionCount;
+				if (s == 0) {
+					plan = aStar.search(start, goal);
+					expansionCount = aStar.expansionCount;
+				} else if (s == 1) {
+					plan = fringe.search(start, goal, deadlineTime);
+					expansionCount = fringe.getExpansionCount();
+				} else {
+					plan = ida.search(start, goal, deadlineTime);
+					expansionCount = ida.getExpansionCount();
+				}
+				times[s] += System.nanoTime() - startTime;
+				expansions[s] += expansionCount;
+				if (plan == null) {
+					failures[s]++;
+				} else {
+					costs[s] += plan.getCost();
+				}
+			}
+		}
+
+		for (int s = 0; s < SEARCH_NAMES.length; s++) {
+			long ms = Math.max(1, times[s] / 1000000);
+			System.out.println(SEARCH_NAMES[s] + ": " + expansions[s] / QUERY_COUNT + " expansions" +
+					" and " + ms / QUERY_COUNT + "ms per query, " +
+					expansions[s] / ms + " expansions/ms, total cost " + (long) costs[s] +
+					(failures[s] > 0 ? ", " + failures[s] + " failed" : ""));
+		}
+		System.out.println("Fringe table: " + FRINGE_CAPACITY + " slots; map: " + grid.getSize() + " cells");
+	}
+
+	private static int randomPassableCell(GridSnapshot grid, Random random) {
+		int cell;
+		do {
+			cell = random.nextInt(grid.getSize());
+		} while (grid.isPassable(cell) == false);
+		return cell;
+	}
+
+	/**
+	 * Textbook A* with lazy deletion, as the baseline. Queue entries pack f
+	 * (whose bits order like the float, as it is never negative) above the
+	 * cell, so stale entries keep their place.
+	 */
+	private static class AStarSearch {
+
+		private GridSnapshot grid;
+		private NodeStore nodes;
+		private PriorityQueue<Long> openQueue;
+		int expansionCount;
+
+		AStarSearch(GridSnapshot grid) {
+			this.grid = grid;
+			this.nodes = new NodeStore(grid);
+			this.openQueue = new PriorityQueue<Long>();
+		}
+
+		ComputedPlan search(int start, int goal) {
+			nodes.clear();
+			openQueue.clear();
+			expansionCount = 0;
+
+			nodes.generate(start, 0f, -1);
+			offer(start, grid.getHCost(start, goal));
+
+			int[] directions = grid.getDirections();
+			while (openQueue.isEmpty() == false) {
+				int current = (int) (openQueue.poll() & 0xFFFFFFFFL);
+				if (nodes.isClosed(current)) {
+					continue;
+				}
+				if (current == goal) {
+					return nodes.computePlan(goal);
+				}
+				nodes.close(current);
+				expansionCount++;
+
+				float gCost = nodes.getGCost(current);
+				for (int i = 0; i < directions.length; i++) {
+					int neighbour = grid.getNeighbour(current, directions[i]);
+					if (neighbour == -1 || nodes.isClosed(neighbour)) {
+						continue;
+					}
+					float childGCost = gCost + grid.getCost(neighbour);
+					if (nodes.isGenerated(neighbour) && childGCost >= nodes.getGCost(neighbour)) {
+						continue;
+					}
+					nodes.generate(neighbour, childGCost, current);
+					offer(neighbour, childGCost + grid.getHCost(neighbour, goal));
+				}
+			}
+			return null;
+		}
+
+		private void offer(int cell, float fCost) {
+			openQueue.offer(((long) Float.floatToIntBits(fCost) << 32) | cell);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package agents;
+import java.util.ArrayList;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import pplanning.interfaces.PlanningAgent;
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Optimal planning in a fixed amount of memory, for maps too large for the
+ * per-cell arrays of the other agents.
+ *
+ * Plans with FringeSearch, whose node table holds a fixed number of cells
+ * whatever the size of the map. If the table fills, falls back on
+ * IterativeDeepeningAStar, which keeps only the current path and a small
+ * transposition table, and so always fits, though it may take much longer.
+ * The sizes are given to the constructor; Apparate uses the defaults below.
+ * See MemoryBoundedBenchmark for how the two compare with A*.
+ */
+public class MemoryBoundedSearch implements PlanningAgent {
+
+	private final static boolean DEBUG = false;
+
+	// Cells the fringe search may store, at about 21 bytes each.
+	private final static int DEFAULT_FRINGE_CAPACITY = 1 << 20;
+
+	// Longest path IDA* can find, and its transposition table entries.
+	private final static int DEFAULT_IDA_MAX_DEPTH = 1 << 18;
+	private final static int DEFAULT_IDA_TABLE_CAPACITY = 1 << 16;
+
+	private final int fringeCapacity;
+	private final int idaMaxDepth;
+	private final int idaTableCapacity;
+
+	private final long MS_TO_NS = 1000000;
+
+	// Time kept back from the search for Apparate.
+	final private long SEARCH_END_TIME_OFFSET = 20000000;
+
+	// plan to execute
+	private ComputedPlan plan;
+
+	private int stepNo = 0;
+
+	public MemoryBoundedSearch() {
+		this(DEFAULT_FRINGE_CAPACITY, DEFAULT_IDA_MAX_DEPTH, DEFAULT_IDA_TABLE_CAPACITY);
+	}
+
+	/**
+	 * @param fringeCapacity   cells the fringe search may store
+	 * @param idaMaxDepth      longest path IDA* can find, in moves
+	 * @param idaTableCapacity entries in the IDA* transposition table
+	 */
+	public MemoryBoundedSearch(int fringeCapacity, int idaMaxDepth, int idaTableCapacity) {
+		this.fringeCapacity = fringeCapacity;
+		this.idaMaxDepth = idaMaxDepth;
+		this.idaTableCapacity = idaTableCapacity;
+	}
+
+	@Override
+	public GridCell getNextMove(GridDomain map, GridCell start, GridCell goal,
+			int stepLeft, long stepTime, long timeLeft) {
+
+		try {
+			GridCell nextStep = null;
+
+			if (plan == null) {
+				long deadlineTime = System.nanoTime() + timeLeft * MS_TO_NS - SEARCH_END_TIME_OFFSET;
+				plan = generatePlan(map, start, goal, deadlineTime);
+				stepNo = 0;
+			}
+
+			if (plan == null) {
+				if (DEBUG) System.out.println("Could not find goal");
+				return start;
+			}
+
+			if (stepNo < plan.getLength()) {
+				nextStep = (GridCell) plan.getStep(stepNo++);
+
+				if (nextStep == null)
+				{
+					Trace.print("next step is null!");
+				}
+			}
+
+			return nextStep;
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			return start;
+		}
+	}
+
+	private ComputedPlan generatePlan(GridDomain map, GridCell start, GridCell goal,
+			long deadlineTime) {
+
+		GridSnapshot snapshot = new GridSnapshot(map);
+		int startIndex = snapshot.getIndex(start);
+		int goalIndex = snapshot.getIndex(goal);
+
+		FringeSearch fringe = new FringeSearch(snapshot, fringeCapacity);
+		ComputedPlan fringePlan = fringe.search(startIndex, goalIndex, deadlineTime);
+		if (DEBUG) {
+			System.out.println("Fringe expansions: " + fringe.getExpansionCount() +
+					", passes: " + fringe.getIterationCount() +
+					", stored: " + fringe.getStoredCount());
+		}
+		if (fringe.isOutOfMemory() == false) {
+			return fringePlan;
+		}
+
+		if (DEBUG) System.out.println("Fringe table full; falling back on IDA*");
+		IterativeDeepeningAStar ida = new IterativeDeepeningAStar(snapshot,
+				idaMaxDepth, idaTableCapacity);
+		ComputedPlan idaPlan = ida.search(startIndex, goalIndex, deadlineTime);
+		if (DEBUG) {
+			System.out.println("IDA* expansions: " + ida.getExpansionCount() +
+					", iterations: " + ida.getIterationCount());
+		}
+		return idaPlan;
+	}
+
+	// Nothing is kept to show.
+	@Override
+	public Boolean showInfo() {
+		return false;
+	}
+
+	@Override
+	public ArrayList<GridCell> expandedNodes() {
+		return new ArrayList<GridCell>();
+	}
+
+	@Override
+	public ArrayList<GridCell> unexpandedNodes() {
+		return new ArrayList<GridCell>();
+	}
+
+	@Override
+	public ComputedPlan getPath() {
+		return plan;
+	}
+}
@@ -3,6 +3,7 @@ package agents;
 import java.util.ArrayList;
 
 import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.Edge;
 import au.rmit.ract.planning.pathplanning.entity.State;
 import pplanning.interfaces.PlanningAgent;
 import pplanning.simviewer.model.GridCell;
@@ -78,6 +79,10 @@ public class MyCoolAgent implements PlanningAgent
 	// The time remaining on the previous call to getNextMove from Apparate. In milliseconds.
 	private long previousTimeLeft = 0;
 
+	// Flat copy of the map, and the greedy search run on it for incumbents.
+	private GridSnapshot snapshot = null;
+	private GreedyBestFirst greedySearch = null;
+
 
 	/**
 	 * This is the interface function called by Apparate.
@@ -362,33 +367,44 @@ public class MyCoolAgent implements PlanningAgent
 		if (/*!foundDASSolution && */ incumbentPlan != null)
 		{
 			ComputedPlan pathNew = new ComputedPlan();
-			int pathCost = 0;
+			float pathCost = 0;
 			int countGreedy = 0;
 			int countDAS = 0;
 
 			// Used to track the cost between start point and current node
 			boolean DASPathToNodeIsCheaper = false;
 
+			// Step after the current one on the plan, if any
+			GridCell nextCell = null;
+
 			// Combined the DAS partial plan with the greedy solution
 			for (int iterSteps = incumbentPlan.getLength()-1;
 					iterSteps >= 0 ; iterSteps--)
 			{
-				// Step backwards through each step of the greedy search that found the goal
+				// Step backwards through each step of the greedy search that found the goal.
+				// pathCost is the cost of the plan from this cell on.
 				GridCell cell = (GridCell) incumbentPlan.getStep(iterSteps);
+				if (nextCell != null)
+				{
+					pathCost += map.cost(cell, nextCell);
+				}
 				pathNew.prependStep(cell);
-				pathCost += cell.getCellCost();
+				nextCell = cell;
 				countGreedy++;
 				if (mapInfo.cellExists(cell))
 				{
 					// We have hooked up with the DAS partial solution!
 					// Get the upstream from the DAS mapInfo IFF it is cheaper from this point
-					DASPathToNodeIsCheaper = mapInfo.getGCost(cell) + pathCost
-							< incumbentPlan.getCost();
+					DASPathToNodeIsCheaper = FloatUtil.compare(mapInfo.getGCost(cell) + pathCost,
+							incumbentPlan.getCost()) == -1;
 					if (DASPathToNodeIsCheaper)
 					{
+						pathCost += mapInfo.getGCost(cell);
+
+						// The joining cell is already on the plan; add its DAS ancestors.
+						cell = mapInfo.getParent(cell);
 						while (cell != null)
 						{
-							pathCost += cell.getCellCost();
 							pathNew.prependStep(cell);
 							cell = mapInfo.getParent(cell);
 
@@ -503,6 +519,9 @@ public class MyCoolAgent implements PlanningAgent
 	/**
 	 * This is a greedy search to quickly rush to get an incumbent solution
 	 * It's intent is to be as fast as possible, with no thought to the quality of the solution
+	 *
+	 * The snapshot and greedy search are kept between plans, so the search
+	 * allocates nothing per node.
 	 * @param map
 	 * @param start
 	 * @param goal
@@ -510,34 +529,24 @@ public class MyCoolAgent implements PlanningAgent
 	 */
 	private ComputedPlan speedierSearch(GridDomain map, GridCell start, GridCell goal)
 	{
-
-		GreedyMapInfo mapInfo = new GreedyMapInfo(map);
-		float hCost = map.hCost(start, goal);
-		mapInfo.add(start, 0, hCost);
-
-		ComputedPlan incumbentPlan = null;
-
-		while (mapInfo.isOpenEmpty() == false)
+		if (snapshot == null || snapshot.getMap() != map)
 		{
-			GridCell current = mapInfo.closeCheapestOpen();
-			if (current == goal)
+			snapshot = new GridSnapshot(map);
+			greedySearch = new GreedyBestFirst(snapshot);
+		}
+		else
+		{
+			ArrayList<Edge> changedEdges = map.getChangedEdges();
+			if (snapshot.update(changedEdges))
 			{
-				System.out.println("Goal found with speedier search, GCost " + mapInfo.getGCost(current));
-				incumbentPlan = mapInfo.computePlan(current);
-				break;
+				greedySearch.update(changedEdges);
 			}
+		}
 
-			for (State neighbor : map.getSuccessors(current))
-			{
-				if (map.isBlocked(neighbor) == false &&
-						mapInfo.isClosed((GridCell) neighbor) == false &&
-						mapInfo.isOpen((GridCell)neighbor) == false)
-				{
-					float hNeighbor = map.hCost(neighbor, goal);
-					float gNeighbor = mapInfo.getGCost((GridCell)current) + map.cost(current, neighbor);
-					mapInfo.add((GridCell) neighbor, gNeighbor, hNeighbor, current);
-				}
-			}
+		ComputedPlan incumbentPlan = greedySearch.findIncumbent(start, goal);
+		if (incumbentPlan != null)
+		{
+			System.out.println("Goal found with speedier search, GCost " + incumbentPlan.getCost());
 		}
 
 		return incumbentPlan;
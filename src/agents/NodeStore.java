@@ -0,0 +1,98 @@
+package agents;
+
+import java.util.Arrays;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+
+/**
+ * Search node data for every cell of a GridSnapshot, held in primitive
+ * arrays indexed by cell, so that searches allocate nothing per node.
+ *
+ * A store is meant to be kept and reused. Rather than clearing every array
+ * between searches, each cell is stamped with the search ("epoch") that last
+ * generated or closed it; bumping the epoch forgets every node at once.
+ */
+public class NodeStore {
+
+	private GridSnapshot grid;
+
+	// Epoch of the current search. Starts at 1, so zeroed stamps are stale.
+	private int epoch = 0;
+
+	// Epoch in which each cell was last generated, and last closed.
+	private int[] generatedStamps;
+	private int[] closedStamps;
+
+	// Node properties, only meaningful for cells generated this epoch.
+	private int[]   parents;
+	private float[] gCosts;
+
+	public NodeStore(GridSnapshot grid) {
+		this.grid = grid;
+
+		int size = grid.getSize();
+		generatedStamps = new int[size];
+		closedStamps    = new int[size];
+		parents         = new int[size];
+		gCosts          = new float[size];
+
+		clear();
+	}
+
+	/**
+	 * Forget every node, ready for a new search.
+	 */
+	public void clear() {
+		epoch++;
+
+		// Start afresh in the unlikely event of the stamps wrapping around.
+		if (epoch == Integer.MAX_VALUE) {
+			Arrays.fill(generatedStamps, 0);
+			Arrays.fill(closedStamps, 0);
+			epoch = 1;
+		}
+	}
+
+	/**
+	 * Record a node for a cell not yet generated in this search, or replace it.
+	 * @param parent index of the parent cell, or -1 for the start
+	 */
+	public void generate(int cell, float gCost, int parent) {
+		generatedStamps[cell] = epoch;
+		gCosts[cell] = gCost;
+		parents[cell] = parent;
+	}
+
+	public boolean isGenerated(int cell) {
+		return generatedStamps[cell] == epoch;
+	}
+
+	public void close(int cell) {
+		closedStamps[cell] = epoch;
+	}
+
+	public boolean isClosed(int cell) {
+		return closedStamps[cell] == epoch;
+	}
+
+	public float getGCost(int cell) {
+		return gCosts[cell];
+	}
+
+	public int getParent(int cell) {
+		return parents[cell];
+	}
+
+	/**
+	 * Build a plan by walking back through the parents of a cell.
+	 * @return a plan from the start (included) to the cell
+	 */
+	public ComputedPlan computePlan(int goal) {
+		ComputedPlan plan = new ComputedPlan();
+		for (int cell = goal; cell != -1; cell = parents[cell]) {
+			plan.prependStep(grid.getCell(cell));
+		}
+		plan.setCost(gCosts[goal]);
+		return plan;
+	}
+}
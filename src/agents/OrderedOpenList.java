@@ -0,0 +1,170 @@
+package agents;
+
+import java.util.Arrays;
+
+/**
+ * An open list kept in sorted order, as a skip list of cell indices.
+ *
+ * A heap can only give up its cheapest entry. Focal searches (EES, A*_epsilon)
+ * also need every entry within a range of keys, to move into the focal list
+ * as the lowest key rises. Here entries are linked in key order, so a range
+ * is walked with firstAbove() and next() at O(1) a step after an O(log n)
+ * search. Adding and removing any entry is O(log n), where a PriorityQueue
+ * takes O(n) to remove.
+ *
+ * Entries are ordered on their key, then their tie breaking key, then their
+ * index, so no two compare equal. Each index may be in a list at most once,
+ * and its keys must not be changed while it is in the list: remove it, then
+ * add it again.
+ */
+public class OrderedOpenList {
+
+	private final static int MAX_LEVEL = 24;
+
+	// Per index: keys as added, and the next index at each level of its
+	// tower (-1 at the end). Index "head" is a sentinel before the first entry.
+	private float[] keys;
+	private float[] ties;
+	private int[][] forward;
+	private int head;
+
+	// Number of levels in use.
+	private int level = 1;
+
+	private int size = 0;
+
+	// Predecessors at each level, found by a search.
+	private int[] update = new int[MAX_LEVEL];
+
+	// State of the xorshift generator used to pick tower heights.
+	private int seed = 0x2545F491;
+
+	/**
+	 * @param capacity number of indices, which run from 0 to capacity - 1
+	 */
+	public OrderedOpenList(int capacity) {
+		keys = new float[capacity];
+		ties = new float[capacity];
+		forward = new int[capacity + 1][];
+		head = capacity;
+		forward[head] = new int[MAX_LEVEL];
+		Arrays.fill(forward[head], -1);
+	}
+
+	public void add(int index, float key, float tie) {
+		keys[index] = key;
+		ties[index] = tie;
+		findPredecessors(index);
+
+		int height = randomHeight();
+		if (height > level) {
+			for (int i = level; i < height; i++) {
+				update[i] = head;
+			}
+			level = height;
+		}
+
+		// Towers are kept between additions, so each index allocates once.
+		if (forward[index] == null || forward[index].length < height) {
+			forward[index] = new int[height];
+		}
+		int[] tower = forward[index];
+		for (int i = 0; i < height; i++) {
+			tower[i] = forward[update[i]][i];
+			forward[update[i]][i] = index;
+		}
+		for (int i = height; i < tower.length; i++) {
+			tower[i] = -1;
+		}
+		size++;
+	}
+
+	/**
+	 * Remove an index, which must be in the list.
+	 */
+	public void remove(int index) {
+		findPredecessors(index);
+		int[] tower = forward[index];
+		for (int i = 0; i < level && forward[update[i]][i] == index; i++) {
+			forward[update[i]][i] = tower[i];
+		}
+		while (level > 1 && forward[head][level - 1] == -1) {
+			level--;
+		}
+		size--;
+	}
+
+	/** The first index, or -1 if the list is empty. */
+	public int first() {
+		return forward[head][0];
+	}
+
+	/** The index after this one, or -1 if it is the last. */
+	public int next(int index) {
+		return forward[index][0];
+	}
+
+	/**
+	 * The first index with a key greater than the given key, or -1 if there
+	 * is none.
+	 */
+	public int firstAbove(float key) {
+		int node = head;
+		for (int i = level - 1; i >= 0; i--) {
+			int next = forward[node][i];
+			while (next != -1 && keys[next] <= key) {
+				node = next;
+				next = forward[node][i];
+			}
+		}
+		return forward[node][0];
+	}
+
+	public float getKey(int index) {
+		return keys[index];
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Fill update[] with the last entry before the index at each level.
+	 */
+	private void findPredecessors(int index) {
+		int node = head;
+		for (int i = level - 1; i >= 0; i--) {
+			int next = forward[node][i];
+			while (next != -1 && isBefore(next, index)) {
+				node = next;
+				next = forward[node][i];
+			}
+			update[i] = node;
+		}
+	}
+
+	private boolean isBefore(int a, int b) {
+		if (keys[a] != keys[b]) {
+			return keys[a] < keys[b];
+		}
+		if (ties[a] != ties[b]) {
+			return ties[a] < ties[b];
+		}
+		return a < b;
+	}
+
+	/**
+	 * Tower height, with each level half as likely as the one below.
+	 */
+	private int randomHeight() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		int height = 1 + Integer.numberOfTrailingZeros(seed | (1 << (MAX_LEVEL - 1)));
+		return Math.min(height, MAX_LEVEL);
+	}
+}
@@ -0,0 +1,109 @@
+package agents;
+
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * The children of the cell being expanded, gathered so that those above its
+ * f can be held back (Partial Expansion A*, Yoshizumi et al. 2000).
+ *
+ * A deferred cell takes an open entry of its own, and goes stale if its
+ * children are reached from elsewhere first, so holding back one or two
+ * children saves nothing on a grid. Held children are therefore only left
+ * out when at least MIN_HELD_BACK of them are held; otherwise every child is
+ * generated at once.
+ *
+ * Usage: start() the expansion, add() each child that could be generated,
+ * generate those for which isGenerated() holds, then deferHeld().
+ */
+public class PartialExpansion {
+
+	// Hold back the children of a cell above its f, putting it back on the
+	// open set for them. Keeps the open set small on eight connected maps.
+	public final static boolean IS_ENABLED = true;
+
+	// Fewest held children for which the cell is deferred.
+	public final static int MIN_HELD_BACK = 3;
+
+	private GridCell[] cells   = new GridCell[8];
+	private float[]    gCosts  = new float[8];
+	private float[]    hCosts  = new float[8];
+	private boolean[]  isHeld  = new boolean[8];
+	private int        count;
+	private int        heldCount;
+	private float      fLimit;
+
+	/**
+	 * Whether a cell with this many children held back should be deferred,
+	 * leaving them out.
+	 */
+	public static boolean isDeferred(int heldCount) {
+		return IS_ENABLED && heldCount >= MIN_HELD_BACK;
+	}
+
+	/**
+	 * Begin the expansion of a cell.
+	 * @param fLimit children above this f may be held back
+	 */
+	public void start(float fLimit) {
+		this.fLimit = fLimit;
+		count = 0;
+		heldCount = 0;
+	}
+
+	/**
+	 * Whether a child with this f would be held back.
+	 */
+	public boolean isAboveLimit(float fCost) {
+		return IS_ENABLED && FloatUtil.compare(fCost, fLimit) == 1;
+	}
+
+	public void add(GridCell cell, float gCost, float hCost) {
+		boolean isChildHeld = isAboveLimit(gCost + hCost);
+		if (isChildHeld) heldCount++;
+
+		cells[count] = cell;
+		gCosts[count] = gCost;
+		hCosts[count] = hCost;
+		isHeld[count] = isChildHeld;
+		count++;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public GridCell getCell(int i) {
+		return cells[i];
+	}
+
+	public float getGCost(int i) {
+		return gCosts[i];
+	}
+
+	public float getHCost(int i) {
+		return hCosts[i];
+	}
+
+	/**
+	 * Whether a child is generated now rather than held back.
+	 */
+	public boolean isGenerated(int i) {
+		return isHeld[i] == false || isDeferred(heldCount) == false;
+	}
+
+	/**
+	 * Put the expanded cell back on the open set if its held children were
+	 * left out, to be expanded again at the lowest f among them.
+	 */
+	public void deferHeld(PreferredMapInfo mapInfo, GridCell current) {
+		if (isDeferred(heldCount) == false) return;
+
+		float nextFCost = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < count; i++) {
+			if (isHeld[i]) {
+				nextFCost = Math.min(nextFCost, gCosts[i] + hCosts[i]);
+			}
+		}
+		mapInfo.deferCell(current, nextFCost);
+	}
+}
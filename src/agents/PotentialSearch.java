@@ -0,0 +1,183 @@
+package agents;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * Potential search (Stern, Puzis & Felner 2011) for plans under a cost bound.
+ *
+ * Cells are expanded in order of their potential, (C - g) / h, the room left
+ * under the bound C for each unit of estimated cost still to go, which with a
+ * linear error in h orders cells by how likely they are to lead to a plan
+ * under the bound. Cells whose g + h reaches the bound cannot lead to one and
+ * are never generated, and the search stops as soon as it generates the goal
+ * under the bound, so it does not look for anything cheaper.
+ *
+ * The open list is keyed on h / (C - g), the inverse of the potential, so
+ * that the goal comes first. The order is close to greedy, so cells are often
+ * expanded before their cheapest path is found, and reopening them each time
+ * can cost several times the expansions of A*. Expanded cells are therefore
+ * never reopened, which under a loose bound nearly always still finds a
+ * plan. Should that fail having passed over a cheaper path, the search is
+ * made again in order of f, as A*, which needs no reopening as h is
+ * consistent, and finds a plan if there is one. Node data lives in a
+ * NodeStore and the open list is indexed by cell, so a search allocates
+ * nothing but its plan.
+ */
+public class PotentialSearch implements BoundedCostPlanner {
+
+	// Expansions between checks of the clock.
+	private final static int CLOCK_INTERVAL = 1024;
+
+	private GridSnapshot grid;
+	private NodeStore nodes;
+	private OrderedOpenList openList;
+	private boolean[] isOpen;
+
+	// Time allowed for the next search, or 0 for no limit.
+	private long timeLimit = 0;
+
+	private int expansionCount = 0;
+
+	// Has the last pass passed over a cheaper path to an expanded cell?
+	private boolean isReopeningSkipped = false;
+
+	public PotentialSearch(GridSnapshot grid) {
+		this.grid = grid;
+		this.nodes = new NodeStore(grid);
+		this.openList = new OrderedOpenList(grid.getSize());
+		this.isOpen = new boolean[grid.getSize()];
+	}
+
+	/**
+	 * Limit the time of the next search. A search that runs out of time
+	 * returns no plan.
+	 * @param timeLimit nanoseconds, or 0 for no limit
+	 */
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+
+	public ComputedPlan findPlanUnder(GridCell start, GridCell goal, float costBound) {
+		return search(grid.getIndex(start), grid.getIndex(goal), costBound);
+	}
+
+	/**
+	 * Find a path between two cells costing less than a bound.
+	 * @param start     index of the cell to search from
+	 * @param goal      index of the cell to search to
+	 * @param costBound the plan must cost less than this
+	 * @return a plan from start to goal (including start), or null if there is
+	 *         none under the bound, or time ran out first
+	 */
+	public ComputedPlan search(int start, int goal, float costBound) {
+		long deadline = System.nanoTime() + timeLimit;
+		expansionCount = 0;
+
+		if (grid.isPassable(start) == false || grid.isPassable(goal) == false ||
+				FloatUtil.compare(grid.getHCost(start, goal), costBound) != -1) {
+			return null;
+		}
+
+		ComputedPlan plan = search(start, goal, costBound, true, deadline);
+		if (plan == null && isReopeningSkipped &&
+				(timeLimit == 0 || System.nanoTime() < deadline)) {
+			plan = search(start, goal, costBound, false, deadline);
+		}
+		return plan;
+	}
+
+	/**
+	 * Make one pass of the search.
+	 * @param isPotentialOrder expand cells in order of potential, rather than f
+	 */
+	private ComputedPlan search(int start, int goal, float costBound,
+			boolean isPotentialOrder, long deadline) {
+		nodes.clear();
+		isReopeningSkipped = false;
+		nodes.generate(start, 0f, -1);
+		if (start == goal) {
+			return nodes.computePlan(goal);
+		}
+		addToOpen(start, getKey(start, goal, 0f, costBound, isPotentialOrder), 0f);
+
+		ComputedPlan plan = null;
+		int[] directions = grid.getDirections();
+		while (openList.isEmpty() == false) {
+			if (++expansionCount % CLOCK_INTERVAL == 0 && timeLimit != 0 &&
+					System.nanoTime() > deadline) {
+				break;
+			}
+			int current = openList.first();
+			removeFromOpen(current);
+
+			float gCost = nodes.getGCost(current);
+			for (int i = 0; i < directions.length; i++) {
+				int neighbour = grid.getNeighbour(current, directions[i]);
+				if (neighbour == -1) {
+					continue;
+				}
+				float childGCost = gCost + grid.getCost(neighbour);
+				if (FloatUtil.compare(childGCost + grid.getHCost(neighbour, goal), costBound) != -1) {
+					continue;
+				}
+				if (nodes.isGenerated(neighbour)) {
+					if (FloatUtil.compare(childGCost, nodes.getGCost(neighbour)) != -1) {
+						continue;
+					}
+					if (isOpen[neighbour]) {
+						removeFromOpen(neighbour);
+					} else {
+						isReopeningSkipped = true;
+						continue;
+					}
+				}
+				nodes.generate(neighbour, childGCost, current);
+
+				// Stop at the first plan under the bound.
+				if (neighbour == goal) {
+					plan = nodes.computePlan(goal);
+					break;
+				}
+
+				// Ties go to the cell furthest along.
+				addToOpen(neighbour,
+						getKey(neighbour, goal, childGCost, costBound, isPotentialOrder), -childGCost);
+			}
+			if (plan != null) {
+				break;
+			}
+		}
+
+		while (openList.isEmpty() == false) {
+			removeFromOpen(openList.first());
+		}
+		return plan;
+	}
+
+	private void addToOpen(int cell, float key, float tie) {
+		openList.add(cell, key, tie);
+		isOpen[cell] = true;
+	}
+
+	private void removeFromOpen(int cell) {
+		openList.remove(cell);
+		isOpen[cell] = false;
+	}
+
+	/**
+	 * The open list key of a cell: the inverse of its potential, h / (C - g),
+	 * or its f. Only cells with g + h under the bound are generated, so C - g
+	 * is positive.
+	 */
+	private float getKey(int cell, int goal, float gCost, float costBound,
+			boolean isPotentialOrder) {
+		float hCost = grid.getHCost(cell, goal);
+		return isPotentialOrder ? hCost / (costBound - gCost) : gCost + hCost;
+	}
+
+	/** Number of cells expanded by the last search, over both passes. */
+	public int getExpansionCount() {
+		return expansionCount;
+	}
+}
@@ -21,10 +21,14 @@ import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
  * Direct access to CellInfo instances cannot be provided to ensure that a cell
  * is always present in the open queue when it is in the open set.
  *
+ * The open set is an OrderedOpenList, ordered on queued f then h, so that a
+ * cell taken from the preferred queue, or given a cheaper g, comes out of the
+ * open set in O(log n).
+ *
  * I have used assertions instead of exceptions for speed (since we can disable
  * them on run).
  */
-public class PreferredMapInfo implements Comparator<GridCell> {
+public class PreferredMapInfo {
 
 	// Used in the case of tiebreakers after f and h.
 	static Random rand = new Random(System.nanoTime());
@@ -36,29 +40,51 @@ public class PreferredMapInfo implements Comparator<GridCell> {
 
 	private int closedCount = 0;
 
-	// Priority queues for open and pruned sets.
-	private PriorityQueue<GridCell> openQueue;
+	// Open set, indexed by y * width + x.
+	private OrderedOpenList openQueue;
+	private int width;
+
+	// Open cells reached by a preferred move, cheapest h first. A subset of
+	// the open set; entries for cells that have since been closed are skipped
+	// when they come up.
+	private PriorityQueue<GridCell> preferredQueue;
 
 	// Cell properties.
 	private CellSetMembership[][] sets;
+	private boolean[][]           isPreferredQueued;
 	private GridCell[][]          parents;
 	private float[][]             gCosts;
 	private float[][]             hCosts;
 
+	// F of partially expanded cells: the lowest f among the children not yet
+	// generated. Zero for cells that have not been partially expanded.
+	private float[][]             fBounds;
+
+	// Largest size the open set has reached.
+	private int peakOpenCount = 0;
+
 	private final int INITIAL_QUEUE_CAPACITY = 11;
 
 	public PreferredMapInfo(GridDomain map) {
 		this.map = map;
-		int width = map.getWidth();
+		this.width = map.getWidth();
 		int height = map.getHeight();
 
 		this.sets                 = new CellSetMembership[width][height];
+		this.isPreferredQueued    = new boolean[width][height];
 		this.gCosts               = new float[width][height];
 		this.hCosts               = new float[width][height];
 		this.parents              = new GridCell[width][height];
-
-		// Initialize queues for open and pruned sets.
-		this.openQueue = new PriorityQueue<GridCell>(INITIAL_QUEUE_CAPACITY, this);
+		this.fBounds              = new float[width][height];
+
+		// Initialize queues for open and preferred sets.
+		this.openQueue = new OrderedOpenList(width * height);
+		this.preferredQueue = new PriorityQueue<GridCell>(INITIAL_QUEUE_CAPACITY,
+				new Comparator<GridCell>() {
+					public int compare(GridCell a, GridCell b) {
+						return FloatUtil.compare(getHCost(a), getHCost(b));
+					}
+				});
 	}
 
 	public ComputedPlan computePlan(GridCell goal)
@@ -106,7 +132,7 @@ public class PreferredMapInfo implements Comparator<GridCell> {
 
 		// Add to open set.
 		sets[x][y] = CellSetMembership.OPEN;
-		openQueue.offer(cell);
+		offerOpen(cell);
 	}
 
 	/**
@@ -126,7 +152,37 @@ public class PreferredMapInfo implements Comparator<GridCell> {
 
 		// Add to open set
 		sets[x][y] = CellSetMembership.OPEN;
-		openQueue.offer(cell);
+		offerOpen(cell);
+	}
+
+	/**
+	 * Return a partially expanded cell to the open set (Partial Expansion A*,
+	 * Yoshizumi et al. 2000). It will be expanded again, generating the
+	 * children it held back, once the search reaches the next f cost.
+	 * @param cell      a cell that has just been closed
+	 * @param nextFCost the lowest f among the children not yet generated
+	 */
+	public void deferCell(GridCell cell, float nextFCost) {
+		if (getSetMembership(cell) != CellSetMembership.CLOSED) {
+			throw new IllegalArgumentException("Cannot defer cell " + cell +
+					", which is not closed.");
+		}
+
+		GridCoord gc = cell.getCoord();
+		fBounds[gc.getX()][gc.getY()] = nextFCost;
+		sets[gc.getX()][gc.getY()] = CellSetMembership.OPEN;
+		closedCount--;
+		offerOpen(cell);
+	}
+
+	/**
+	 * Queue an open cell on its queued f, breaking ties on h.
+	 */
+	private void offerOpen(GridCell cell) {
+		openQueue.add(getIndex(cell), getQueuedFCost(cell), getHCost(cell));
+		if (openQueue.size() > peakOpenCount) {
+			peakOpenCount = openQueue.size();
+		}
 	}
 
 	/**
@@ -145,6 +201,13 @@ public class PreferredMapInfo implements Comparator<GridCell> {
 		return openQueue.size();
 	}
 
+	/**
+	 * Returns the largest number of cells the open set has held.
+	 */
+	public int getPeakOpenCount() {
+		return peakOpenCount;
+	}
+
 	/*
 	 * This function just points out that we need a structure for closed list.
 	 * It is only used for debugging of the output of closed list.
@@ -159,13 +222,16 @@ public class PreferredMapInfo implements Comparator<GridCell> {
 	 */
 	public GridCell closeCheapestOpen()
 	{
-		GridCell cell = openQueue.poll();
+		int index = openQueue.first();
 
-		if (cell == null) {
+		if (index == -1) {
 			throw new IllegalStateException(
 					"Open set is empty - cannot close cheapest open cell");
 		}
 
+		openQueue.remove(index);
+		GridCell cell = map.getCell(index % width, index / width);
+
 		GridCoord gc = cell.getCoord();
 		sets[gc.getX()][gc.getY()] = CellSetMembership.CLOSED;
 		closedCount++;
@@ -173,6 +239,56 @@ public class PreferredMapInfo implements Comparator<GridCell> {
 		return cell;
 	}
 
+	/**
+	 * Also queue an open cell as preferred. It stays in the open set, and may
+	 * be taken from either queue. A cell already queued as preferred is not
+	 * queued again, as its h, and so its place, has not changed.
+	 */
+	public void markPreferred(GridCell cell) {
+		if (isOpen(cell) == false) {
+			throw new IllegalArgumentException("Cannot prefer cell " + cell +
+					", which is not open.");
+		}
+		GridCoord gc = cell.getCoord();
+		if (isPreferredQueued[gc.getX()][gc.getY()] == false) {
+			isPreferredQueued[gc.getX()][gc.getY()] = true;
+			preferredQueue.offer(cell);
+		}
+	}
+
+	/**
+	 * Move the preferred open cell with the lowest h to the closed set and
+	 * return it.
+	 * @return the cell, or null if no preferred cell is still open
+	 */
+	public GridCell closeBestPreferred() {
+		GridCell cell;
+		do {
+			cell = preferredQueue.poll();
+			if (cell == null) {
+				return null;
+			}
+			GridCoord gc = cell.getCoord();
+			isPreferredQueued[gc.getX()][gc.getY()] = false;
+		} while (isOpen(cell) == false);
+
+		openQueue.remove(getIndex(cell));
+
+		GridCoord gc = cell.getCoord();
+		sets[gc.getX()][gc.getY()] = CellSetMembership.CLOSED;
+		closedCount++;
+
+		return cell;
+	}
+
+	/**
+	 * Lowest queued f cost in the open set, or infinity if it is empty.
+	 */
+	public float getCheapestOpenFCost() {
+		int index = openQueue.first();
+		return index == -1 ? Float.POSITIVE_INFINITY : openQueue.getKey(index);
+	}
+
 	public GridCell getParent(GridCell cell) {
 		GridCoord gc = cell.getCoord();
 		return parents[gc.getX()][gc.getY()];
@@ -187,27 +303,32 @@ public class PreferredMapInfo implements Comparator<GridCell> {
 		return getGCost(cell) + WEIGHT * getHCost(cell);
 	}
 
+	/**
+	 * F cost a cell is queued on: its f, or the f of its next held back child
+	 * once it has been partially expanded.
+	 */
+	public float getQueuedFCost(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		return Math.max(getFCost(cell), fBounds[gc.getX()][gc.getY()]);
+	}
+
 	public float getGCost(GridCell cell) {
 		GridCoord gc = cell.getCoord();
 		return gCosts[gc.getX()][gc.getY()];
 	}
 
-	private void setQueuedGCost(GridCell cell, float gCost, PriorityQueue<GridCell> queue) {
-		// Remove node from priority queue. (Changing its g cost in place would
-		// cause the heaps to become unsorted.)
-		boolean wasPresent = queue.remove(cell);
-
-		// Ensure that it was indeed in the open set.
-		if (wasPresent == false) {
-			throw new IllegalArgumentException("Cell was not found priority queue!");
-		}
+	private void setQueuedGCost(GridCell cell, float gCost) {
+		// Remove node from the open list. (Its keys must not change while it is
+		// in the list.)
+		openQueue.remove(getIndex(cell));
 
-		// Update g cost.
+		// Update g cost. Every child must be generated again from the new g.
 		GridCoord gc = cell.getCoord();
 		gCosts[gc.getX()][gc.getY()] = gCost;
+		fBounds[gc.getX()][gc.getY()] = 0f;
 
 		// Reinsert node sorted.
-		queue.offer(cell);
+		offerOpen(cell);
 	}
 
 	public void setGCost(GridCell cell, float gCost) {
@@ -216,10 +337,11 @@ public class PreferredMapInfo implements Comparator<GridCell> {
 			case CLOSED: {
 				GridCoord gc = cell.getCoord();
 				gCosts[gc.getX()][gc.getY()] = gCost;
+				fBounds[gc.getX()][gc.getY()] = 0f;
 				break;
 			}
 			case OPEN: {
-				setQueuedGCost(cell, gCost, openQueue);
+				setQueuedGCost(cell, gCost);
 				break;
 			}
 			default: {
@@ -277,24 +399,9 @@ public class PreferredMapInfo implements Comparator<GridCell> {
 		return getSetMembership(cell) == CellSetMembership.CLOSED;
 	}
 
-	/* -- GRID CELL COMPARATOR -- */
-
-	/**
-	 * Compare two grid cells. Compares
-	 * cells on their f cost, breaking ties on h.
-	 * @param a grid cell 1
-	 * @param b grid cell 2
-	 * @return 0, -1 or 1 if a is equal to, less than or greater than b respectively
-	 */
-	public int compare(GridCell a, GridCell b) {
-		// Compare total cost estimate.
-		int fCompare = FloatUtil.compare(getFCost(a), getFCost(b));
-		if (fCompare != 0) {
-			return fCompare;
-		}
-
-		// Break ties on heuristic estimate.
-		return FloatUtil.compare(getHCost(a), getHCost(b));
+	private int getIndex(GridCell cell) {
+		GridCoord gc = cell.getCoord();
+		return gc.getY() * width + gc.getX();
 	}
 
 	void printCell(GridCell cell)
@@ -333,6 +440,10 @@ public class PreferredMapInfo implements Comparator<GridCell> {
 
 	/** Return an ArrayList of all GridCells currently in the open set. */
 	public ArrayList<GridCell> getOpenArrayList() {
-		return new ArrayList<GridCell>(openQueue);
+		ArrayList<GridCell> open = new ArrayList<GridCell>(openQueue.size());
+		for (int index = openQueue.first(); index != -1; index = openQueue.next(index)) {
+			open.add(map.getCell(index % width, index / width));
+		}
+		return open;
 	}
 }
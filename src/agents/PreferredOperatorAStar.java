@@ -8,6 +8,7 @@ import java.util.Set;
 import java.util.HashSet;
 
 import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.Edge;
 import au.rmit.ract.planning.pathplanning.entity.State;
 import au.rmit.ract.planning.pathplanning.entity.Plan;
 import au.rmit.ract.planning.pathplanning.entity.SearchDomain;
@@ -17,9 +18,24 @@ import pplanning.simviewer.model.GridDomain;
 
 public class PreferredOperatorAStar implements PlanningAgent {
 
+	private final static boolean DEBUG = false;
+
+	// Preferred cells taken for each cell taken from the open set.
+	private final static int PREFERRED_BOOST = 4;
+
+	private final long MS_TO_NS = 1000000;
+
+	// Time kept back from the search for Apparate.
+	final private long SEARCH_END_TIME_OFFSET = 20000000;
+
 	private ComputedPlan plan;
 	PreferredMapInfo mapInfo;
 
+	// Kept between calls, and brought up to date with the map's changes.
+	// Dead ends are found again after a change, when next needed.
+	private GridSnapshot snapshot = null;
+	private DeadEndRegions deadEnds = null;
+
 	private int stepNo = 0;
 
 	private GridCell lastGoal = null;
@@ -31,6 +47,8 @@ public class PreferredOperatorAStar implements PlanningAgent {
 		try {
 			GridCell nextStep = null;
 
+			updateSnapshot(map);
+
       /*
 			boolean replan =
 				plan == null                     ||			// no last path stored, have yet notr planned before?
@@ -41,7 +59,8 @@ public class PreferredOperatorAStar implements PlanningAgent {
 
 			//if (replan) {
 			if (plan == null) {
-				plan = generatePlan(map, start, goal);
+				long deadlineTime = System.nanoTime() + timeLeft * MS_TO_NS - SEARCH_END_TIME_OFFSET;
+				plan = generatePlan(map, start, goal, deadlineTime);
 				stepNo = 0;
 				lastGoal = goal;
 			}
@@ -68,49 +87,171 @@ public class PreferredOperatorAStar implements PlanningAgent {
 		}
 	}
 
+	/**
+	 * Create the snapshot on the first call, or for a new map, and bring it up
+	 * to date with the map's changes otherwise.
+	 */
+	private void updateSnapshot(GridDomain map) {
+		ArrayList<Edge> changedEdges = map.getChangedEdges();
+		if (snapshot == null || snapshot.getMap() != map) {
+			snapshot = new GridSnapshot(map);
+			deadEnds = null;
+		} else if (snapshot.update(changedEdges)) {
+			deadEnds = null;
+		}
+	}
+
+	/**
+	 * A* with a second, preferred open list (after the preferred operators of
+	 * Fast Downward, Helmert 2006).
+	 *
+	 * A move is preferred if it lowers h, or if it steps onto the greedy plan
+	 * found by jump point search. Cells reached by a preferred move are queued
+	 * on the preferred list (cheapest h first) as well as the open set, and
+	 * the preferred list is served PREFERRED_BOOST times for each turn of the
+	 * open set. This runs down towards the goal much like a greedy search, so
+	 * solutions come early, while the open set keeps the search complete.
+	 *
+	 * Cells can then be expanded before their g is optimal, so closed cells are
+	 * reopened when a cheaper path is found. The greedy plan is the first
+	 * incumbent. Cells that cannot beat the incumbent are never queued, and
+	 * the search ends, with an optimal plan, once none in the open set can.
+	 */
 	private ComputedPlan generatePlan(GridDomain map, GridCell start,
-			GridCell goal) {
+			GridCell goal, long deadlineTime) {
 
 		int updateCount = 0;
+		long startTime = System.nanoTime();
+
+		// Skip dead ends that no path between start and goal can enter.
+		if (deadEnds == null) {
+			deadEnds = new DeadEndRegions(snapshot);
+		}
+		deadEnds.setQuery(snapshot.getIndex(start), snapshot.getIndex(goal));
 
 		mapInfo = new PreferredMapInfo(map);
+		int goalIndex = snapshot.getIndex(goal);
+
+		// The greedy plan is the first incumbent, and its cells are preferred.
+		ComputedPlan incumbent = new JumpPointProvider(snapshot).findIncumbent(start, goal);
+		float bound = Float.POSITIVE_INFINITY;
+		boolean[] isOnGreedyPlan = new boolean[snapshot.getSize()];
+		if (incumbent != null) {
+			bound = incumbent.getCost();
+			for (int i = 0; i < incumbent.getLength(); i++) {
+				isOnGreedyPlan[snapshot.getIndex((GridCell) incumbent.getStep(i))] = true;
+			}
+			if (DEBUG) System.out.println("greedy plan cost = " + bound);
+		}
+
+		// initialize open set with start node. Partial expansion needs the
+		// integral, consistent chessboard/manhattan estimate rather than
+		// Apparate's euclidean hCost: children then mostly tie on f with their
+		// parent, and a parent's f never exceeds its children's.
+		mapInfo.addStartCell(start, snapshot.getHCost(snapshot.getIndex(start), goalIndex));
 
-		// initialize open set with start node
-		mapInfo.addStartCell(start, map.hCost(start, goal));
+		// children of the cell being expanded
+		PartialExpansion children = new PartialExpansion();
 
-		// repeat while states are left in open set
-		while (mapInfo.isOpenEmpty() == false) {
-			GridCell current = mapInfo.closeCheapestOpen();
+		// preferred cells taken since the open set was last served
+		int preferredTurns = 0;
 
-			// if goal has been reached, return path
+		// repeat while states are left in open set that might beat the incumbent
+		while (FloatUtil.compare(mapInfo.getCheapestOpenFCost(), bound) == -1) {
+
+			if (System.nanoTime() > deadlineTime) {
+				if (DEBUG) System.out.println("Out of time; returning incumbent");
+				break;
+			}
+
+			// take a preferred cell if it is their turn and one is left
+			GridCell current = null;
+			boolean isPreferredTurn = preferredTurns < PREFERRED_BOOST;
+			if (isPreferredTurn) {
+				current = mapInfo.closeBestPreferred();
+			}
+			if (current == null) {
+				current = mapInfo.closeCheapestOpen();
+				isPreferredTurn = false;
+				preferredTurns = 0;
+			} else {
+				preferredTurns++;
+			}
+
+			// preferred cells are not taken in f order, so may not beat the incumbent
+			if (FloatUtil.compare(mapInfo.getFCost(current), bound) != -1) continue;
+
+			// if goal has been reached, it is the new incumbent
 			if (current == goal) {
-				System.out.println("update count = " + updateCount);
-				return mapInfo.computePlan(goal);
+				bound = mapInfo.getGCost(goal);
+				incumbent = mapInfo.computePlan(goal);
+				if (DEBUG) System.out.println("solution cost = " + bound + " after " +
+						(System.nanoTime() - startTime) / 1000000 + "ms");
+				continue;
 			}
 
+			// children above this f may be held back for a later expansion.
+			// Preferred turns generate everything, as they run ahead of f.
+			children.start(isPreferredTurn ? Float.POSITIVE_INFINITY : mapInfo.getQueuedFCost(current));
+			float parentHCost = mapInfo.getHCost(current);
+
 			// iterate through neighboring nodes
 			for (State state : map.getSuccessors(current)) {
 				GridCell neighbor = (GridCell) state;
 
-				// consider node if it can be entered and is not in closed list
+				// consider node if it can be entered
 				if (map.isBlocked(neighbor)) continue;
 
+				// skip dead ends off the path between start and goal
+				if (deadEnds.isDeadEnd(snapshot.getIndex(neighbor))) continue;
+
 				// get g cost of neighbor
 				float gCost = mapInfo.getGCost(current) + map.cost(current, neighbor);
+				float hCost = snapshot.getHCost(snapshot.getIndex(neighbor), goalIndex);
+
+				// skip children that cannot beat the incumbent, or that have
+				// already been reached as cheaply
+				if (FloatUtil.compare(gCost + hCost, bound) != -1) continue;
+				if (mapInfo.getSetMembership(neighbor) != CellSetMembership.NONE &&
+						FloatUtil.compare(gCost, mapInfo.getGCost(neighbor)) != -1) continue;
+
+				// children above current's f can wait
+				children.add(neighbor, gCost, hCost);
+			}
+
+			for (int i = 0; i < children.getCount(); i++) {
+				if (children.isGenerated(i) == false) continue;
+
+				GridCell neighbor = children.getCell(i);
+				float gCost = children.getGCost(i);
 
 				if (mapInfo.getSetMembership(neighbor) == CellSetMembership.NONE) {
 					// Node not previously encountered, add it to the open set.
-					mapInfo.add(neighbor, gCost, map.hCost(neighbor, goal), current);
-				} else if (FloatUtil.compare(gCost, mapInfo.getGCost(neighbor)) == -1) {
+					mapInfo.add(neighbor, gCost, children.getHCost(i), current);
+				} else {
 					updateCount++;
-					// Cheaper route to node found to node in the open set.
+					// Cheaper route found. Closed cells may have been expanded
+					// too early, so go back on the open set.
 					mapInfo.setGCost(neighbor, gCost);
 					mapInfo.setParent(neighbor, current);
+					if (mapInfo.isClosed(neighbor)) {
+						mapInfo.reopenCell(neighbor);
+					}
+				}
+
+				// a move that lowers h, or joins the greedy plan, is preferred
+				if (FloatUtil.compare(children.getHCost(i), parentHCost) == -1 ||
+						isOnGreedyPlan[snapshot.getIndex(neighbor)]) {
+					mapInfo.markPreferred(neighbor);
 				}
 			}
+
+			children.deferHeld(mapInfo, current);
 		}
-		// No goal found.
-		return null;
+
+		if (DEBUG) System.out.println("update count = " + updateCount);
+		if (DEBUG) System.out.println("peak open count = " + mapInfo.getPeakOpenCount());
+		return incumbent;
 	}
 
 	// Do we want to show extra info? (e.g., close and open nodes, current path)
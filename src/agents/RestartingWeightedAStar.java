@@ -11,6 +11,19 @@ import pplanning.interfaces.PlanningAgent;
 import pplanning.simviewer.model.GridCell;
 import pplanning.simviewer.model.GridDomain;
 
+/**
+ * Restarting weighted A* (Richter, Thayer & Ruml 2010): search with a high
+ * weight on h for a first solution, then restart from the start with a lower
+ * weight, keeping what was learned about g, to find better ones.
+ *
+ * Rather than lowering the weight by a fixed rate, each restart picks the
+ * lowest weight whose search is predicted to finish before the deadline.
+ * Expansion time is measured over a sliding window, as in
+ * DeadlineAwareSearch, to give the expansions remaining, and the expansions a
+ * search will take at a weight are predicted from those taken by the last
+ * two, which grow roughly as a power of the fall in weight. If no lower
+ * weight is predicted to finish, the search stops and keeps its incumbent.
+ */
 public class RestartingWeightedAStar implements PlanningAgent {
 	// plan to execute
 	private ComputedPlan plan;
@@ -23,12 +36,38 @@ public class RestartingWeightedAStar implements PlanningAgent {
 	final ThreadMXBean threadMX = ManagementFactory.getThreadMXBean();
 
 	private final float INITIAL_H_WEIGHT = 5.0f;
-	private final float DECAY_RATE = 0.6f;
+
+	// A restart must lower the weight to at least this share of the last.
+	private final float MAX_DECAY_RATE = 0.9f;
+
+	// Room left for error in the predicted expansions of a restart.
+	private final float EXPANSION_SAFETY_FACTOR = 1.5f;
+
+	// Bounds on the power of the fall in weight that expansions grow by, and
+	// the power assumed before two searches have been measured.
+	private final double MIN_GROWTH_EXPONENT = 0.5;
+	private final double MAX_GROWTH_EXPONENT = 4.0;
+	private final double DEFAULT_GROWTH_EXPONENT = 2.0;
+
+	// Length of the sliding window of expansion times, in expansions.
+	private final int EXPANSION_TIME_WINDOW_LENGTH = 100;
+
+	// Time between expansions, for the expansions remaining.
+	private SlidingWindow expansionTimeWindow = new SlidingWindow(
+			EXPANSION_TIME_WINDOW_LENGTH);
+
+	// Weights and expansions of the last two searches, most recent first.
+	private float[] searchWeights = new float[2];
+	private int[] searchExpansionCounts = new int[2];
+	private int searchCount = 0;
 
 	private final long MS_TO_NS = 1000000;
 	
 	final private long SEARCH_END_TIME_OFFSET = 20000000;
 
+	// Solutions found by the last search.
+	private SolutionLog solutionLog = new SolutionLog();
+
 	@Override
 	public GridCell getNextMove(GridDomain map, GridCell start, GridCell goal,
 			int stepLeft, long stepTime, long timeLeft) {
@@ -74,6 +113,7 @@ public class RestartingWeightedAStar implements PlanningAgent {
 		// Initialize timer stuff.
 		assert threadMX.isCurrentThreadCpuTimeSupported();
 		threadMX.setThreadCpuTimeEnabled(true);
+		solutionLog.start(threadMX.getCurrentThreadCpuTime());
 
 		// Incumbent plan.
 		ComputedPlan solution = null;
@@ -86,9 +126,21 @@ public class RestartingWeightedAStar implements PlanningAgent {
 		// Initialize open set with start node.
 		mapInfo.add(start, 0f, map.hCost(start, goal), null);
 
+		expansionTimeWindow.reset();
+		searchCount = 0;
+		int expansionCount = 0;
+		long timeAtLastExpansion = threadMX.getCurrentThreadCpuTime();
+
 		// Repeat while there are states in open set and time left.
-		while (mapInfo.isOpenEmpty() == false &&
-				threadMX.getCurrentThreadCpuTime() < deadlineTime) {
+		while (mapInfo.isOpenEmpty() == false) {
+
+			long currentTime = threadMX.getCurrentThreadCpuTime();
+			if (currentTime >= deadlineTime) {
+				break;
+			}
+			expansionTimeWindow.push(currentTime - timeAtLastExpansion);
+			timeAtLastExpansion = currentTime;
+			expansionCount++;
 
 			GridCell current = mapInfo.closeCheapestOpen();
 
@@ -149,13 +201,21 @@ public class RestartingWeightedAStar implements PlanningAgent {
 
 				// Store incumbent.
 				solution = mapInfo.computePlan(goal);
-				bound = solution.getLength();
+				bound = solution.getCost();
+				solutionLog.record(threadMX.getCurrentThreadCpuTime(), solution.getCost());
 
 				// Clear open and closed sets.
 				mapInfo.moveAllToSeen();
 
-				// Update weight.
-				mapInfo.setHWeight(Math.max(1.0f, mapInfo.getHWeight() * DECAY_RATE));
+				// Update weight, or stop if no restart can finish.
+				recordSearch(mapInfo.getHWeight(), expansionCount);
+				expansionCount = 0;
+				float hWeight = chooseHWeight(deadlineTime);
+				if (hWeight < 0f) {
+					Trace.print("no restart can finish, keeping incumbent");
+					break;
+				}
+				mapInfo.setHWeight(hWeight);
 
 				Trace.print("new weight = " + mapInfo.getHWeight());
 
@@ -168,6 +228,85 @@ public class RestartingWeightedAStar implements PlanningAgent {
 		return solution;
 	}
 
+	/**
+	 * Note the weight of a search that has found a solution, and the cells it
+	 * expanded.
+	 */
+	private void recordSearch(float hWeight, int expansionCount) {
+		searchWeights[1] = searchWeights[0];
+		searchExpansionCounts[1] = searchExpansionCounts[0];
+		searchWeights[0] = hWeight;
+		searchExpansionCounts[0] = Math.max(1, expansionCount);
+		searchCount++;
+	}
+
+	/**
+	 * Choose the weight of the next search: the lowest predicted to finish in
+	 * the expansions remaining. Expansions are taken to grow as
+	 *
+	 *       e(w) = e_last * (w_last / w)^k
+	 *
+	 *       where e_last and w_last are those of the last search
+	 *         and k is fitted to the last two searches
+	 *
+	 * which is solved for w with e(w) set to the expansions remaining.
+	 * @param deadlineTime the CPU time the search must end by (ns)
+	 * @return the next weight, or -1 if no weight low enough to be worth a
+	 *         restart is predicted to finish
+	 */
+	private float chooseHWeight(long deadlineTime) {
+		float lastHWeight = searchWeights[0];
+		if (lastHWeight <= 1.0f) {
+			return -1f;
+		}
+
+		double exponent = DEFAULT_GROWTH_EXPONENT;
+		if (searchCount > 1 && searchWeights[1] > searchWeights[0]) {
+			exponent = Math.log((double) searchExpansionCounts[0] / searchExpansionCounts[1]) /
+					Math.log((double) searchWeights[1] / searchWeights[0]);
+			exponent = Math.max(MIN_GROWTH_EXPONENT, Math.min(MAX_GROWTH_EXPONENT, exponent));
+		}
+
+		double expansionsRemaining = calculateExpansionsRemaining(deadlineTime) /
+				EXPANSION_SAFETY_FACTOR;
+		if (expansionsRemaining < 1) {
+			return -1f;
+		}
+		double hWeight = lastHWeight *
+				Math.pow(searchExpansionCounts[0] / expansionsRemaining, 1.0 / exponent);
+		hWeight = Math.max(1.0, hWeight);
+
+		Trace.print("expansions remaining " + (long) expansionsRemaining +
+				", growth exponent " + exponent + ", weight " + hWeight);
+
+		// Weights above 1 must fall by at least MAX_DECAY_RATE to be worth a
+		// restart, but the final optimal search is always worth one, even from
+		// a last weight within that rate of 1.
+		if (hWeight > 1.0 && hWeight > lastHWeight * MAX_DECAY_RATE) {
+			return -1f;
+		}
+		return (float) hWeight;
+	}
+
+	/**
+	 * Get the predicted number of expansions that can be performed before the
+	 * deadline, at the current average expansion rate (see
+	 * DeadlineAwareSearch.calculateExpansionsRemaining()).
+	 * @param deadlineTime the CPU time of the deadline, in nanoseconds
+	 * @return expansions remaining
+	 */
+	private double calculateExpansionsRemaining(long deadlineTime) {
+		double averageExpTime = Math.max(1.0, expansionTimeWindow.getAvg());
+		return (deadlineTime - threadMX.getCurrentThreadCpuTime()) / averageExpTime;
+	}
+
+	/**
+	 * Solutions found by the last search, and when.
+	 */
+	public SolutionLog getSolutionLog() {
+		return solutionLog;
+	}
+
 	// Do we want to show extra info? (e.g., close and open nodes, current path)
 	@Override
 	public Boolean showInfo() {
@@ -37,6 +37,10 @@ public class RwaMapInfo implements Comparator<GridCell> {
 	// Priority queues for open and pruned sets.
 	private PriorityQueue<GridCell> openQueue;
 
+	// Every cell that has been added, in the order added. Cells never leave
+	// the sets, so restarts and debug output only need to visit these.
+	private ArrayList<GridCell> touchedCells;
+
 	// Cell properties.
 	private CellSetMembership[][] sets;
 	private GridCell[][]          parents;
@@ -70,6 +74,7 @@ public class RwaMapInfo implements Comparator<GridCell> {
 
 		// Initialize queues for open sets.
 		this.openQueue = new PriorityQueue<GridCell>(INITIAL_QUEUE_CAPACITY, this);
+		this.touchedCells = new ArrayList<GridCell>();
 	}
 
 	public ComputedPlan computePlan(GridCell goal)
@@ -116,6 +121,7 @@ public class RwaMapInfo implements Comparator<GridCell> {
 		// Add to open set.
 		sets[x][y] = CellSetMembership.OPEN;
 		openQueue.offer(cell);
+		touchedCells.add(cell);
 	}
 
 	public void reopenCell(GridCell cell) {
@@ -202,12 +208,9 @@ public class RwaMapInfo implements Comparator<GridCell> {
 	 */
 	public void moveAllToSeen() {
 		// Set all cells in a set to seen.
-		for (int y = 0; y < map.getHeight(); y++) {
-			for (int x = 0; x < map.getWidth(); x++) {
-				if (sets[x][y] != null) {
-					sets[x][y] = CellSetMembership.SEEN;
-				}
-			}
+		for (GridCell cell : touchedCells) {
+			GridCoord gc = cell.getCoord();
+			sets[gc.getX()][gc.getY()] = CellSetMembership.SEEN;
 		}
 
 		// Clear open queue.
@@ -370,11 +373,9 @@ public class RwaMapInfo implements Comparator<GridCell> {
 	/** Return an ArrayList of all the GridCells currently in the closed set. */
 	public ArrayList<GridCell> getClosedArrayList() {
 		ArrayList<GridCell> closed = new ArrayList<GridCell>(closedCount);
-		for (int x = 0; x < map.getWidth(); x++) {
-			for (int y = 0; y < map.getHeight(); y++) {
-				if (sets[x][y] == CellSetMembership.CLOSED) {
-					closed.add(map.getCell(x, y));
-				}
+		for (GridCell cell : touchedCells) {
+			if (isClosed(cell)) {
+				closed.add(cell);
 			}
 		}
 		return closed;
@@ -0,0 +1,59 @@
+package agents;
+
+import java.util.ArrayList;
+
+/**
+ * The cost of each solution an anytime search finds, and when it was found,
+ * so that searches can be compared on solution cost over time.
+ */
+public class SolutionLog {
+
+	private long startTime = 0;
+	private ArrayList<Long>  times = new ArrayList<Long>();
+	private ArrayList<Float> costs = new ArrayList<Float>();
+
+	/**
+	 * Clear the log for a new search.
+	 * @param time the time the search started, in nanoseconds
+	 */
+	public void start(long time) {
+		startTime = time;
+		times.clear();
+		costs.clear();
+	}
+
+	/**
+	 * @param time the time the solution was found, on the same clock as start()
+	 * @param cost the solution's cost
+	 */
+	public void record(long time, float cost) {
+		times.add(time - startTime);
+		costs.add(cost);
+		Trace.print("solution cost = " + cost + " after " + (time - startTime) / 1000000 + "ms");
+	}
+
+	public int getCount() {
+		return costs.size();
+	}
+
+	/** Nanoseconds from the start of the search to solution i. */
+	public long getTime(int i) {
+		return times.get(i);
+	}
+
+	public float getCost(int i) {
+		return costs.get(i);
+	}
+
+	/**
+	 * Cost of the best solution found within the given time, or infinity if
+	 * there was none.
+	 */
+	public float getCostAt(long time) {
+		float cost = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < costs.size() && times.get(i) <= time; i++) {
+			cost = Math.min(cost, costs.get(i));
+		}
+		return cost;
+	}
+}
@@ -0,0 +1,602 @@
+package agents;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.Edge;
+import pplanning.simviewer.model.GridCell;
+
+/**
+ * A simple subgoal graph (Uras, Koenig & Hernandez 2013).
+ *
+ * Subgoals are placed where shortest paths may need to bend, so that any
+ * shortest path can be split into segments that each run between subgoals
+ * and are "h-reachable", meaning no longer than the heuristic distance
+ * between their ends. On four connected maps these are the convex corners of
+ * obstacles: cells with a blocked diagonal neighbour whose two cells in
+ * between are free. Eight connected maps here allow corner cutting and charge
+ * the same for diagonal moves, so paths can bend anywhere beside an obstacle
+ * and every cell next to a blocked cell (or the edge of the map) is a subgoal.
+ *
+ * Subgoals are joined wherever one can h-reach the other without passing
+ * through a third. A query joins the start and goal to the subgoals they can
+ * h-reach, searches this (small) graph and walks each segment back out into
+ * grid cells.
+ *
+ * Across open ground a subgoal can h-reach nearly every subgoal on the far
+ * side, and finding them all floods the area once per subgoal. So when the
+ * graph is built each subgoal is only joined to those no more than
+ * MAX_DEPTH_RATIO times as far as the nearest in their direction, and the
+ * rest are reached through them. Plans are then a little longer than
+ * optimal where a path across open ground has to bend at a subgoal it could
+ * have passed by.
+ *
+ * This only holds when every cell costs the same, so on maps with weighted
+ * terrain no plan is returned. The graph is built (or loaded from the cache
+ * directory) by build(), which can take seconds on a large map, so queries
+ * never build it themselves: after a change, none are answered until it has
+ * been built again.
+ */
+public class SubgoalGraph implements IncumbentProvider, Comparator<Integer> {
+
+	// Bumped whenever the file layout or the subgoal rules change.
+	private static final int FILE_VERSION = 2;
+
+	// How much further than the nearest subgoal in a direction the subgoals
+	// joined to a subgoal may be (see findReachableSubgoals()).
+	private static final int MAX_DEPTH_RATIO = 2;
+
+	private GridSnapshot grid;
+
+	// Where the graph of the unaltered map is kept between runs (may be null).
+	private File cacheDirectory;
+
+	// Set when the graph no longer matches the snapshot.
+	private boolean isStale = true;
+
+	// Set once the map has been altered. Graphs of altered maps are not cached.
+	private boolean hasChanged = false;
+
+	// Subgoal id of each cell (-1 if it is not a subgoal), and cell of each id.
+	private int[] subgoalIds;
+	private int[] subgoalCells;
+	private int   subgoalCount;
+
+	// Edges of subgoal i are at [edgeOffsets[i], edgeOffsets[i + 1]).
+	private int[] edgeOffsets;
+	private int[] edgeTargets;
+	private int[] edgeLengths;  // in steps
+
+	// Scratch space for h-reachability searches over grid cells. A cell is
+	// visited in the current search iff its stamp matches.
+	private int[] visitStamps;
+	private int   visitStamp = 0;
+	private int[] depths;
+	private int[] parents;
+	private int[] queue;
+
+	// Depth of the nearest subgoal found in each direction from the source
+	// (see getSector()) by a capped search.
+	private int[] sectorDepths = new int[9];
+
+	// Scratch space for graph searches. The start and goal get the two ids
+	// after the last subgoal.
+	private float[]  gCosts;
+	private float[]  fCosts;
+	private int[]    graphParents;
+	private int[]    searchStamps;
+	private boolean[] closed;
+	private int      searchStamp = 0;
+	private int[]    goalLengths;  // steps from each subgoal to the goal, or -1
+
+	// Cells of the nodes closed in the last search, for display.
+	private ArrayList<GridCell> lastClosed = new ArrayList<GridCell>();
+
+	/**
+	 * @param grid           the map
+	 * @param cacheDirectory where to keep the graph between runs, or null
+	 */
+	public SubgoalGraph(GridSnapshot grid, File cacheDirectory) {
+		this.grid = grid;
+		this.cacheDirectory = cacheDirectory;
+
+		int size = grid.getSize();
+		visitStamps = new int[size];
+		depths = new int[size];
+		parents = new int[size];
+		queue = new int[size];
+	}
+
+	/**
+	 * Has the graph for this map already been built and saved? Building can
+	 * take seconds on large maps, which DAS cannot afford inside a deadline.
+	 */
+	public static boolean isCached(GridSnapshot grid, File cacheDirectory) {
+		return getCacheFile(grid, cacheDirectory).exists();
+	}
+
+	private static File getCacheFile(GridSnapshot grid, File cacheDirectory) {
+		return new File(cacheDirectory,
+				"subgoals-" + Long.toHexString(grid.getSignature()) + ".bin");
+	}
+
+	/** Number of subgoals in the graph, or 0 while it is stale. */
+	public int getSubgoalCount() {
+		return isStale ? 0 : subgoalCount;
+	}
+
+	/**
+	 * Does the graph need to be built before it can answer queries? It does
+	 * until first built, and again after any change to the map.
+	 */
+	public boolean isStale() {
+		return isStale;
+	}
+
+	/* -- CONSTRUCTION -- */
+
+	/**
+	 * Build the graph for the map as it is now, or load it if it has been
+	 * cached. Call this outside any deadline.
+	 */
+	public void build() {
+		File file = null;
+		if (cacheDirectory != null && hasChanged == false) {
+			file = getCacheFile(grid, cacheDirectory);
+		}
+
+		boolean isLoaded = false;
+		if (file != null && file.exists()) {
+			try {
+				load(file);
+				isLoaded = true;
+			} catch (IOException e) {
+				System.out.println("Could not read subgoal graph " + file + ": " + e.getMessage());
+			}
+		}
+
+		if (isLoaded == false) {
+			placeSubgoals();
+			connectSubgoals();
+			if (file != null) {
+				try {
+					cacheDirectory.mkdirs();
+					save(file);
+				} catch (IOException e) {
+					System.out.println("Could not save subgoal graph " + file + ": " + e.getMessage());
+				}
+			}
+		}
+
+		int nodeCount = subgoalCount + 2;
+		gCosts = new float[nodeCount];
+		fCosts = new float[nodeCount];
+		graphParents = new int[nodeCount];
+		searchStamps = new int[nodeCount];
+		closed = new boolean[nodeCount];
+		goalLengths = new int[subgoalCount];
+		Arrays.fill(goalLengths, -1);
+		searchStamp = 0;
+
+		isStale = false;
+	}
+
+	private void placeSubgoals() {
+		int size = grid.getSize();
+		subgoalIds = new int[size];
+		int[] cells = new int[size];
+		subgoalCount = 0;
+
+		// No plans are returned on weighted maps, so the graph is left empty.
+		boolean isUniform = grid.isUniformMap();
+
+		for (int cell = 0; cell < size; cell++) {
+			subgoalIds[cell] = -1;
+			if (isUniform && grid.isPassable(cell) && isSubgoal(cell)) {
+				subgoalIds[cell] = subgoalCount;
+				cells[subgoalCount++] = cell;
+			}
+		}
+		subgoalCells = new int[subgoalCount];
+		System.arraycopy(cells, 0, subgoalCells, 0, subgoalCount);
+	}
+
+	/**
+	 * Join each subgoal to those it can directly h-reach.
+	 */
+	private void connectSubgoals() {
+		edgeOffsets = new int[subgoalCount + 1];
+		ArrayList<int[]> edges = new ArrayList<int[]>();
+		int edgeCount = 0;
+		for (int id = 0; id < subgoalCount; id++) {
+			edgeOffsets[id] = edgeCount;
+			int[] reached = findReachableSubgoals(subgoalCells[id], true);
+			edges.add(reached);
+			edgeCount += reached.length / 2;
+		}
+		edgeOffsets[subgoalCount] = edgeCount;
+
+		edgeTargets = new int[edgeCount];
+		edgeLengths = new int[edgeCount];
+		for (int id = 0; id < subgoalCount; id++) {
+			int[] reached = edges.get(id);
+			for (int i = 0; i < reached.length / 2; i++) {
+				edgeTargets[edgeOffsets[id] + i] = reached[i * 2];
+				edgeLengths[edgeOffsets[id] + i] = reached[i * 2 + 1];
+			}
+		}
+	}
+
+	private void load(File file) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != FILE_VERSION || in.readLong() != grid.getSignature()) {
+				throw new IOException("stale graph");
+			}
+			subgoalCount = in.readInt();
+			subgoalCells = new int[subgoalCount];
+			subgoalIds = new int[grid.getSize()];
+			Arrays.fill(subgoalIds, -1);
+			for (int id = 0; id < subgoalCount; id++) {
+				subgoalCells[id] = in.readInt();
+				subgoalIds[subgoalCells[id]] = id;
+			}
+			edgeOffsets = new int[subgoalCount + 1];
+			for (int id = 0; id <= subgoalCount; id++) {
+				edgeOffsets[id] = in.readInt();
+			}
+			int edgeCount = edgeOffsets[subgoalCount];
+			edgeTargets = new int[edgeCount];
+			edgeLengths = new int[edgeCount];
+			for (int e = 0; e < edgeCount; e++) {
+				edgeTargets[e] = in.readInt();
+				edgeLengths[e] = in.readInt();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private void save(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(FILE_VERSION);
+			out.writeLong(grid.getSignature());
+			out.writeInt(subgoalCount);
+			for (int id = 0; id < subgoalCount; id++) {
+				out.writeInt(subgoalCells[id]);
+			}
+			for (int id = 0; id <= subgoalCount; id++) {
+				out.writeInt(edgeOffsets[id]);
+			}
+			for (int e = 0; e < edgeOffsets[subgoalCount]; e++) {
+				out.writeInt(edgeTargets[e]);
+				out.writeInt(edgeLengths[e]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Might a shortest path need to bend at this cell?
+	 */
+	private boolean isSubgoal(int cell) {
+		int x = grid.getX(cell);
+		int y = grid.getY(cell);
+
+		if (grid.isEightConnected()) {
+			// Any cell touching an obstacle. A path that stays clear of them
+			// can always be straightened.
+			for (int direction = 0; direction < 8; direction++) {
+				if (grid.isPassable(x + GridSnapshot.DIRECTION_X[direction],
+						y + GridSnapshot.DIRECTION_Y[direction]) == false) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		// Convex corners only.
+		for (int direction = 1; direction < 8; direction += 2) {
+			int dx = GridSnapshot.DIRECTION_X[direction];
+			int dy = GridSnapshot.DIRECTION_Y[direction];
+			if (grid.isInBounds(x + dx, y + dy) &&
+					grid.isPassable(x + dx, y + dy) == false &&
+					grid.isPassable(x + dx, y) &&
+					grid.isPassable(x, y + dy)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Find the subgoals that can be h-reached from a cell without passing
+	 * through another subgoal. Leaves the search in depths and visitStamps.
+	 * @param isCapped stop in each direction at MAX_DEPTH_RATIO times the
+	 *        depth of the nearest subgoal found in it
+	 * @return pairs of (subgoal id, steps)
+	 */
+	private int[] findReachableSubgoals(int source, boolean isCapped) {
+		int[] found = new int[16];
+		int foundCount = 0;
+		Arrays.fill(sectorDepths, Integer.MAX_VALUE);
+
+		visitStamp++;
+		visitStamps[source] = visitStamp;
+		depths[source] = 0;
+		parents[source] = -1;
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = source;
+
+		int[] directions = grid.getDirections();
+		while (head < tail) {
+			int cell = queue[head++];
+
+			// Do not search past other subgoals.
+			if (cell != source && subgoalIds[cell] != -1) {
+				if (foundCount * 2 == found.length) {
+					int[] grown = new int[found.length * 2];
+					System.arraycopy(found, 0, grown, 0, found.length);
+					found = grown;
+				}
+				found[foundCount * 2] = subgoalIds[cell];
+				found[foundCount * 2 + 1] = depths[cell];
+				foundCount++;
+				int sector = getSector(source, cell);
+				sectorDepths[sector] = Math.min(sectorDepths[sector], depths[cell]);
+				continue;
+			}
+
+			// Cells are taken in order of depth, so every subgoal nearer than
+			// the cap in this direction has been found by now.
+			if (isCapped && cell != source && depths[cell] >=
+					(long) MAX_DEPTH_RATIO * sectorDepths[getSector(source, cell)]) {
+				continue;
+			}
+
+			for (int i = 0; i < directions.length; i++) {
+				int neighbour = grid.getNeighbour(cell, directions[i]);
+				if (neighbour == -1 || visitStamps[neighbour] == visitStamp) {
+					continue;
+				}
+				// Only follow moves that take us further from the source,
+				// so that every cell is reached by a path of length h.
+				if (grid.getDistance(source, neighbour) != depths[cell] + 1) {
+					continue;
+				}
+				visitStamps[neighbour] = visitStamp;
+				depths[neighbour] = depths[cell] + 1;
+				parents[neighbour] = cell;
+				queue[tail++] = neighbour;
+			}
+		}
+
+		int[] result = new int[foundCount * 2];
+		System.arraycopy(found, 0, result, 0, foundCount * 2);
+		return result;
+	}
+
+	/**
+	 * Which of the eight directions (the four axes and the four quadrants
+	 * between them) a cell lies in from another, numbered 0 to 8.
+	 */
+	private int getSector(int from, int to) {
+		int dx = Integer.signum(grid.getX(to) - grid.getX(from));
+		int dy = Integer.signum(grid.getY(to) - grid.getY(from));
+		return (dy + 1) * 3 + dx + 1;
+	}
+
+	/* -- MAINTENANCE -- */
+
+	public void update(ArrayList<Edge> changedEdges) {
+		if (changedEdges.isEmpty() == false) {
+			isStale = true;
+			hasChanged = true;
+		}
+	}
+
+	/* -- QUERIES -- */
+
+	public ComputedPlan findIncumbent(GridCell start, GridCell goal) {
+		return findPlan(grid.getIndex(start), grid.getIndex(goal));
+	}
+
+	/**
+	 * Find a plan (see the class comment for how close to optimal it is).
+	 * @return the plan, including the start cell, or null if there is none,
+	 *         the map has weighted terrain, or the graph is stale (see
+	 *         isStale())
+	 */
+	public ComputedPlan findPlan(int start, int goal) {
+		lastClosed.clear();
+
+		if (isStale || grid.isUniformMap() == false ||
+				grid.isPassable(start) == false || grid.isPassable(goal) == false) {
+			return null;
+		}
+
+		searchStamp++;
+		int startNode = subgoalCount;
+		int goalNode = subgoalCount + 1;
+
+		// Join the goal: subgoals that can h-reach it can be h-reached from it.
+		int[] goalEdges = findReachableSubgoals(goal, false);
+		for (int i = 0; i < goalEdges.length; i += 2) {
+			goalLengths[goalEdges[i]] = goalEdges[i + 1];
+		}
+		if (subgoalIds[goal] != -1) {
+			goalLengths[subgoalIds[goal]] = 0;
+		}
+
+		// Join the start, and the goal directly if it is h-reachable.
+		int[] startEdges = findReachableSubgoals(start, false);
+		int directLength = visitStamps[goal] == visitStamp ? depths[goal] : -1;
+
+		PriorityQueue<Integer> open = new PriorityQueue<Integer>(64, this);
+		visit(open, startNode, 0, -1, start, goal);
+
+		while (open.isEmpty() == false) {
+			int node = open.poll();
+			closed[node] = true;
+			if (node != startNode && node != goalNode) {
+				lastClosed.add(grid.getCell(subgoalCells[node]));
+			}
+
+			if (node == goalNode) {
+				ComputedPlan plan = computePlan(goalNode, start, goal);
+				clearGoalLengths(goalEdges, goal);
+				return plan;
+			}
+
+			if (node == startNode) {
+				for (int i = 0; i < startEdges.length; i += 2) {
+					relax(open, node, startEdges[i], startEdges[i + 1], goal);
+				}
+				if (directLength != -1) {
+					relax(open, node, goalNode, directLength, goal);
+				}
+			} else {
+				for (int e = edgeOffsets[node]; e < edgeOffsets[node + 1]; e++) {
+					relax(open, node, edgeTargets[e], edgeLengths[e], goal);
+				}
+				if (goalLengths[node] != -1) {
+					relax(open, node, goalNode, goalLengths[node], goal);
+				}
+			}
+		}
+
+		clearGoalLengths(goalEdges, goal);
+		return null;
+	}
+
+	private void clearGoalLengths(int[] goalEdges, int goal) {
+		for (int i = 0; i < goalEdges.length; i += 2) {
+			goalLengths[goalEdges[i]] = -1;
+		}
+		if (subgoalIds[goal] != -1) {
+			goalLengths[subgoalIds[goal]] = -1;
+		}
+	}
+
+	private void relax(PriorityQueue<Integer> open, int from, int to, int length, int goal) {
+		float gCost = gCosts[from] + length * grid.getMinCost();
+		if (searchStamps[to] != searchStamp) {
+			visit(open, to, gCost, from, getNodeCell(to, goal), goal);
+		} else if (closed[to] == false && FloatUtil.lessThan(gCost, gCosts[to])) {
+			open.remove(to);
+			fCosts[to] += gCost - gCosts[to];
+			gCosts[to] = gCost;
+			graphParents[to] = from;
+			open.offer(to);
+		}
+	}
+
+	private void visit(PriorityQueue<Integer> open, int node, float gCost, int parent,
+			int cell, int goal) {
+		searchStamps[node] = searchStamp;
+		closed[node] = false;
+		gCosts[node] = gCost;
+		fCosts[node] = gCost + grid.getHCost(cell, goal);
+		graphParents[node] = parent;
+		open.offer(node);
+	}
+
+	private int getNodeCell(int node, int goal) {
+		return node == subgoalCount + 1 ? goal : subgoalCells[node];
+	}
+
+	/**
+	 * Walk the graph path back from the goal, filling in each segment.
+	 */
+	private ComputedPlan computePlan(int goalNode, int start, int goal) {
+		ComputedPlan plan = new ComputedPlan();
+
+		int node = goalNode;
+		int cell = goal;
+		while (graphParents[node] != -1) {
+			int parent = graphParents[node];
+			int parentCell = parent == subgoalCount ? start : subgoalCells[parent];
+			prependSegment(plan, parentCell, cell);
+			node = parent;
+			cell = parentCell;
+		}
+		plan.prependStep(grid.getCell(start));
+
+		plan.setCost(gCosts[goalNode]);
+		return plan;
+	}
+
+	/**
+	 * Prepend the cells of an h-reachable segment, excluding its first cell.
+	 * Searches only the cells that lie on some shortest path between the two.
+	 */
+	private void prependSegment(ComputedPlan plan, int from, int to) {
+		int length = grid.getDistance(from, to);
+
+		visitStamp++;
+		visitStamps[from] = visitStamp;
+		depths[from] = 0;
+		parents[from] = -1;
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = from;
+
+		int[] directions = grid.getDirections();
+		while (head < tail && visitStamps[to] != visitStamp) {
+			int cell = queue[head++];
+			for (int i = 0; i < directions.length; i++) {
+				int neighbour = grid.getNeighbour(cell, directions[i]);
+				if (neighbour == -1 || visitStamps[neighbour] == visitStamp) {
+					continue;
+				}
+				int depth = depths[cell] + 1;
+				if (grid.getDistance(from, neighbour) != depth ||
+						depth + grid.getDistance(neighbour, to) != length) {
+					continue;
+				}
+				visitStamps[neighbour] = visitStamp;
+				depths[neighbour] = depth;
+				parents[neighbour] = cell;
+				queue[tail++] = neighbour;
+			}
+		}
+
+		for (int cell = to; cell != from; cell = parents[cell]) {
+			plan.prependStep(grid.getCell(cell));
+		}
+	}
+
+	/**
+	 * Compare two graph nodes on f, breaking ties toward higher g.
+	 */
+	public int compare(Integer a, Integer b) {
+		int fCompare = FloatUtil.compare(fCosts[a], fCosts[b]);
+		if (fCompare != 0) {
+			return fCompare;
+		}
+		return FloatUtil.compare(gCosts[b], gCosts[a]);
+	}
+
+	/* -- DEBUG -- */
+
+	/** Cells of the subgoals closed in the last search. */
+	public ArrayList<GridCell> getClosedArrayList() {
+		return lastClosed;
+	}
+}
@@ -0,0 +1,122 @@
+package agents;
+
+import java.util.ArrayList;
+
+import au.rmit.ract.planning.pathplanning.entity.ComputedPlan;
+import au.rmit.ract.planning.pathplanning.entity.Edge;
+import pplanning.interfaces.PlanningAgent;
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+
+/**
+ * Near optimal planning over a subgoal graph (see SubgoalGraph).
+ *
+ * The graph is built once per map, after which queries search a few thousand
+ * subgoals instead of the grid. Maps with weighted terrain have no subgoal
+ * graph, and are planned with jump point search instead.
+ */
+public class SubgoalGraphAgent implements PlanningAgent {
+
+	private final static boolean DEBUG = false;
+
+	private GridSnapshot snapshot;
+	private SubgoalGraph subgoalGraph;
+	private JumpPointSearch jumpPointSearch;
+
+	private ComputedPlan plan;
+	private int stepNo = 0;
+
+	private GridCell lastGoal = null;
+
+	@Override
+	public GridCell getNextMove(GridDomain map, GridCell start, GridCell goal,
+			int stepLeft, long stepTime, long timeLeft) {
+
+		try {
+			if (start == goal) {
+				return start;
+			}
+
+			ArrayList<Edge> changedEdges = map.getChangedEdges();
+			boolean mapChanged = false;
+
+			if (snapshot == null || snapshot.getMap() != map) {
+				snapshot = new GridSnapshot(map);
+				subgoalGraph = new SubgoalGraph(snapshot, GridUtil.CACHE_DIRECTORY);
+				mapChanged = true;
+			} else if (changedEdges.isEmpty() == false && snapshot.update(changedEdges)) {
+				subgoalGraph.update(changedEdges);
+				mapChanged = true;
+			}
+
+			boolean replan =
+				plan == null                ||  // not planned yet
+				mapChanged                  ||  // cells have changed
+				goal != lastGoal            ||  // goal has moved
+				stepNo >= plan.getLength()  ||  // path exhausted
+				plan.getStep(stepNo - 1) != start;  // agent is off track
+
+			if (replan) {
+				plan = generatePlan(start, goal);
+				stepNo = 1;  // Plan includes the start cell.
+				lastGoal = goal;
+			}
+
+			if (plan == null || stepNo >= plan.getLength()) {
+				if (DEBUG) System.out.println("Could not find goal");
+				return start;
+			}
+
+			return (GridCell) plan.getStep(stepNo++);
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			return start;
+		}
+	}
+
+	private ComputedPlan generatePlan(GridCell start, GridCell goal) {
+		jumpPointSearch = null;
+
+		if (subgoalGraph.isStale()) {
+			subgoalGraph.build();
+		}
+		long startTime = System.nanoTime();
+		ComputedPlan subgoalPlan = subgoalGraph.findIncumbent(start, goal);
+		if (subgoalPlan != null) {
+			if (DEBUG) {
+				System.out.println("subgoal plan cost = " + subgoalPlan.getCost() +
+						" in " + (System.nanoTime() - startTime) / 1000 + "us, " +
+						subgoalGraph.getSubgoalCount() + " subgoals");
+			}
+			return subgoalPlan;
+		}
+
+		if (DEBUG) System.out.println("no subgoal plan, searching grid");
+		jumpPointSearch = new JumpPointSearch(snapshot, false);
+		return jumpPointSearch.search(start, goal);
+	}
+
+	// Do we want to show extra info? (e.g., close and open nodes, current path)
+	@Override
+	public Boolean showInfo() {
+		return subgoalGraph != null;
+	}
+
+	@Override
+	public ArrayList<GridCell> expandedNodes() {
+		if (jumpPointSearch != null) return jumpPointSearch.getClosedArrayList();
+		return subgoalGraph.getClosedArrayList();
+	}
+
+	@Override
+	public ArrayList<GridCell> unexpandedNodes() {
+		if (jumpPointSearch != null) return jumpPointSearch.getOpenArrayList();
+		return new ArrayList<GridCell>();
+	}
+
+	@Override
+	public ComputedPlan getPath() {
+		return plan;
+	}
+}
@@ -0,0 +1,98 @@
+package agents;
+
+import java.util.Random;
+
+import pplanning.simviewer.model.GridCell;
+import pplanning.simviewer.model.GridDomain;
+import pplanning.simviewer.model.SuccessorIterator;
+
+/**
+ * Times successor generation as DeadlineAwareSearch used to do it, one
+ * neighbour at a time through GridDomain, against SuccessorBatch.
+ *
+ *     java agents.SuccessorBenchmark maps/AR0202SR.map [manhattan]
+ *
+ * Each round expands the same random cells towards the same random goal
+ * with both methods, and prints the time per expansion. Early rounds are
+ * slow while the JIT warms up.
+ */
+public class SuccessorBenchmark {
+
+	private final static int CELL_COUNT = 100000;
+	private final static int ROUNDS = 10;
+
+	/**
+	 * @param args map file, then optionally "manhattan" for a four connected map
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: SuccessorBenchmark <map file> [manhattan]");
+			return;
+		}
+		boolean eightConnected = args.length < 2 || args[1].equals("manhattan") == false;
+
+		GridDomain map = MapFileDomain.load(args[0], eightConnected);
+		GridSnapshot grid = new GridSnapshot(map);
+		GridUtil.Connectivity connectivity = GridUtil.checkConnectivity(map);
+		DistanceCalculator distanceCalculator = GridUtil.getDistanceCalculator(connectivity);
+		SuccessorBatch batch = new SuccessorBatch(grid, connectivity);
+
+		// Random passable cells to expand, and a goal.
+		Random random = new Random(1);
+		int[] cells = new int[CELL_COUNT];
+		for (int i = 0; i < CELL_COUNT; i++) {
+			cells[i] = randomPassableCell(grid, random);
+		}
+		int goal = randomPassableCell(grid, random);
+		GridCell goalCell = grid.getCell(goal);
+		batch.setGoal(goal);
+
+		GridCell[] gridCells = new GridCell[CELL_COUNT];
+		for (int i = 0; i < CELL_COUNT; i++) {
+			gridCells[i] = grid.getCell(cells[i]);
+		}
+
+		for (int round = 1; round <= ROUNDS; round++) {
+			// Sums of every value, so that neither loop can be optimised away.
+			long checksum = 0;
+
+			long startTime = System.nanoTime();
+			for (int i = 0; i < CELL_COUNT; i++) {
+				GridCell parent = gridCells[i];
+				SuccessorIterator neighbours = map.getNextSuccessor(parent);
+				GridCell cell;
+				while ((cell = neighbours.next()) != null) {
+					if (map.isBlocked(cell) == false) {
+						int gCost = i + (int) map.cost(parent, cell);
+						int hCost = (int) (map.getMinCost() * distanceCalculator.dCost(cell, goalCell));
+						int dCheapest = distanceCalculator.dCost(cell, goalCell);
+						checksum += gCost + hCost + dCheapest;
+					}
+				}
+			}
+			long perNeighbourTime = System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			for (int i = 0; i < CELL_COUNT; i++) {
+				int count = batch.evaluate(cells[i], i);
+				for (int s = 0; s < count; s++) {
+					checksum -= batch.getGCost(s) + batch.getHCost(s) + batch.getDCheapest(s);
+				}
+			}
+			long batchTime = System.nanoTime() - startTime;
+
+			System.out.println("Round " + round +
+					": per neighbour " + perNeighbourTime / CELL_COUNT + "ns" +
+					", batch " + batchTime / CELL_COUNT + "ns per expansion" +
+					(checksum != 0 ? " (results differ!)" : ""));
+		}
+	}
+
+	private static int randomPassableCell(GridSnapshot grid, Random random) {
+		int cell;
+		do {
+			cell = random.nextInt(grid.getSize());
+		} while (grid.isPassable(cell) == false);
+		return cell;
+	}
+}